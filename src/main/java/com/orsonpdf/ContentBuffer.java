@@ -0,0 +1,197 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+
+package com.orsonpdf;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import com.orsonpdf.util.NumberFormatter;
+
+/**
+ * A growable byte buffer for page content, with methods to append PDF 
+ * operators and operands directly as ASCII bytes (without creating 
+ * intermediate strings).
+ */
+final class ContentBuffer {
+
+    /** The content. */
+    private byte[] bytes;
+    
+    /** The number of bytes of content. */
+    private int count;
+
+    /**
+     * Creates a new empty buffer.
+     */
+    ContentBuffer() {
+        this.bytes = new byte[256];
+    }
+    
+    /**
+     * Returns the number of bytes in the buffer.
+     * 
+     * @return The number of bytes in the buffer.
+     */
+    int size() {
+        return this.count;
+    }
+    
+    /**
+     * Discards the bytes after the specified position.
+     * 
+     * @param size  the new size (not greater than the current size).
+     */
+    void truncate(int size) {
+        if (size < 0 || size > this.count) {
+            throw new IllegalArgumentException("Invalid size: " + size);
+        }
+        this.count = size;
+    }
+    
+    private void ensureCapacity(int capacity) {
+        if (capacity > this.bytes.length) {
+            this.bytes = Arrays.copyOf(this.bytes, 
+                    Math.max(capacity, this.bytes.length << 1));
+        }
+    }
+    
+    /**
+     * Appends a single ASCII character.
+     * 
+     * @param c  the character.
+     * 
+     * @return This buffer.
+     */
+    ContentBuffer append(char c) {
+        ensureCapacity(this.count + 1);
+        this.bytes[this.count++] = (byte) c;
+        return this;
+    }
+
+    /**
+     * Appends a string as ASCII bytes.  Characters outside the ASCII range 
+     * are written as {@code '?'} (as for {@link PDFUtils#toBytes(String)}).
+     * 
+     * @param s  the string ({@code null} not permitted).
+     * 
+     * @return This buffer.
+     */
+    ContentBuffer append(CharSequence s) {
+        int len = s.length();
+        ensureCapacity(this.count + len);
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 128) {
+                this.bytes[this.count++] = (byte) c;
+            } else {
+                this.bytes[this.count++] = (byte) '?';
+                if (Character.isHighSurrogate(c) && i + 1 < len 
+                        && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    i++;
+                }
+            }
+        }
+        return this;
+    }
+    
+    /**
+     * Appends an integer.
+     * 
+     * @param i  the integer.
+     * 
+     * @return This buffer.
+     */
+    ContentBuffer append(int i) {
+        if (i < 0) {
+            if (i == Integer.MIN_VALUE) {
+                return append(String.valueOf(i));
+            }
+            append('-');
+            i = -i;
+        }
+        if (i < 10) {
+            return append((char) ('0' + i));
+        }
+        int digits = 1;
+        for (int j = i / 10; j > 0; j /= 10) {
+            digits++;
+        }
+        ensureCapacity(this.count + digits);
+        for (int k = this.count + digits - 1; k >= this.count; k--) {
+            this.bytes[k] = (byte) ('0' + i % 10);
+            i /= 10;
+        }
+        this.count += digits;
+        return this;
+    }
+    
+    /**
+     * Appends a number rounded to the specified number of decimal places 
+     * (see {@link NumberFormatter}).
+     * 
+     * @param d  the number.
+     * @param decimals  the maximum number of decimal places.
+     * 
+     * @return This buffer.
+     */
+    ContentBuffer append(double d, int decimals) {
+        ensureCapacity(this.count + NumberFormatter.MAX_LENGTH);
+        int end = NumberFormatter.format(d, decimals, this.bytes, this.count);
+        if (end < 0) {
+            return append(NumberFormatter.toString(d, decimals));
+        }
+        this.count = end;
+        return this;
+    }
+    
+    /**
+     * Returns a copy of the content.
+     * 
+     * @return A byte array containing the content.
+     */
+    byte[] toByteArray() {
+        return Arrays.copyOf(this.bytes, this.count);
+    }
+    
+    /**
+     * Writes the content to the specified output stream.
+     * 
+     * @param out  the output stream ({@code null} not permitted).
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    void writeTo(OutputStream out) throws IOException {
+        out.write(this.bytes, 0, this.count);
+    }
+
+}
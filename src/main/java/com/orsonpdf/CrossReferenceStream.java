@@ -0,0 +1,194 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+
+package com.orsonpdf;
+
+import com.orsonpdf.filter.FlateFilter;
+import com.orsonpdf.util.Args;
+
+/**
+ * A cross-reference stream ({@code /Type /XRef}), written in place of the
+ * cross-reference table and trailer when the document is written with a 
+ * compressed structure (see 
+ * {@link PDFDocument#setCompressedStructure(boolean)}).  The entries are 
+ * written in binary with the minimum field widths and the PNG 'Up' predictor
+ * applied before compression.
+ */
+final class CrossReferenceStream extends Stream {
+
+    /** The entry type for a free object. */
+    static final int FREE = 0;
+    
+    /** The entry type for an object written at a byte offset in the file. */
+    static final int IN_USE = 1;
+    
+    /** The entry type for an object written inside an object stream. */
+    static final int COMPRESSED = 2;
+    
+    /** The entry types, indexed by object number. */
+    private final byte[] types;
+    
+    /** 
+     * The second field for each entry (the byte offset for objects in use,
+     * or the object stream number for compressed objects). 
+     */
+    private final long[] field2;
+    
+    /** 
+     * The third field for each entry (the generation number for free 
+     * objects, or the index within the object stream for compressed 
+     * objects). 
+     */
+    private final int[] field3;
+    
+    /** The document catalog. */
+    private final PDFObject root;
+    
+    /** The document info. */
+    private final PDFObject info;
+
+    /**
+     * Creates a new cross-reference stream where every entry is initially
+     * free.
+     * 
+     * @param number  the PDF object number.
+     * @param size  the number of entries (one more than the highest object
+     *     number in the document).
+     * @param root  the document catalog ({@code null} not permitted).
+     * @param info  the document info ({@code null} not permitted).
+     */
+    CrossReferenceStream(int number, int size, PDFObject root, 
+            PDFObject info) {
+        super(number);
+        Args.nullNotPermitted(root, "root");
+        Args.nullNotPermitted(info, "info");
+        this.types = new byte[size];
+        this.field2 = new long[size];
+        this.field3 = new int[size];
+        for (int i = 0; i < size; i++) {
+            this.field3[i] = 65535;
+        }
+        this.root = root;
+        this.info = info;
+        addFilter(new FlateFilter());
+    }
+    
+    /**
+     * Sets the entry for an object.
+     * 
+     * @param objectNumber  the object number.
+     * @param type  the entry type ({@link #FREE}, {@link #IN_USE} or 
+     *     {@link #COMPRESSED}).
+     * @param value2  the value for the second field.
+     * @param value3  the value for the third field (0 to 65535).
+     */
+    void setEntry(int objectNumber, int type, long value2, int value3) {
+        this.types[objectNumber] = (byte) type;
+        this.field2[objectNumber] = value2;
+        this.field3[objectNumber] = value3;
+    }
+    
+    /**
+     * Returns the number of bytes used for the second field of each entry.
+     * 
+     * @return The field width.
+     */
+    private int getField2Width() {
+        long max = 0;
+        for (long value : this.field2) {
+            max = Math.max(max, value);
+        }
+        int width = 1;
+        while ((max >>>= 8) != 0) {
+            width++;
+        }
+        return width;
+    }
+
+    /**
+     * Returns the raw data for the stream: one row per entry, each row 
+     * preceded by the PNG filter type for the 'Up' predictor (2) and 
+     * containing the difference from the previous row.
+     * 
+     * @return The raw data for the stream. 
+     */
+    @Override
+    public byte[] getRawStreamData() {
+        int w2 = getField2Width();
+        int columns = 3 + w2;
+        byte[] previous = new byte[columns];
+        byte[] row = new byte[columns];
+        byte[] result = new byte[this.types.length * (columns + 1)];
+        int pos = 0;
+        for (int i = 0; i < this.types.length; i++) {
+            row[0] = this.types[i];
+            for (int j = 0; j < w2; j++) {
+                row[w2 - j] = (byte) (this.field2[i] >>> (8 * j));
+            }
+            row[w2 + 1] = (byte) (this.field3[i] >>> 8);
+            row[w2 + 2] = (byte) this.field3[i];
+            result[pos++] = 2;
+            for (int j = 0; j < columns; j++) {
+                result[pos++] = (byte) (row[j] - previous[j]);
+            }
+            byte[] temp = previous;
+            previous = row;
+            row = temp;
+        }
+        return result;
+    }
+    
+    /**
+     * Creates the dictionary for the cross-reference stream, which also 
+     * serves as the trailer dictionary.
+     * 
+     * @param streamLength  the stream length.
+     * 
+     * @return The dictionary. 
+     */
+    @Override
+    protected Dictionary createDictionary(int streamLength) {
+        Dictionary dictionary = super.createDictionary(streamLength);
+        dictionary.setType("/XRef");
+        int w2 = getField2Width();
+        dictionary.put("/Size", this.types.length);
+        dictionary.put("/W", "[1 " + w2 + " 2]");
+        dictionary.put("/Root", this.root);
+        dictionary.put("/Info", this.info);
+        Dictionary decodeParms = new Dictionary();
+        decodeParms.put("/Predictor", 12);
+        decodeParms.put("/Columns", 3 + w2);
+        dictionary.put("/DecodeParms", decodeParms);
+        return dictionary;
+    }
+
+}
@@ -36,6 +36,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import com.orsonpdf.util.NumberFormatter;
 
 /**
  * A dictionary is a map and supports writing the bytes for the dictionary
@@ -168,7 +169,12 @@ public class Dictionary {
         // now iterate through the dictionary and write its values
         for (String key : this.map.keySet()) {
             Object value = this.map.get(key);
-            if (value instanceof Number || value instanceof String) {
+            if (value instanceof Float || value instanceof Double) {
+                b.append(key).append(" ");
+                NumberFormatter.format(((Number) value).doubleValue(), 
+                        NumberFormatter.DEFAULT_DECIMALS, b);
+                b.append("\n");
+            } else if (value instanceof Number || value instanceof String) {
                 b.append(key).append(" ");
                 b.append(value).append("\n");
             } else if (value instanceof PDFObject) {
@@ -200,9 +206,15 @@ public class Dictionary {
             } else if (value instanceof Rectangle2D) {
                 Rectangle2D r = (Rectangle2D) value;
                 b.append(key).append(" ");
-                b.append("[").append(r.getX()).append(" ");
-                b.append(r.getY()).append(" ").append(r.getWidth()).append(" ");
-                b.append(r.getHeight()).append("]\n");
+                b.append("[");
+                NumberFormatter.format(r.getX(), 
+                        NumberFormatter.DEFAULT_DECIMALS, b).append(" ");
+                NumberFormatter.format(r.getY(), 
+                        NumberFormatter.DEFAULT_DECIMALS, b).append(" ");
+                NumberFormatter.format(r.getWidth(), 
+                        NumberFormatter.DEFAULT_DECIMALS, b).append(" ");
+                NumberFormatter.format(r.getHeight(), 
+                        NumberFormatter.DEFAULT_DECIMALS, b).append("]\n");
             } else if (value instanceof Dictionary) {
                 b.append(key).append(" ");
                 Dictionary d = (Dictionary) value;
@@ -215,7 +227,8 @@ public class Dictionary {
                     if (i != 0) {
                         b.append(" ");
                     }
-                    b.append(array[i]);
+                    NumberFormatter.format(array[i], 
+                            NumberFormatter.DEFAULT_DECIMALS, b);
                 }
                 b.append("]\n");
                 
@@ -0,0 +1,570 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+package com.orsonpdf;
+
+import java.awt.Image;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import javax.imageio.ImageIO;
+import com.orsonpdf.util.Args;
+
+/**
+ * An image in JPEG or PNG format that can be drawn with 
+ * {@link PDFGraphics2D#drawImage(EncodedImage, int, int, int, int)}.  Only 
+ * the header of the encoded data is read when the instance is created.  
+ * Where possible, the encoded data is copied into the PDF output without 
+ * decoding it:
+ * <ul>
+ * <li>baseline and progressive JPEG data with 8-bit gray, RGB or CMYK 
+ * samples is written as-is with the {@code /DCTDecode} filter;</li>
+ * <li>the compressed data for a non-interlaced PNG image with gray, RGB or 
+ * palette colors (including a simple transparent color) and up to 8 bits 
+ * per sample is written with the {@code /FlateDecode} filter and the PNG 
+ * predictors.</li>
+ * </ul>
+ * Other images (for example, a PNG image with an alpha channel or 16-bit 
+ * samples) are decoded with {@code javax.imageio} when they are drawn, and
+ * written in the same way as any other image.  An instance can be drawn 
+ * many times (on any page), the image data is written to the document 
+ * once.
+ * 
+ * @since 2.0
+ */
+public final class EncodedImage {
+    
+    /** The PNG file signature. */
+    private static final byte[] PNG_SIGNATURE = { (byte) 0x89, 'P', 'N', 
+        'G', '\r', '\n', 0x1A, '\n' };
+
+    /** 
+     * The encoded data (position 0, limit at the end of the data), which is
+     * only read with absolute get methods.
+     */
+    private final ByteBuffer data;
+    
+    /** Is the data in JPEG format (otherwise PNG)? */
+    private final boolean jpeg;
+    
+    /** The width (in pixels). */
+    private int width;
+    
+    /** The height (in pixels). */
+    private int height;
+    
+    /** Can the encoded data be written to the PDF output as-is? */
+    private boolean passThrough;
+    
+    /** The number of color components. */
+    private int components;
+    
+    /** The number of bits per component. */
+    private int bitsPerComponent;
+    
+    /** The palette (PNG only, otherwise {@code null}). */
+    private byte[] palette;
+    
+    /** The color key mask (PNG only, otherwise {@code null}). */
+    private int[] colorKey;
+    
+    /** Are the CMYK samples inverted (JPEG only)? */
+    private boolean inverted;
+    
+    /** The offset and length of each IDAT chunk (PNG only). */
+    private int[] chunks;
+    
+    /** The decoded image (created when first needed). */
+    private Image image;
+    
+    /**
+     * Creates a new instance for the encoded data in a byte array.  The 
+     * array is not copied, so it should not be modified after this call.
+     * 
+     * @param data  the data in JPEG or PNG format ({@code null} not 
+     *     permitted).
+     * 
+     * @return The image.
+     * 
+     * @throws IllegalArgumentException if the data is not in JPEG or PNG 
+     *     format.
+     */
+    public static EncodedImage of(byte[] data) {
+        Args.nullNotPermitted(data, "data");
+        return new EncodedImage(ByteBuffer.wrap(data));
+    }
+    
+    /**
+     * Creates a new instance for the encoded data between the position and
+     * the limit of a buffer.  The buffer content is not copied, so it should
+     * not be modified after this call (the position and limit of the buffer
+     * are not changed).
+     * 
+     * @param buffer  the data in JPEG or PNG format ({@code null} not 
+     *     permitted).
+     * 
+     * @return The image.
+     * 
+     * @throws IllegalArgumentException if the data is not in JPEG or PNG 
+     *     format.
+     */
+    public static EncodedImage of(ByteBuffer buffer) {
+        Args.nullNotPermitted(buffer, "buffer");
+        return new EncodedImage(buffer.slice());
+    }
+    
+    /**
+     * Creates a new instance for the encoded data in a JPEG or PNG file.
+     * 
+     * @param path  the path to the file ({@code null} not permitted).
+     * 
+     * @return The image.
+     * 
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if the file is not in JPEG or PNG 
+     *     format.
+     */
+    public static EncodedImage read(Path path) throws IOException {
+        Args.nullNotPermitted(path, "path");
+        return of(Files.readAllBytes(path));
+    }
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param data  the encoded data.
+     */
+    private EncodedImage(ByteBuffer data) {
+        this.data = data;
+        if (startsWith(PNG_SIGNATURE)) {
+            this.jpeg = false;
+            parsePNG();
+        } else if (data.remaining() > 2 && u8(0) == 0xFF && u8(1) == 0xD8) {
+            this.jpeg = true;
+            parseJPEG();
+        } else {
+            throw new IllegalArgumentException(
+                    "The data is not in JPEG or PNG format.");
+        }
+        if (this.width <= 0 || this.height <= 0) {
+            throw new IllegalArgumentException("Invalid image size: " 
+                    + this.width + " x " + this.height);
+        }
+    }
+    
+    /**
+     * Returns the image width.
+     * 
+     * @return The width (in pixels). 
+     */
+    public int getWidth() {
+        return this.width;
+    }
+    
+    /**
+     * Returns the image height.
+     * 
+     * @return The height (in pixels). 
+     */
+    public int getHeight() {
+        return this.height;
+    }
+    
+    /**
+     * Returns {@code true} if the encoded data can be copied to the PDF 
+     * output without decoding it, and {@code false} if the image will be 
+     * decoded (and re-encoded) when it is drawn.
+     * 
+     * @return A boolean.
+     */
+    public boolean isPassThrough() {
+        return this.passThrough;
+    }
+    
+    /**
+     * Returns {@code true} for JPEG data, and {@code false} for PNG data.
+     * 
+     * @return A boolean. 
+     */
+    boolean isJPEG() {
+        return this.jpeg;
+    }
+    
+    /**
+     * Returns the number of color components.
+     * 
+     * @return The number of color components. 
+     */
+    int getComponents() {
+        return this.components;
+    }
+    
+    /**
+     * Returns the number of bits per component.
+     * 
+     * @return The number of bits per component. 
+     */
+    int getBitsPerComponent() {
+        return this.bitsPerComponent;
+    }
+    
+    /**
+     * Returns the palette for a PNG image with palette colors (3 bytes per 
+     * entry).
+     * 
+     * @return The palette (possibly {@code null}). 
+     */
+    byte[] getPalette() {
+        return this.palette;
+    }
+    
+    /**
+     * Returns the color key mask for a PNG image with a transparent color 
+     * (a minimum and maximum value for each component).
+     * 
+     * @return The color key mask (possibly {@code null}). 
+     */
+    int[] getColorKey() {
+        return this.colorKey;
+    }
+    
+    /**
+     * Returns {@code true} for CMYK samples in a JPEG image that are 
+     * inverted (as written by Adobe applications).
+     * 
+     * @return A boolean. 
+     */
+    boolean isInverted() {
+        return this.inverted;
+    }
+    
+    /**
+     * Returns the length of the data that is written to the PDF output for
+     * a pass-through image (all the JPEG data, or the data in the IDAT
+     * chunks for a PNG image).
+     * 
+     * @return The length (in bytes). 
+     */
+    int getStreamLength() {
+        if (this.jpeg) {
+            return this.data.remaining();
+        }
+        int length = 0;
+        for (int i = 1; i < this.chunks.length; i += 2) {
+            length += this.chunks[i];
+        }
+        return length;
+    }
+    
+    /**
+     * Writes the data for a pass-through image to the output stream (all 
+     * the JPEG data, or the data in the IDAT chunks for a PNG image).
+     * 
+     * @param out  the output stream ({@code null} not permitted).
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    void writeStreamData(OutputStream out) throws IOException {
+        if (this.jpeg) {
+            write(out, 0, this.data.remaining());
+        } else {
+            for (int i = 0; i < this.chunks.length; i += 2) {
+                write(out, this.chunks[i], this.chunks[i + 1]);
+            }
+        }
+    }
+    
+    /**
+     * Returns the decoded image, reading it with {@code javax.imageio} the 
+     * first time this method is called.
+     * 
+     * @return The image (never {@code null}).
+     * 
+     * @throws RuntimeException if the image cannot be decoded.
+     */
+    synchronized Image getImage() {
+        if (this.image == null) {
+            byte[] bytes = new byte[this.data.remaining()];
+            this.data.duplicate().get(bytes);
+            try {
+                this.image = ImageIO.read(new ByteArrayInputStream(bytes));
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+            if (this.image == null) {
+                throw new RuntimeException("Unable to decode the image.");
+            }
+        }
+        return this.image;
+    }
+    
+    /**
+     * Writes a range of the encoded data to the output stream.
+     * 
+     * @param out  the output stream.
+     * @param offset  the offset.
+     * @param length  the length.
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    private void write(OutputStream out, int offset, int length) 
+            throws IOException {
+        if (this.data.hasArray()) {
+            out.write(this.data.array(), this.data.arrayOffset() + offset, 
+                    length);
+            return;
+        }
+        ByteBuffer b = this.data.duplicate();
+        b.position(offset);
+        byte[] buffer = new byte[Math.min(length, 8192)];
+        while (length > 0) {
+            int n = Math.min(length, buffer.length);
+            b.get(buffer, 0, n);
+            out.write(buffer, 0, n);
+            length -= n;
+        }
+    }
+
+    /**
+     * Reads the JPEG markers up to the start of the frame, which gives the 
+     * image size and the number of components.
+     */
+    private void parseJPEG() {
+        int limit = this.data.remaining();
+        boolean adobe = false;
+        int p = 2;
+        while (p + 4 <= limit) {
+            if (u8(p) != 0xFF) {
+                throw new IllegalArgumentException("Invalid JPEG data.");
+            }
+            int marker = u8(p + 1);
+            if (marker == 0xFF) {
+                p++;  // fill byte
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                p += 2;  // no length
+                continue;
+            }
+            int length = u16(p + 2);
+            if (marker == 0xEE && length >= 7 && p + 9 <= limit 
+                    && u8(p + 4) == 'A' && u8(p + 5) == 'd' 
+                    && u8(p + 6) == 'o' && u8(p + 7) == 'b' 
+                    && u8(p + 8) == 'e') {
+                adobe = true;
+            }
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 
+                    && marker != 0xC8 && marker != 0xCC) {
+                if (p + 10 > limit) {
+                    break;
+                }
+                this.bitsPerComponent = u8(p + 4);
+                this.height = u16(p + 5);
+                this.width = u16(p + 7);
+                this.components = u8(p + 9);
+                // baseline, extended sequential and progressive (Huffman 
+                // coded) data with 8-bit samples is supported by PDF readers
+                this.passThrough = marker <= 0xC2 
+                        && this.bitsPerComponent == 8 
+                        && (this.components == 1 || this.components == 3 
+                        || this.components == 4);
+                this.inverted = adobe && this.components == 4;
+                return;
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                break;
+            }
+            p += 2 + length;
+        }
+        throw new IllegalArgumentException(
+                "No frame header found in the JPEG data.");
+    }
+    
+    /**
+     * Reads the PNG chunks to find the image header, the palette, the 
+     * transparency and the image data chunks.
+     */
+    private void parsePNG() {
+        int limit = this.data.remaining();
+        int p = PNG_SIGNATURE.length;
+        int colorType = -1;
+        boolean interlaced = false;
+        byte[] trns = null;
+        int[] idat = new int[16];
+        int idatCount = 0;
+        while (limit - p >= 8) {
+            int length = this.data.getInt(p);
+            int type = this.data.getInt(p + 4);
+            int start = p + 8;
+            // compare with the space left (start + length can overflow)
+            if (length < 0 || length > limit - start 
+                    || (type == 0x49484452 && length < 13)) {
+                throw new IllegalArgumentException("Invalid PNG data.");
+            }
+            if (type == 0x49484452) {  // IHDR
+                this.width = this.data.getInt(start);
+                this.height = this.data.getInt(start + 4);
+                this.bitsPerComponent = u8(start + 8);
+                colorType = u8(start + 9);
+                interlaced = u8(start + 12) != 0;
+            } else if (type == 0x504C5445) {  // PLTE
+                this.palette = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    this.palette[i] = this.data.get(start + i);
+                }
+            } else if (type == 0x74524E53) {  // tRNS
+                trns = new byte[length];
+                for (int i = 0; i < length; i++) {
+                    trns[i] = this.data.get(start + i);
+                }
+            } else if (type == 0x49444154) {  // IDAT
+                if (idatCount == idat.length) {
+                    idat = Arrays.copyOf(idat, idat.length * 2);
+                }
+                idat[idatCount++] = start;
+                idat[idatCount++] = length;
+            } else if (type == 0x49454E44) {  // IEND
+                break;
+            }
+            if (limit - start - length < 4) {
+                break;  // no CRC
+            }
+            p = start + length + 4;  // skip the CRC
+        }
+        if (colorType < 0 || idatCount == 0) {
+            throw new IllegalArgumentException(
+                    "No image header or data found in the PNG data.");
+        }
+        this.chunks = Arrays.copyOf(idat, idatCount);
+        this.components = colorType == 2 ? 3 : 1;
+        // an alpha channel or interlaced rows cannot be passed to PDF 
+        // readers as-is, and 16-bit samples need PDF 1.5
+        this.passThrough = !interlaced && this.bitsPerComponent <= 8 
+                && (colorType == 0 || colorType == 2 
+                || (colorType == 3 && this.palette != null));
+        if (this.passThrough && trns != null) {
+            this.colorKey = colorKey(colorType, trns);
+            this.passThrough = this.colorKey != null;
+        }
+    }
+    
+    /**
+     * Returns the color key mask for the transparency in a PNG image, or 
+     * {@code null} if the transparency cannot be written as a color key 
+     * mask (for example, palette entries that are partly transparent).
+     * 
+     * @param colorType  the PNG color type.
+     * @param trns  the data in the tRNS chunk.
+     * 
+     * @return The color key mask (possibly {@code null}). 
+     */
+    private static int[] colorKey(int colorType, byte[] trns) {
+        if (colorType == 0 && trns.length >= 2) {
+            int g = (trns[0] & 0xFF) << 8 | (trns[1] & 0xFF);
+            return new int[] { g, g };
+        }
+        if (colorType == 2 && trns.length >= 6) {
+            int[] key = new int[6];
+            for (int i = 0; i < 3; i++) {
+                int v = (trns[i * 2] & 0xFF) << 8 | (trns[i * 2 + 1] & 0xFF);
+                key[i * 2] = v;
+                key[i * 2 + 1] = v;
+            }
+            return key;
+        }
+        if (colorType == 3) {
+            // the transparent entries must be a single range of indices
+            int first = -1;
+            int last = -1;
+            for (int i = 0; i < trns.length; i++) {
+                int alpha = trns[i] & 0xFF;
+                if (alpha == 0) {
+                    if (first < 0) {
+                        first = i;
+                    } else if (last != i - 1) {
+                        return null;
+                    }
+                    last = i;
+                } else if (alpha != 255) {
+                    return null;
+                }
+            }
+            return first < 0 ? new int[0] : new int[] { first, last };
+        }
+        return null;
+    }
+    
+    /**
+     * Returns {@code true} if the data starts with the specified bytes.
+     * 
+     * @param prefix  the bytes.
+     * 
+     * @return A boolean. 
+     */
+    private boolean startsWith(byte[] prefix) {
+        if (this.data.remaining() < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (this.data.get(i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the unsigned byte at the specified offset.
+     * 
+     * @param offset  the offset.
+     * 
+     * @return The byte value (0 to 255). 
+     */
+    private int u8(int offset) {
+        return this.data.get(offset) & 0xFF;
+    }
+    
+    /**
+     * Returns the unsigned 16-bit big-endian value at the specified offset.
+     * 
+     * @param offset  the offset.
+     * 
+     * @return The value (0 to 65535). 
+     */
+    private int u16(int offset) {
+        return u8(offset) << 8 | u8(offset + 1);
+    }
+
+}
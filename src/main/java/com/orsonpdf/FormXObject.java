@@ -0,0 +1,89 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+package com.orsonpdf;
+
+import java.awt.geom.Rectangle2D;
+import com.orsonpdf.util.Args;
+
+/**
+ * A form XObject containing graphics that can be drawn many times from a 
+ * content stream with the 'Do' operator.  The form has no resources of its
+ * own (it contains path construction and painting operators only) and 
+ * inherits the graphics state in effect where it is drawn.
+ */
+final class FormXObject extends Stream {
+
+    /** The form content. */
+    private final byte[] content;
+    
+    /** The bounding box in form space. */
+    private final Rectangle2D bbox;
+    
+    /**
+     * Creates a new form.
+     * 
+     * @param number  the PDF object number.
+     * @param content  the content ({@code null} not permitted).
+     * @param bbox  the bounding box in form space ({@code null} not 
+     *     permitted).
+     */
+    FormXObject(int number, byte[] content, Rectangle2D bbox) {
+        super(number);
+        Args.nullNotPermitted(content, "content");
+        Args.nullNotPermitted(bbox, "bbox");
+        this.content = content;
+        this.bbox = bbox;
+    }
+
+    @Override
+    public byte[] getRawStreamData() {
+        return this.content;
+    }
+
+    /**
+     * Creates a dictionary reflecting the current configuration for this
+     * form.
+     * 
+     * @param streamLength  the stream length.
+     * 
+     * @return A dictionary. 
+     */
+    @Override
+    protected Dictionary createDictionary(int streamLength) {
+        Dictionary dictionary = super.createDictionary(streamLength);
+        dictionary.setType("/XObject");
+        dictionary.put("/Subtype", "/Form");
+        dictionary.put("/BBox", this.bbox);
+        return dictionary;
+    }
+
+}
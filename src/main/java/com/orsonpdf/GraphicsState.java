@@ -0,0 +1,166 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+
+package com.orsonpdf;
+
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.util.Arrays;
+
+/**
+ * The parts of the PDF graphics state that are tracked by a 
+ * {@link GraphicsStream}, so that operators are only written when a 
+ * drawing operation needs a value that differs from the one already in 
+ * effect.  The same class records both the state required by the next 
+ * drawing operation and the state in effect in the content stream (where
+ * unknown values are represented by {@code -1}, {@code NaN} or 
+ * {@code null}).
+ */
+final class GraphicsState {
+
+    /** The stroke color (RGB), or -1 if not known or a pattern is used. */
+    int strokeRGB;
+    
+    /** The stroke pattern name, or {@code null}. */
+    String strokePattern;
+    
+    /** The fill color (RGB), or -1 if not known or a pattern is used. */
+    int fillRGB;
+    
+    /** The fill pattern name, or {@code null}. */
+    String fillPattern;
+    
+    /** The line width ({@code NaN} if not known). */
+    float lineWidth;
+    
+    /** The line cap (-1 if not known). */
+    int lineCap;
+    
+    /** The line join (-1 if not known). */
+    int lineJoin;
+    
+    /** The dash array ({@code null} for solid lines). */
+    float[] dashArray;
+    
+    /** Is the dash array known? */
+    boolean dashKnown;
+    
+    /** The alpha value (0 to 255) for stroking and filling. */
+    int alpha;
+
+    /** 
+     * The transform relative to the base coordinate system of the stream 
+     * ({@code null} for the identity transform).  An instance assigned to 
+     * this field is never modified afterwards, so it can be shared between
+     * copies.
+     */
+    AffineTransform transform;
+    
+    /** 
+     * The clip in device space ({@code null} for no clip).  As for the
+     * transform, an instance assigned to this field is never modified.
+     */
+    Shape clip;
+
+    /**
+     * Creates a new state where every value is unknown, apart from the 
+     * alpha value which is opaque (the PDF default).
+     */
+    GraphicsState() {
+        this.strokeRGB = -1;
+        this.fillRGB = -1;
+        this.lineWidth = Float.NaN;
+        this.lineCap = -1;
+        this.lineJoin = -1;
+        this.alpha = 255;
+    }
+    
+    /**
+     * Creates a copy of the specified state.
+     * 
+     * @param state  the state ({@code null} not permitted).
+     */
+    GraphicsState(GraphicsState state) {
+        this.strokeRGB = state.strokeRGB;
+        this.strokePattern = state.strokePattern;
+        this.fillRGB = state.fillRGB;
+        this.fillPattern = state.fillPattern;
+        this.lineWidth = state.lineWidth;
+        this.lineCap = state.lineCap;
+        this.lineJoin = state.lineJoin;
+        this.dashArray = state.dashArray;
+        this.dashKnown = state.dashKnown;
+        this.alpha = state.alpha;
+        this.transform = state.transform;
+        this.clip = state.clip;
+    }
+    
+    /**
+     * Returns {@code true} if the dash array in this state is known and 
+     * equal to the specified array.
+     * 
+     * @param dash  the dash array ({@code null} for solid lines).
+     * 
+     * @return A boolean.
+     */
+    boolean isDashArray(float[] dash) {
+        return this.dashKnown && Arrays.equals(this.dashArray, dash);
+    }
+    
+    /**
+     * Returns {@code true} if the transform in this state is equal to the 
+     * specified transform.
+     * 
+     * @param t  the transform ({@code null} not permitted).
+     * 
+     * @return A boolean.
+     */
+    boolean isTransform(AffineTransform t) {
+        if (this.transform == null) {
+            return t.isIdentity();
+        }
+        return this.transform.equals(t);
+    }
+    
+    /**
+     * Returns {@code true} if the clip in this state is the same as (or 
+     * equal to) the specified clip.
+     * 
+     * @param clip  the clip ({@code null} permitted).
+     * 
+     * @return A boolean.
+     */
+    boolean isClip(Shape clip) {
+        return this.clip == clip || (clip != null && clip.equals(this.clip));
+    }
+
+}
@@ -43,13 +43,18 @@ import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Line2D;
 import java.awt.geom.NoninvertibleTransformException;
-import java.awt.geom.Path2D;
 import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import com.orsonpdf.util.Args;
+import com.orsonpdf.util.GraphicsUtils;
 
 /**
  * A {@code Stream} that contains graphics for the PDF document that
@@ -68,25 +73,96 @@ public class GraphicsStream extends Stream {
     private Page page;
     
     /** The stream content. */
-    private ByteArrayOutputStream content;
+    private ContentBuffer content;
     
     /** The most recent font applied. */
     private Font font;
     
-    /** The most recent alpha transparency value (in the range 0 to 255). */
-    private int alpha;
+    /** The graphics state required by the next drawing operation. */
+    private final GraphicsState requiredState;
     
-    private AffineTransform prevTransInv;
+    /** The graphics state in effect at the end of the content stream. */
+    private GraphicsState currentState;
     
-    /**
-     * The decimal formatter for coordinates of geometrical shapes.
+    /** The graphics states saved by the 'q' operator. */
+    private final ArrayDeque<GraphicsState> savedStates;
+    
+    /** The transform required by the next drawing operation. */
+    private final AffineTransform requiredTransform;
+    
+    /** 
+     * The number of saved states at the base of the current level (see
+     * {@link #openLevel()}).
      */
-    private DecimalFormat geometryFormat;
+    private int levelDepth;
     
-    /**
-     * The decimal formatter for transform matrices.
+    /** 
+     * The transform in effect at the base of the current level 
+     * ({@code null} for the identity transform).
      */
-    private DecimalFormat transformFormat;
+    private AffineTransform levelTransform;
+    
+    /** The clip (in device space) required by the next drawing operation. */
+    private Shape requiredClip;
+    
+    /** 
+     * A flag that indicates that the first saved state above the base of the
+     * current level was saved so that the clip can be reset with 'Q'.
+     */
+    private boolean clipSaved;
+    
+    /** 
+     * A flag that indicates that the next saved state above the base of the
+     * current level (after the clip) was saved so that the transform can be
+     * reset with 'Q'.
+     */
+    private boolean transformSaved;
+    
+    /** The enclosing levels. */
+    private final ArrayDeque<Level> levels;
+    
+    /** The id for the next level that is opened. */
+    private int nextLevelId;
+    
+    /** 
+     * The size of the content immediately after the most recent 'q' 
+     * operator (or -1).  If the matching 'Q' comes at the same position, 
+     * both operators are dropped.
+     */
+    private int emptySaveEnd;
+    
+    /** 
+     * The {@link PDFGraphics2D} instance whose attributes are reflected in 
+     * the required state (possibly {@code null}).
+     */
+    private PDFGraphics2D owner;
+    
+    /** The number of decimal places for coordinates and lengths. */
+    private int geometryDecimals;
+    
+    /** The number of decimal places for transform matrices. */
+    private int transformDecimals;
+    
+    /** The number of decimal places for color components. */
+    private int colorDecimals;
+    
+    /** The maximum number of shapes recorded for reuse as form XObjects. */
+    private static final int SHAPE_CACHE_SIZE = 256;
+    
+    /** The maximum number of segments in a shape for reuse. */
+    private static final int MAX_REUSE_SEGMENTS = 64;
+    
+    /** 
+     * The shapes recorded for reuse as form XObjects, with the least 
+     * recently used shape first (created when needed).
+     */
+    private Map<ShapeKey, ShapeEntry> shapeCache;
+    
+    /** The simplifier for runs of line segments (created when needed). */
+    private PathSimplifier simplifier;
+    
+    /** Statistics for the content written to this stream. */
+    private final PageStatistics statistics;
     
     /**
      * Creates a new instance.
@@ -97,36 +173,169 @@ public class GraphicsStream extends Stream {
     GraphicsStream(int number, Page page) {
         super(number);
         this.page = page;
-        this.content = new ByteArrayOutputStream();
+        this.content = new ContentBuffer();
         this.font = new Font("Dialog", Font.PLAIN, 12);
-        this.alpha = 255;
-        // force the formatters to use a '.' for the decimal point
-        DecimalFormatSymbols dfs = new DecimalFormatSymbols();
-        dfs.setDecimalSeparator('.');
-        this.geometryFormat = new DecimalFormat("0.##", dfs);
-        this.transformFormat = new DecimalFormat("0.######", dfs);
+        this.requiredState = new GraphicsState();
+        this.currentState = new GraphicsState();
+        this.savedStates = new ArrayDeque<GraphicsState>();
+        this.requiredTransform = new AffineTransform();
+        this.levels = new ArrayDeque<Level>();
+        this.nextLevelId = 1;
+        this.emptySaveEnd = -1;
+        this.statistics = new PageStatistics();
+        PDFDocument document = page.getDocument();
+        this.geometryDecimals = document.getGeometryPrecision();
+        this.transformDecimals = document.getTransformPrecision();
+        this.colorDecimals = document.getColorPrecision();
     }
     
-    private void addContent(String s) {
-        try {
-            this.content.write(PDFUtils.toBytes(s));
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * Returns the buffer that content is appended to.
+     * 
+     * @return The content buffer (never {@code null}).
+     */
+    private ContentBuffer content() {
+        if (this.content == null) {
+            throw new IllegalStateException("The page is finished.");
         }
+        return this.content;
     }
 
     /**
-     * Pushes the current graphics state onto a stack for later retrieval.
+     * Writes the 'Q' operator and restores the state that was saved by the
+     * matching 'q' operator.
+     */
+    private void popGraphicsState() {
+        ContentBuffer b = content();
+        if (b.size() == this.emptySaveEnd) {
+            b.truncate(this.emptySaveEnd - 2);
+        } else {
+            b.append("Q\n");
+        }
+        this.emptySaveEnd = -1;
+        this.currentState = this.savedStates.isEmpty() ? new GraphicsState() 
+                : this.savedStates.pop();
+    }
+    
+    /**
+     * Writes the 'q' operator and saves the state in effect.
+     */
+    private void saveState() {
+        ContentBuffer b = content().append("q\n");
+        this.emptySaveEnd = b.size();
+        this.savedStates.push(new GraphicsState(this.currentState));
+    }
+    
+    /**
+     * Opens a new level for a child graphics instance (see
+     * {@link PDFGraphics2D#create()}).  Nothing is written until something
+     * is drawn in the new level, then the state in effect is saved with the
+     * 'q' operator (after closing any clip in effect, so that the new level
+     * can set any clip) and inherited by the new level.  Transforms in the 
+     * new level are written relative to the transform in effect when the 
+     * level is opened.
+     * 
+     * @return The id for the level (used to close it later).
+     * 
+     * @see #closeLevel(int) 
      */
-    void pushGraphicsState() {
-        addContent("q\n");    
+    int openLevel() {
+        int id = this.nextLevelId++;
+        this.levels.push(new Level(id));
+        return id;
     }
     
     /**
-     * Pops the graphics state that was previously pushed onto the stack.
+     * Writes the 'q' operator for each level that has been opened but not
+     * yet written.
      */
-    void popGraphicsState() {
-        addContent("Q\n");
+    private void writePendingLevels() {
+        if (this.levels.isEmpty() || this.levels.peek().written) {
+            return;
+        }
+        Iterator<Level> iterator = this.levels.descendingIterator();
+        while (iterator.hasNext()) {
+            Level level = iterator.next();
+            if (level.written) {
+                continue;
+            }
+            if (this.clipSaved) {
+                if (this.transformSaved) {
+                    popGraphicsState();
+                    this.transformSaved = false;
+                }
+                popGraphicsState();
+                this.clipSaved = false;
+            }
+            level.written = true;
+            level.depth = this.levelDepth;
+            level.transform = this.levelTransform;
+            level.clipSaved = this.clipSaved;
+            level.transformSaved = this.transformSaved;
+            saveState();
+            this.levelDepth = this.savedStates.size();
+            this.levelTransform = this.currentState.transform;
+            this.transformSaved = false;
+        }
+    }
+    
+    /**
+     * Closes the specified level, restoring the state in effect when the 
+     * level was opened with the 'Q' operator.  Any levels opened after the
+     * specified level that are still open are closed first, and a level
+     * that is already closed is ignored.
+     * 
+     * @param id  the level id.
+     * 
+     * @see #openLevel() 
+     */
+    void closeLevel(int id) {
+        boolean found = false;
+        for (Level level : this.levels) {
+            if (level.id == id) {
+                found = true;
+                break;
+            }
+        }
+        if (!found) {
+            return;
+        }
+        Level level;
+        do {
+            level = this.levels.pop();
+            if (level.written) {
+                while (this.savedStates.size() >= this.levelDepth 
+                        && !this.savedStates.isEmpty()) {
+                    popGraphicsState();
+                }
+                this.levelDepth = level.depth;
+                this.levelTransform = level.transform;
+                this.clipSaved = level.clipSaved;
+                this.transformSaved = level.transformSaved;
+            }
+        } while (level.id != id);
+    }
+    
+    /**
+     * Returns the {@link PDFGraphics2D} instance whose attributes are 
+     * reflected in the state required by the next drawing operation.
+     * 
+     * @return The owner (possibly {@code null}). 
+     */
+    PDFGraphics2D getOwner() {
+        return this.owner;
+    }
+    
+    /**
+     * Sets the {@link PDFGraphics2D} instance whose attributes are 
+     * reflected in the state required by the next drawing operation.  When
+     * several instances draw to the same stream, an instance that is not 
+     * the owner must apply all of its attributes before drawing.
+     * 
+     * @param owner  the owner ({@code null} permitted).
+     */
+    void setOwner(PDFGraphics2D owner) {
+        this.owner = owner;
     }
     
     /**
@@ -135,36 +344,75 @@ public class GraphicsStream extends Stream {
      * @param t  the transform ({@code null} not permitted).
      */
     void applyTransform(AffineTransform t) {
-        StringBuilder b = new StringBuilder();
-        b.append(transformDP(t.getScaleX())).append(" ");
-        b.append(transformDP(t.getShearY())).append(" ");
-        b.append(transformDP(t.getShearX())).append(" ");
-        b.append(transformDP(t.getScaleY())).append(" ");
-        b.append(transformDP(t.getTranslateX())).append(" ");
-        b.append(transformDP(t.getTranslateY())).append(" cm\n");
-        addContent(b.toString());
+        ContentBuffer b = content();
+        transformDP(t.getScaleX()).append(' ');
+        transformDP(t.getShearY()).append(' ');
+        transformDP(t.getShearX()).append(' ');
+        transformDP(t.getScaleY()).append(' ');
+        transformDP(t.getTranslateX()).append(' ');
+        transformDP(t.getTranslateY());
+        b.append(" cm\n");
     }
     
     /**
-     * Sets the transform.
+     * Sets the transform.  No operators are written until the transform is 
+     * needed by a drawing operation, so any number of changes between two
+     * drawing operations results in (at most) a single 'cm' operator.
      * 
      * @param t  the transform ({@code null} not permitted). 
      */
     void setTransform(AffineTransform t) {
-        AffineTransform tt = new AffineTransform(t);
-        try {
-            AffineTransform inv = tt.createInverse();
-            AffineTransform comb;
-            if (this.prevTransInv != null) {
-                comb = new AffineTransform(this.prevTransInv);
-                comb.concatenate(tt);
-            } else {
-                comb = tt;
+        this.requiredTransform.setTransform(t);
+    }
+    
+    /**
+     * Writes the operators (if any) required to bring the transform in the
+     * content stream up to date.  At the base of a level the transform is 
+     * written as a single 'cm' relative to the base state (restoring the 
+     * base state with 'Q' and saving it again with 'q' when the transform 
+     * changes), so that errors do not accumulate.
+     */
+    private void updateTransform() {
+        if (this.currentState.isTransform(this.requiredTransform)) {
+            return;
+        }
+        if (this.transformSaved) {
+            popGraphicsState();
+            this.transformSaved = false;
+            if (this.currentState.isTransform(this.requiredTransform)) {
+                return;
             }
-            this.prevTransInv = inv;
-            applyTransform(comb);
+        }
+        AffineTransform delta = relativeTransform(this.levelTransform);
+        if (delta != null) {
+            saveState();
+            this.transformSaved = true;
+            applyTransform(delta);
+            this.currentState.transform 
+                    = new AffineTransform(this.requiredTransform);
+        }
+    }
+    
+    /**
+     * Returns the transform that maps the required transform onto the 
+     * specified base transform.
+     * 
+     * @param base  the base transform ({@code null} for the identity 
+     *     transform).
+     * 
+     * @return The relative transform, or {@code null} if the base transform 
+     *     is not invertible.
+     */
+    private AffineTransform relativeTransform(AffineTransform base) {
+        if (base == null) {
+            return this.requiredTransform;
+        }
+        try {
+            AffineTransform result = base.createInverse();
+            result.concatenate(this.requiredTransform);
+            return result;
         } catch (NoninvertibleTransformException e) {
-          // do nothing
+            return null;
         }
     }
 
@@ -174,33 +422,106 @@ public class GraphicsStream extends Stream {
      * @param t  the transform ({@code null} not permitted). 
      */
     void applyTextTransform(AffineTransform t) {
-        StringBuilder b = new StringBuilder();
-        b.append(t.getScaleX()).append(" ");
-        b.append(t.getShearY()).append(" ");
-        b.append(t.getShearX()).append(" ");
-        b.append(t.getScaleY()).append(" ");
-        b.append(t.getTranslateX()).append(" ");
-        b.append(t.getTranslateY()).append(" Tm\n");
-        addContent(b.toString());
+        ContentBuffer b = content();
+        transformDP(t.getScaleX()).append(' ');
+        transformDP(t.getShearY()).append(' ');
+        transformDP(t.getShearX()).append(' ');
+        transformDP(t.getScaleY()).append(' ');
+        transformDP(t.getTranslateX()).append(' ');
+        transformDP(t.getTranslateY());
+        b.append(" Tm\n");
     }
     
     /**
-     * Applies the specified clip to the current clip.
+     * Sets the clip.  No operators are written until the clip is needed by a
+     * drawing operation, and the clip then remains in effect for all the 
+     * following drawing operations until it is changed.
      * 
-     * @param clip  the clip ({@code null} not permitted). 
+     * @param clip  the clip in device space ({@code null} permitted).  The 
+     *     caller should not modify the clip after passing it to this method.
+     */
+    void setClip(Shape clip) {
+        this.requiredClip = clip;
+    }
+    
+    /**
+     * Writes the operators (if any) required to bring the clip in the 
+     * content stream up to date.  The clip is written (relative to the 
+     * transform at the base of the level) after saving the state with 'q', 
+     * and the previous clip (if any) is removed first by restoring the state
+     * with 'Q'.  The transform (if saved) is restored too, and is written 
+     * again by {@link #updateTransform()}.
      */
-    void applyClip(Shape clip) {
-        Args.nullNotPermitted(clip, "clip");
-        StringBuilder b = new StringBuilder();
-        Path2D p = new Path2D.Double(clip);
-        b.append(getPDFPath(p));
-        b.append("W n\n");
-        addContent(b.toString());
+    private void updateClip() {
+        Shape clip = this.requiredClip;
+        if (this.currentState.isClip(clip)) {
+            return;
+        }
+        if (this.transformSaved) {
+            popGraphicsState();
+            this.transformSaved = false;
+        }
+        if (this.clipSaved) {
+            popGraphicsState();
+            this.clipSaved = false;
+        }
+        if (clip != null) {
+            saveState();
+            this.clipSaved = true;
+            writeClip(clip, this.levelTransform);
+        }
+    }
+    
+    /**
+     * Writes the clip path (using the 're' operator for a rectangle) followed
+     * by the 'W n' operators, and records the clip in the current state.
+     * 
+     * @param clip  the clip in device space ({@code null} not permitted).
+     * @param t  the transform in effect ({@code null} for the identity 
+     *     transform).
+     */
+    private void writeClip(Shape clip, AffineTransform t) {
+        AffineTransform inv = null;
+        if (t != null) {
+            try {
+                inv = t.createInverse();
+            } catch (NoninvertibleTransformException e) {
+                // leave the clip as it is
+            }
+        }
+        Rectangle2D rect = null;
+        if (clip instanceof Rectangle2D) {
+            rect = (Rectangle2D) clip;
+            if (inv != null) {
+                rect = GraphicsUtils.transformRectangle(rect, inv);
+            }
+        }
+        if (rect != null) {
+            writeRect(rect);
+            content().append("W n\n");
+        } else {
+            PathIterator iterator = clip.getPathIterator(inv);
+            writePath(iterator, 0.0);
+            content().append(iterator.getWindingRule() 
+                    == PathIterator.WIND_EVEN_ODD ? "W* n\n" : "W n\n");
+        }
+        this.currentState.clip = clip;
+    }
+    
+    /**
+     * Writes the operators (if any) required to bring the clip and 
+     * transform in the content stream up to date before drawing.
+     */
+    private void prepare() {
+        writePendingLevels();
+        updateClip();
+        updateTransform();
     }
     
     /**
      * Applies a stroke.  If the stroke is not an instance of 
-     * {@code BasicStroke} this method will do nothing.
+     * {@code BasicStroke} this method will do nothing.  No operators are 
+     * written until the stroke is needed by a drawing operation.
      * 
      * @param s  the stroke. 
      */
@@ -209,17 +530,11 @@ public class GraphicsStream extends Stream {
             return;
         }
         BasicStroke bs = (BasicStroke) s;
-        StringBuilder b = new StringBuilder();
-        b.append(bs.getLineWidth()).append(" ").append("w\n");
-        b.append(bs.getEndCap()).append(" J\n");
-        b.append(bs.getLineJoin()).append(" j\n");
-        float[] dashArray = bs.getDashArray();
-        if (dashArray != null) {
-            b.append(PDFUtils.toPDFArray(dashArray)).append(" 0 d\n");
-        } else {
-            b.append("[] 0 d\n");
-        }
-        addContent(b.toString());
+        this.requiredState.lineWidth = bs.getLineWidth();
+        this.requiredState.lineCap = bs.getEndCap();
+        this.requiredState.lineJoin = bs.getLineJoin();
+        this.requiredState.dashArray = bs.getDashArray();
+        this.requiredState.dashKnown = true;
     }
     
     /**
@@ -228,13 +543,8 @@ public class GraphicsStream extends Stream {
      * @param c  the color ({@code null} not permitted). 
      */
     void applyStrokeColor(Color c) {
-        float red = c.getRed() / 255f;
-        float green = c.getGreen() / 255f;
-        float blue = c.getBlue() / 255f;
-        StringBuilder b = new StringBuilder();
-        b.append(red).append(" ").append(green).append(" ").append(blue)
-                .append(" RG\n");
-        addContent(b.toString());
+        this.requiredState.strokeRGB = c.getRGB() & 0xFFFFFF;
+        this.requiredState.strokePattern = null;
         applyAlpha(c.getAlpha());
     }
     
@@ -244,13 +554,8 @@ public class GraphicsStream extends Stream {
      * @param c  the color ({@code null} not permitted).
      */
     void applyFillColor(Color c) {
-        float red = c.getRed() / 255f;
-        float green = c.getGreen() / 255f;
-        float blue = c.getBlue() / 255f;
-        StringBuilder b = new StringBuilder();
-        b.append(red).append(" ").append(green).append(" ").append(blue)
-                .append(" rg\n");
-        addContent(b.toString());
+        this.requiredState.fillRGB = c.getRGB() & 0xFFFFFF;
+        this.requiredState.fillPattern = null;
         applyAlpha(c.getAlpha());
     }
     
@@ -261,23 +566,17 @@ public class GraphicsStream extends Stream {
      */
     void applyStrokeGradient(GradientPaint gp) {
         // delegate arg checking
-        String patternName = this.page.findOrCreatePattern(gp);
-        StringBuilder b = new StringBuilder("/Pattern CS\n");
-        b.append(patternName).append(" SCN\n");
-        addContent(b.toString());
+        this.requiredState.strokePattern = this.page.findOrCreatePattern(gp);
     }
     
     /**
      * Applies a {@code RadialGradientPaint} for stroking.
      * 
      * @param rgp  the gradient paint ({@code null} not permitted).
-     */    
+     */
     void applyStrokeGradient(RadialGradientPaint rgp) {
         // delegate arg checking
-        String patternName = this.page.findOrCreatePattern(rgp);
-        StringBuilder b = new StringBuilder("/Pattern CS\n");
-        b.append(patternName).append(" SCN\n");
-        addContent(b.toString());        
+        this.requiredState.strokePattern = this.page.findOrCreatePattern(rgp);
     }
 
     /**
@@ -287,10 +586,7 @@ public class GraphicsStream extends Stream {
      */
     void applyFillGradient(GradientPaint gp) {
         // delegate arg checking
-        String patternName = this.page.findOrCreatePattern(gp);
-        StringBuilder b = new StringBuilder("/Pattern cs\n");
-        b.append(patternName).append(" scn\n");
-        addContent(b.toString());
+        this.requiredState.fillPattern = this.page.findOrCreatePattern(gp);
     }
 
     /**
@@ -300,10 +596,7 @@ public class GraphicsStream extends Stream {
      */
     void applyFillGradient(RadialGradientPaint rgp) {
         // delegate arg checking
-        String patternName = this.page.findOrCreatePattern(rgp);
-        StringBuilder b = new StringBuilder("/Pattern cs\n");
-        b.append(patternName).append(" scn\n");
-        addContent(b.toString());
+        this.requiredState.fillPattern = this.page.findOrCreatePattern(rgp);
     }
 
     private float alphaFactor = 1.0f;
@@ -318,14 +611,7 @@ public class GraphicsStream extends Stream {
             this.alphaFactor = 1.0f;
         } else {
             this.alphaFactor = alphaComp.getAlpha();
-            int a = (int) (alphaComp.getAlpha() * 255f);
-            if (this.alpha != a) {
-                String name = this.page.findOrCreateGSDictionary(a);
-                StringBuilder b = new StringBuilder();
-                b.append(name).append(" gs\n");
-                addContent(b.toString());
-                this.alpha = a;
-            }
+            this.requiredState.alpha = (int) (alphaComp.getAlpha() * 255f);
         }
     }
     
@@ -336,67 +622,582 @@ public class GraphicsStream extends Stream {
      *     to {@code 255}). 
      */
     void applyAlpha(int alpha) {
-        int a = (int) (alpha * this.alphaFactor);
-        if (this.alpha != a) {
+        this.requiredState.alpha = (int) (alpha * this.alphaFactor);
+    }
+    
+    /**
+     * Writes the operators (if any) required to bring the stroke color and
+     * stroke attributes in the content stream up to date, ready for a 
+     * stroking operation.
+     */
+    private void updateStrokeState() {
+        GraphicsState required = this.requiredState;
+        GraphicsState current = this.currentState;
+        ContentBuffer b = content();
+        if (required.strokePattern != null) {
+            if (!required.strokePattern.equals(current.strokePattern)) {
+                b.append("/Pattern CS\n").append(required.strokePattern)
+                        .append(" SCN\n");
+                current.strokePattern = required.strokePattern;
+                current.strokeRGB = -1;
+            }
+        } else if (required.strokeRGB != current.strokeRGB) {
+            appendRGB(required.strokeRGB).append(" RG\n");
+            current.strokeRGB = required.strokeRGB;
+            current.strokePattern = null;
+        }
+        if (required.lineWidth != current.lineWidth) {
+            geomDP(required.lineWidth).append(" w\n");
+            current.lineWidth = required.lineWidth;
+        }
+        if (required.lineCap != current.lineCap) {
+            b.append(required.lineCap).append(" J\n");
+            current.lineCap = required.lineCap;
+        }
+        if (required.lineJoin != current.lineJoin) {
+            b.append(required.lineJoin).append(" j\n");
+            current.lineJoin = required.lineJoin;
+        }
+        if (required.dashKnown && !current.isDashArray(required.dashArray)) {
+            float[] dashArray = required.dashArray;
+            b.append('[');
+            if (dashArray != null) {
+                for (int i = 0; i < dashArray.length; i++) {
+                    if (i != 0) {
+                        b.append(' ');
+                    }
+                    geomDP(dashArray[i]);
+                }
+            }
+            b.append("] 0 d\n");
+            current.dashArray = dashArray;
+            current.dashKnown = true;
+        }
+        updateAlpha();
+    }
+    
+    /**
+     * Writes the operators (if any) required to bring the fill color in the
+     * content stream up to date, ready for a filling operation (or text).
+     */
+    private void updateFillState() {
+        GraphicsState required = this.requiredState;
+        GraphicsState current = this.currentState;
+        if (required.fillPattern != null) {
+            if (!required.fillPattern.equals(current.fillPattern)) {
+                content().append("/Pattern cs\n").append(required.fillPattern)
+                        .append(" scn\n");
+                current.fillPattern = required.fillPattern;
+                current.fillRGB = -1;
+            }
+        } else if (required.fillRGB != current.fillRGB) {
+            appendRGB(required.fillRGB).append(" rg\n");
+            current.fillRGB = required.fillRGB;
+            current.fillPattern = null;
+        }
+        updateAlpha();
+    }
+    
+    /**
+     * Writes the operator (if required) to bring the alpha transparency in
+     * the content stream up to date.
+     */
+    private void updateAlpha() {
+        int a = this.requiredState.alpha;
+        if (this.currentState.alpha != a) {
             String name = this.page.findOrCreateGSDictionary(a);
-            StringBuilder b = new StringBuilder();
-            b.append(name).append(" gs\n");
-            addContent(b.toString());
-            this.alpha = a;
+            content().append(name).append(" gs\n");
+            this.currentState.alpha = a;
         }
     }
     
-    private String geomDP(double d) {
-        if (this.geometryFormat != null) {
-            return geometryFormat.format(d);            
+    /**
+     * Appends the red, green and blue components of a color.
+     * 
+     * @param rgb  the color (as RGB).
+     * 
+     * @return The content buffer.
+     */
+    private ContentBuffer appendRGB(int rgb) {
+        return content().append(((rgb >> 16) & 0xFF) / 255f, 
+                this.colorDecimals).append(' ')
+                .append(((rgb >> 8) & 0xFF) / 255f, this.colorDecimals)
+                .append(' ')
+                .append((rgb & 0xFF) / 255f, this.colorDecimals);
+    }
+    
+    private ContentBuffer geomDP(double d) {
+        return content().append(d, this.geometryDecimals);
+    }
+    
+    private ContentBuffer transformDP(double d) {
+        return content().append(d, this.transformDecimals);
+    }
+
+    /**
+     * Returns the bounds of the page that this stream belongs to.
+     * 
+     * @return The page bounds (never {@code null}).
+     */
+    Rectangle2D getPageBounds() {
+        return this.page.getBounds();
+    }
+    
+    /**
+     * Returns the statistics for the content written to this stream.
+     * 
+     * @return The statistics (never {@code null}).
+     */
+    PageStatistics getStatistics() {
+        return this.statistics;
+    }
+    
+    /**
+     * Draws the outline of the specified shape.
+     * 
+     * @param shape  the shape ({@code null} not permitted). 
+     * @param tolerance  the tolerance (in device space) for simplifying 
+     *     runs of line segments ({@code 0.0} or less to write all segments).
+     */
+    void drawShape(Shape shape, double tolerance) {
+        if (isEmptyRect(shape)) {
+            return;
+        }
+        prepare();
+        updateStrokeState();
+        writeShape(shape, tolerance);
+        content().append("S\n");
+    }
+    
+    /**
+     * Fills the specified shape, using the winding rule of the shape.
+     * 
+     * @param shape  the shape ({@code null} not permitted).
+     * @param tolerance  the tolerance (in device space) for simplifying 
+     *     runs of line segments ({@code 0.0} or less to write all segments).
+     */
+    void fillShape(Shape shape, double tolerance) {
+        if (isEmptyRect(shape)) {
+            return;
+        }
+        prepare();
+        updateFillState();
+        if (writeShape(shape, tolerance) == PathIterator.WIND_EVEN_ODD) {
+            content().append("f*\n");
+        } else {
+            content().append("f\n");
+        }
+    }
+    
+    /**
+     * Draws (or fills) a shape by reference to a form XObject, if a shape 
+     * with the same geometry relative to its first point has been drawn in
+     * the same way at least {@code threshold} times on the page (including
+     * this time).  The form is created when the threshold is reached, and 
+     * each occurrence is written as a translation and a 'Do' operator.  
+     * Shapes drawn with a pattern, rectangles, lines and shapes with many 
+     * segments are not reused.
+     * 
+     * @param shape  the shape ({@code null} not permitted).
+     * @param fill  fill the shape (rather than draw the outline)?
+     * @param pad  the distance (in user space) that the stroke can extend
+     *     beyond the shape bounds.
+     * @param threshold  the threshold.
+     * 
+     * @return {@code true} if the shape was drawn, and {@code false} if 
+     *     the caller should draw it in full.
+     */
+    boolean drawReusableShape(Shape shape, boolean fill, double pad, 
+            int threshold) {
+        if (shape instanceof Rectangle2D || shape instanceof Line2D) {
+            return false;
+        }
+        if (fill ? this.requiredState.fillPattern != null 
+                : this.requiredState.strokePattern != null) {
+            return false;
+        }
+        ShapeKey key = ShapeKey.create(shape, fill, pad, 
+                Math.pow(10.0, this.geometryDecimals));
+        if (key == null) {
+            return false;
+        }
+        ShapeEntry entry = findOrCreateShapeEntry(key);
+        entry.count++;
+        if (entry.name == null) {
+            if (entry.count < threshold) {
+                return false;
+            }
+            entry.name = addForm(shape, key, fill, pad);
+        }
+        prepare();
+        if (fill) {
+            updateFillState();
         } else {
-            return String.valueOf(d);
+            updateStrokeState();
         }
+        content().append("q 1 0 0 1 ");
+        geomDP(key.x).append(' ');
+        geomDP(key.y).append(" cm ").append(entry.name).append(" Do Q\n");
+        this.statistics.incrementReusedShapeCount();
+        return true;
     }
     
-    private String transformDP(double d) {
-        if (this.transformFormat != null) {
-            return transformFormat.format(d);            
+    /**
+     * Returns the cache entry for a shape that can be reused, creating a 
+     * new entry if there isn't one already.
+     * 
+     * @param key  the shape key ({@code null} not permitted).
+     * 
+     * @return The entry (never {@code null}).
+     */
+    private ShapeEntry findOrCreateShapeEntry(ShapeKey key) {
+        if (this.shapeCache == null) {
+            this.shapeCache = new LinkedHashMap<ShapeKey, ShapeEntry>(16, 
+                    0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(
+                        Map.Entry<ShapeKey, ShapeEntry> eldest) {
+                    return size() > SHAPE_CACHE_SIZE;
+                }
+            };
+        }
+        ShapeEntry entry = this.shapeCache.get(key);
+        if (entry == null) {
+            entry = new ShapeEntry();
+            this.shapeCache.put(key, entry);
+        }
+        return entry;
+    }
+    
+    /**
+     * Adds a form XObject to the page, containing the specified shape 
+     * translated so that the first point is at the origin.
+     * 
+     * @param shape  the shape ({@code null} not permitted).
+     * @param key  the key for the shape ({@code null} not permitted).
+     * @param fill  fill the shape (rather than draw the outline)?
+     * @param pad  the distance (in user space) that the stroke can extend
+     *     beyond the shape bounds.
+     * 
+     * @return The form reference name.
+     */
+    private String addForm(Shape shape, ShapeKey key, boolean fill, 
+            double pad) {
+        ContentBuffer pageContent = content();
+        this.content = new ContentBuffer();
+        byte[] formContent;
+        try {
+            PathIterator iterator = shape.getPathIterator(
+                    AffineTransform.getTranslateInstance(-key.x, -key.y));
+            writePath(iterator, 0.0);
+            if (!fill) {
+                this.content.append("S\n");
+            } else if (key.windingRule == PathIterator.WIND_EVEN_ODD) {
+                this.content.append("f*\n");
+            } else {
+                this.content.append("f\n");
+            }
+            formContent = this.content.toByteArray();
+        } finally {
+            this.content = pageContent;
+        }
+        // allow an extra unit for hairlines and antialiasing
+        Rectangle2D b = shape.getBounds2D();
+        double m = pad + 1.0;
+        Rectangle2D bbox = new Rectangle2D.Double(b.getX() - key.x - m, 
+                b.getY() - key.y - m, b.getWidth() + 2 * m, 
+                b.getHeight() + 2 * m);
+        return this.page.addForm(formContent, bbox);
+    }
+    
+    /**
+     * Draws the polyline (or polygon) defined by the specified points.
+     * 
+     * @param xPoints  the x-coordinates.
+     * @param yPoints  the y-coordinates.
+     * @param nPoints  the number of points (at least 1).
+     * @param close  close the path to form a polygon?
+     */
+    void drawPolyline(int[] xPoints, int[] yPoints, int nPoints, 
+            boolean close) {
+        prepare();
+        updateStrokeState();
+        writePolyline(xPoints, yPoints, nPoints, close);
+        content().append("S\n");
+    }
+    
+    /**
+     * Draws the polyline defined by the specified points.  When the 
+     * tolerance is positive, the polyline is simplified as for 
+     * {@link #drawShape(java.awt.Shape, double)}.
+     * 
+     * @param xPoints  the x-coordinates ({@code null} not permitted).
+     * @param yPoints  the y-coordinates ({@code null} not permitted).
+     * @param nPoints  the number of points (at least 1).
+     * @param tolerance  the tolerance (in device space) for simplifying 
+     *     the polyline ({@code 0.0} or less to write all segments).
+     */
+    void drawPolyline(double[] xPoints, double[] yPoints, int nPoints, 
+            double tolerance) {
+        prepare();
+        updateStrokeState();
+        geomDP(xPoints[0]).append(' ');
+        geomDP(yPoints[0]).append(" m\n");
+        if (tolerance > 0.0 && nPoints > 2) {
+            if (this.simplifier == null) {
+                this.simplifier = new PathSimplifier();
+            }
+            PathSimplifier run = this.simplifier;
+            run.start(xPoints[0], yPoints[0]);
+            for (int i = 1; i < nPoints; i++) {
+                run.add(xPoints[i], yPoints[i]);
+            }
+            writeRun(run, tolerance);
         } else {
-            return String.valueOf(d);
+            for (int i = 1; i < nPoints; i++) {
+                geomDP(xPoints[i]).append(' ');
+                geomDP(yPoints[i]).append(" l\n");
+            }
         }
+        content().append("S\n");
     }
-
+    
+    /**
+     * Returns {@code true} if the alpha transparency required for the next
+     * drawing operation is less than 1.  Items that overlap must then be 
+     * painted one at a time (rather than as a single path), so that the 
+     * overlapping areas are composited once for each item.
+     * 
+     * @return A boolean. 
+     */
+    private boolean isTranslucent() {
+        return this.requiredState.alpha < 255;
+    }
+    
+    /**
+     * Draws the line segments packed into an array as 
+     * {@code (x1, y1, x2, y2)} quadruples, as a single path (or one path 
+     * per segment when the alpha transparency is less than 1).  Segments 
+     * that are completely outside the cull bounds are skipped.
+     * 
+     * @param lines  the line coordinates ({@code null} not permitted).
+     * @param cull  the cull bounds in user space ({@code null} permitted).
+     * 
+     * @return The number of line segments skipped.
+     */
+    int drawLines(double[] lines, Rectangle2D cull) {
+        int skipped = 0;
+        boolean started = false;
+        boolean separate = isTranslucent();
+        for (int i = 0; i + 3 < lines.length; i += 4) {
+            double x1 = lines[i];
+            double y1 = lines[i + 1];
+            double x2 = lines[i + 2];
+            double y2 = lines[i + 3];
+            if (cull != null && isOutside(cull, Math.min(x1, x2), 
+                    Math.min(y1, y2), Math.max(x1, x2), Math.max(y1, y2))) {
+                skipped++;
+                continue;
+            }
+            if (!started) {
+                prepare();
+                updateStrokeState();
+                started = true;
+            }
+            geomDP(x1).append(' ');
+            geomDP(y1).append(" m\n");
+            geomDP(x2).append(' ');
+            geomDP(y2).append(" l\n");
+            if (separate) {
+                content().append("S\n");
+            }
+        }
+        if (started && !separate) {
+            content().append("S\n");
+        }
+        return skipped;
+    }
+    
     /**
-     * Draws the specified line.
+     * Fills the rectangles packed into an array as {@code (x, y, w, h)} 
+     * quadruples, as a single path (or one path per rectangle when the 
+     * alpha transparency is less than 1).  Rectangles with a negative (or NaN) 
+     * width or height, and rectangles that are completely outside the cull
+     * bounds, are skipped.
+     * 
+     * @param rects  the rectangle coordinates ({@code null} not permitted).
+     * @param cull  the cull bounds in user space ({@code null} permitted).
      * 
-     * @param line  the line ({@code null} not permitted). 
+     * @return The number of rectangles skipped as outside the cull bounds.
      */
-    void drawLine(Line2D line) {
-        StringBuilder b = new StringBuilder();
-        b.append(geomDP(line.getX1())).append(" ").append(geomDP(line.getY1()))
-                .append(" ").append("m\n");
-        b.append(geomDP(line.getX2())).append(" ").append(geomDP(line.getY2()))
-                .append(" ").append("l\n");
-        b.append("S\n");
-        addContent(b.toString());
+    int fillRects(double[] rects, Rectangle2D cull) {
+        int skipped = 0;
+        boolean started = false;
+        boolean separate = isTranslucent();
+        for (int i = 0; i + 3 < rects.length; i += 4) {
+            double x = rects[i];
+            double y = rects[i + 1];
+            double w = rects[i + 2];
+            double h = rects[i + 3];
+            if (!(w >= 0.0 && h >= 0.0)) {
+                continue; // nothing is drawn
+            }
+            if (cull != null && isOutside(cull, x, y, x + w, y + h)) {
+                skipped++;
+                continue;
+            }
+            if (!started) {
+                prepare();
+                updateFillState();
+                started = true;
+            }
+            geomDP(x).append(' ');
+            geomDP(y).append(' ');
+            geomDP(w).append(' ');
+            geomDP(h).append(" re\n");
+            if (separate) {
+                content().append("f\n");
+            }
+        }
+        if (started && !separate) {
+            content().append("f\n");
+        }
+        return skipped;
     }
     
     /**
-     * Draws the specified path.
+     * Draws (or fills) a marker shape centred at each of the specified 
+     * points.  When the paint is a color and the marker can be reused, the
+     * marker is written once as a form XObject and drawn by reference at 
+     * each point, otherwise the markers are written in full as a single 
+     * path.  A single path would composite overlapping areas once with a 
+     * translucent paint, and would leave holes where markers overlap with 
+     * the even-odd winding rule, so in those cases each marker is painted 
+     * separately.  Markers that are completely outside the cull bounds are 
+     * skipped.
      * 
-     * @param path  the path ({@code null} not permitted). 
+     * @param marker  the marker shape, relative to the point 
+     *     ({@code null} not permitted).
+     * @param xPoints  the x-coordinates ({@code null} not permitted).
+     * @param yPoints  the y-coordinates ({@code null} not permitted).
+     * @param nPoints  the number of points.
+     * @param fill  fill the markers (rather than draw the outline)?
+     * @param pad  the distance (in user space) that the stroke can extend
+     *     beyond the marker bounds.
+     * @param cull  the cull bounds in user space ({@code null} permitted).
+     * 
+     * @return The number of markers skipped.
      */
-    void drawPath2D(Path2D path) {
-        StringBuilder b = new StringBuilder();
-        b.append(getPDFPath(path)).append("S\n");
-        addContent(b.toString());
+    int drawMarkers(Shape marker, double[] xPoints, double[] yPoints, 
+            int nPoints, boolean fill, double pad, Rectangle2D cull) {
+        Rectangle2D b = marker.getBounds2D();
+        double minX = b.getMinX() - pad;
+        double minY = b.getMinY() - pad;
+        double maxX = b.getMaxX() + pad;
+        double maxY = b.getMaxY() + pad;
+        ShapeKey key = null;
+        if (!(fill ? this.requiredState.fillPattern != null 
+                : this.requiredState.strokePattern != null)) {
+            key = ShapeKey.create(marker, fill, pad, 
+                    Math.pow(10.0, this.geometryDecimals));
+        }
+        String name = null;
+        int rule = marker.getPathIterator(null).getWindingRule();
+        boolean separate = isTranslucent() 
+                || (fill && rule == PathIterator.WIND_EVEN_ODD);
+        int skipped = 0;
+        boolean started = false;
+        for (int i = 0; i < nPoints; i++) {
+            double x = xPoints[i];
+            double y = yPoints[i];
+            if (cull != null && isOutside(cull, x + minX, y + minY, 
+                    x + maxX, y + maxY)) {
+                skipped++;
+                continue;
+            }
+            if (!started) {
+                if (key != null) {
+                    ShapeEntry entry = findOrCreateShapeEntry(key);
+                    if (entry.name == null) {
+                        entry.name = addForm(marker, key, fill, pad);
+                    }
+                    name = entry.name;
+                }
+                prepare();
+                if (fill) {
+                    updateFillState();
+                } else {
+                    updateStrokeState();
+                }
+                started = true;
+            }
+            if (name != null) {
+                content().append("q 1 0 0 1 ");
+                geomDP(x + key.x).append(' ');
+                geomDP(y + key.y).append(" cm ").append(name)
+                        .append(" Do Q\n");
+                this.statistics.incrementReusedShapeCount();
+            } else {
+                writePath(marker.getPathIterator(
+                        AffineTransform.getTranslateInstance(x, y)), 0.0);
+                if (separate) {
+                    writePaintOperator(fill, rule);
+                }
+            }
+        }
+        if (started && name == null && !separate) {
+            writePaintOperator(fill, rule);
+        }
+        return skipped;
     }
     
     /**
-     * Fills the specified path.
+     * Writes the operator that strokes or fills the current path.
      * 
-     * @param path  the path ({@code null} not permitted).
+     * @param fill  fill the path (rather than stroke it)?
+     * @param rule  the winding rule for filling.
      */
-    void fillPath2D(Path2D path) {
-        StringBuilder b = new StringBuilder();
-        b.append(getPDFPath(path)).append("f\n");
-        addContent(b.toString());
+    private void writePaintOperator(boolean fill, int rule) {
+        if (!fill) {
+            content().append("S\n");
+        } else if (rule == PathIterator.WIND_EVEN_ODD) {
+            content().append("f*\n");
+        } else {
+            content().append("f\n");
+        }
+    }
+    
+    /**
+     * Returns {@code true} if the rectangle {@code (minX, minY, maxX, maxY)}
+     * is completely outside the specified bounds.
+     * 
+     * @param bounds  the bounds ({@code null} not permitted).
+     * @param minX  the minimum x-coordinate.
+     * @param minY  the minimum y-coordinate.
+     * @param maxX  the maximum x-coordinate.
+     * @param maxY  the maximum y-coordinate.
+     * 
+     * @return A boolean.
+     */
+    private static boolean isOutside(Rectangle2D bounds, double minX, 
+            double minY, double maxX, double maxY) {
+        return maxX < bounds.getMinX() || minX > bounds.getMaxX() 
+                || maxY < bounds.getMinY() || minY > bounds.getMaxY();
+    }
+    
+    /**
+     * Fills the polygon defined by the specified points, using the even-odd 
+     * rule (as specified for {@code Graphics.fillPolygon()}).
+     * 
+     * @param xPoints  the x-coordinates.
+     * @param yPoints  the y-coordinates.
+     * @param nPoints  the number of points (at least 1).
+     */
+    void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        prepare();
+        updateFillState();
+        writePolyline(xPoints, yPoints, nPoints, true);
+        content().append("f*\n");
     }
     
     /**
@@ -418,19 +1219,19 @@ public class GraphicsStream extends Stream {
      * @param y  the y-coordinate.
      */
     void drawString(String text, float x, float y) {
+        prepare();
         // we need to get the reference for the current font (creating a 
         // new font object if there isn't already one)
         String fontRef = this.page.findOrCreateFontReference(this.font);
-        addContent("BT ");
+        updateFillState();
+        content().append("BT ");
         AffineTransform t = new AffineTransform(1.0, 0.0, 0.0, -1.0, 0.0, 
                 y * 2); 
         applyTextTransform(t);
-        StringBuilder b = new StringBuilder();
-        b.append(fontRef).append(" ").append(this.font.getSize())
+        content().append(fontRef).append(' ').append(this.font.getSize())
                 .append(" Tf ");
-        b.append(geomDP(x)).append(" ").append(geomDP(y)).append(" Td (")
-                .append(text).append(") Tj ET\n");
-        addContent(b.toString());
+        geomDP(x).append(' ');
+        geomDP(y).append(" Td (").append(text).append(") Tj ET\n");
     }
 
     /**
@@ -441,44 +1242,191 @@ public class GraphicsStream extends Stream {
      * @param y  the y-coordinate of the destination.
      * @param w  the width of the destination.
      * @param h  the height of the destination.
+     * @param encoding  the image encoding (a value for the 
+     *     {@link PDFHints#KEY_IMAGE_ENCODING} hint, {@code null} permitted).
+     * @param quality  the quality for JPEG encoding.
+     */
+    void drawImage(Image img, int x, int y, int w, int h, Object encoding, 
+            float quality) {
+        prepare();
+        String imageRef = this.page.addImage(img, true, encoding, quality);
+        updateAlpha();
+        writeImage(imageRef, x, y, w, h, false);
+    }
+    
+    /**
+     * Draws the specified encoded image into the rectangle 
+     * {@code (x, y, w, h)}, copying the encoded data to the document.
+     * 
+     * @param img  the image ({@code null} not permitted, and 
+     *     {@link EncodedImage#isPassThrough()} must be {@code true}).
+     * @param x  the x-coordinate of the destination.
+     * @param y  the y-coordinate of the destination.
+     * @param w  the width of the destination.
+     * @param h  the height of the destination.
      */
-    void drawImage(Image img, int x, int y, int w, int h) {
-        String imageRef = this.page.addImage(img, true);
-        StringBuilder b = new StringBuilder();
-        b.append("q\n");
-        b.append(geomDP(w)).append(" 0 0 ").append(geomDP(h)).append(" ");
-        b.append(geomDP(x)).append(" ").append(geomDP(y)).append(" cm\n");
-        b.append(imageRef).append(" Do\n");
-        b.append("Q\n");
-        addContent(b.toString());
+    void drawImage(EncodedImage img, int x, int y, int w, int h) {
+        prepare();
+        String imageRef = this.page.addEncodedImage(img);
+        updateAlpha();
+        writeImage(imageRef, x, y, w, h, true);
+    }
+    
+    /**
+     * Writes the operators that paint an image XObject into the rectangle 
+     * {@code (x, y, w, h)}.
+     * 
+     * @param imageRef  the image reference name.
+     * @param x  the x-coordinate of the destination.
+     * @param y  the y-coordinate of the destination.
+     * @param w  the width of the destination.
+     * @param h  the height of the destination.
+     * @param topDown  are the image rows in top to bottom order (as in 
+     *     JPEG and PNG data) rather than bottom to top (as written by 
+     *     {@link PDFImage})?
+     */
+    private void writeImage(String imageRef, int x, int y, int w, int h, 
+            boolean topDown) {
+        content().append("q\n");
+        geomDP(w).append(" 0 0 ");
+        geomDP(topDown ? -h : h).append(' ');
+        geomDP(x).append(' ');
+        geomDP(topDown ? y + h : y).append(" cm\n");
+        content().append(imageRef).append(" Do\nQ\n");
     }
 
     /**
-     * A utility method to convert a {@code Path2D} instance to a PDF 
-     * path string.
+     * Returns {@code true} if the shape is a rectangle with a negative width
+     * or height (Java2D draws nothing for such a rectangle).
      * 
-     * @param path  the path ({@code null} not permitted).
+     * @param shape  the shape.
+     * 
+     * @return A boolean. 
+     */
+    private static boolean isEmptyRect(Shape shape) {
+        if (shape instanceof Rectangle2D) {
+            Rectangle2D r = (Rectangle2D) shape;
+            return r.getWidth() < 0.0 || r.getHeight() < 0.0;
+        }
+        return false;
+    }
+    
+    /**
+     * Writes the PDF path construction operators for a shape directly to 
+     * the stream content, using the 're' operator for rectangles and
+     * without copying other shapes.
+     * 
+     * @param shape  the shape ({@code null} not permitted).
+     * @param tolerance  the tolerance (in device space) for simplifying 
+     *     runs of line segments ({@code 0.0} or less to write all segments).
+     * 
+     * @return The winding rule for filling the shape.
+     */
+    private int writeShape(Shape shape, double tolerance) {
+        if (shape instanceof Rectangle2D) {
+            writeRect((Rectangle2D) shape);
+            return PathIterator.WIND_NON_ZERO;
+        }
+        if (shape instanceof Line2D) {
+            Line2D line = (Line2D) shape;
+            geomDP(line.getX1()).append(' ');
+            geomDP(line.getY1()).append(" m\n");
+            geomDP(line.getX2()).append(' ');
+            geomDP(line.getY2()).append(" l\n");
+            return PathIterator.WIND_NON_ZERO;
+        }
+        PathIterator iterator = shape.getPathIterator(null);
+        writePath(iterator, tolerance);
+        return iterator.getWindingRule();
+    }
+    
+    /**
+     * Writes the 're' operator for a rectangle.
      * 
-     * @return The string. 
+     * @param rect  the rectangle ({@code null} not permitted).
      */
-    private String getPDFPath(Path2D path) {
-        StringBuilder b = new StringBuilder();   
-        float[] coords = new float[6];
-        float lastX = 0;
-        float lastY = 0;
-        PathIterator iterator = path.getPathIterator(null);
+    private void writeRect(Rectangle2D rect) {
+        geomDP(rect.getX()).append(' ');
+        geomDP(rect.getY()).append(' ');
+        geomDP(rect.getWidth()).append(' ');
+        geomDP(rect.getHeight()).append(" re\n");
+    }
+    
+    /**
+     * Writes the path construction operators for a polyline (or polygon)
+     * with integer coordinates.
+     * 
+     * @param xPoints  the x-coordinates.
+     * @param yPoints  the y-coordinates.
+     * @param nPoints  the number of points (at least 1).
+     * @param close  close the path?
+     */
+    private void writePolyline(int[] xPoints, int[] yPoints, int nPoints, 
+            boolean close) {
+        ContentBuffer b = content();
+        b.append(xPoints[0]).append(' ').append(yPoints[0]).append(" m\n");
+        for (int i = 1; i < nPoints; i++) {
+            b.append(xPoints[i]).append(' ').append(yPoints[i])
+                    .append(" l\n");
+        }
+        if (close) {
+            b.append("h\n");
+        }
+    }
+
+    /**
+     * Writes the PDF path construction operators for the segments of a path
+     * iterator directly to the stream content.  When the tolerance is 
+     * positive, each run of consecutive line segments is simplified so 
+     * that no point dropped from the run lies further than the tolerance
+     * (after the current transform is applied) from the line that 
+     * replaces it.
+     * 
+     * @param iterator  the path iterator ({@code null} not permitted).
+     * @param tolerance  the tolerance (in device space) for simplifying 
+     *     runs of line segments ({@code 0.0} or less to write all segments).
+     */
+    private void writePath(PathIterator iterator, double tolerance) {
+        ContentBuffer b = content();
+        double[] coords = new double[6];
+        double lastX = 0;
+        double lastY = 0;
+        double startX = 0;
+        double startY = 0;
+        PathSimplifier run = null;
+        if (tolerance > 0.0) {
+            if (this.simplifier == null) {
+                this.simplifier = new PathSimplifier();
+            }
+            run = this.simplifier;
+            run.clear();
+        }
         while (!iterator.isDone()) {
             int type = iterator.currentSegment(coords);
+            if (run != null && type != PathIterator.SEG_LINETO) {
+                writeRun(run, tolerance);
+            }
             switch (type) {
             case (PathIterator.SEG_MOVETO):
-                b.append(geomDP(coords[0])).append(" ");
-                b.append(geomDP(coords[1])).append(" m\n");
+                geomDP(coords[0]).append(' ');
+                geomDP(coords[1]).append(" m\n");
                 lastX = coords[0];
                 lastY = coords[1];
+                startX = lastX;
+                startY = lastY;
                 break;
             case (PathIterator.SEG_LINETO):
-                b.append(geomDP(coords[0])).append(" ");
-                b.append(geomDP(coords[1])).append(" l\n");                
+                if (run != null) {
+                    if (run.size() == 0) {
+                        run.start(lastX, lastY);
+                    }
+                    run.add(coords[0], coords[1]);
+                    lastX = coords[0];
+                    lastY = coords[1];
+                    break;
+                }
+                geomDP(coords[0]).append(' ');
+                geomDP(coords[1]).append(" l\n");                
                 lastX = coords[0];
                 lastY = coords[1];
                 break;
@@ -507,43 +1455,281 @@ public class GraphicsStream extends Stream {
                 // A quadratic curve has degree 2; a cubic curve has degree 3.
                 //
                 // The code is simplified to improve performance and accuracy
-                final float x0 = ( lastX + ( 2f * coords[0] ) ) / 3f;
-                final float y0 = ( lastY + ( 2f * coords[1] ) ) / 3f;
-                final float x1 = ( ( 2f * coords[0] ) + coords[2] ) / 3f;
-                final float y1 = ( ( 2f * coords[1] ) + coords[3] ) / 3f;
-                b.append(geomDP(x0)).append(" ");
-                b.append(geomDP(y0)).append(" ");
-                b.append(geomDP(x1)).append(" ");
-                b.append(geomDP(y1)).append(" ");
-                b.append(geomDP(coords[2])).append(" ");
-                b.append(geomDP(coords[3])).append(" c\n");
+                final double x0 = ( lastX + ( 2.0 * coords[0] ) ) / 3.0;
+                final double y0 = ( lastY + ( 2.0 * coords[1] ) ) / 3.0;
+                final double x1 = ( ( 2.0 * coords[0] ) + coords[2] ) / 3.0;
+                final double y1 = ( ( 2.0 * coords[1] ) + coords[3] ) / 3.0;
+                geomDP(x0).append(' ');
+                geomDP(y0).append(' ');
+                geomDP(x1).append(' ');
+                geomDP(y1).append(' ');
+                geomDP(coords[2]).append(' ');
+                geomDP(coords[3]).append(" c\n");
                 lastX = coords[2];
                 lastY = coords[3];
                 break;
             case (PathIterator.SEG_CUBICTO):
-                b.append(geomDP(coords[0])).append(" ");
-                b.append(geomDP(coords[1])).append(" ");
-                b.append(geomDP(coords[2])).append(" ");
-                b.append(geomDP(coords[3])).append(" ");
-                b.append(geomDP(coords[4])).append(" ");
-                b.append(geomDP(coords[5])).append(" c\n");
+                geomDP(coords[0]).append(' ');
+                geomDP(coords[1]).append(' ');
+                geomDP(coords[2]).append(' ');
+                geomDP(coords[3]).append(' ');
+                geomDP(coords[4]).append(' ');
+                geomDP(coords[5]).append(" c\n");
                 lastX = coords[4];
                 lastY = coords[5];
                 break;
             case (PathIterator.SEG_CLOSE):
                 b.append("h\n");
+                lastX = startX;
+                lastY = startY;
                 break;
             default:
                 break;
             }
             iterator.next();
         }
-        return b.toString();
+        if (run != null) {
+            writeRun(run, tolerance);
+        }
+    }
+    
+    /**
+     * Simplifies a run of line segments and writes the 'l' operators for 
+     * the points that are kept, then empties the run.  The first point of 
+     * the run is the current point of the path, so it is not written.
+     * 
+     * @param run  the run ({@code null} not permitted).
+     * @param tolerance  the tolerance (in device space).
+     */
+    private void writeRun(PathSimplifier run, double tolerance) {
+        int n = run.size();
+        if (n < 2) {
+            run.clear();
+            return;
+        }
+        int dropped = 0;
+        if (n > 2) {
+            dropped = run.simplify(this.requiredTransform, tolerance);
+        }
+        this.statistics.addSimplifiedSegments(n - 1, dropped);
+        for (int i = 1; i < n; i++) {
+            if (n == 2 || run.isKept(i)) {
+                geomDP(run.getX(i)).append(' ');
+                geomDP(run.getY(i)).append(" l\n");
+            }
+        }
+        run.clear();
+    }
+
+    /**
+     * Releases the stream content after it has been written to the output
+     * (the page is finished, so no more content can be added).
+     */
+    void release() {
+        this.content = null;
     }
 
     @Override
     public byte[] getRawStreamData() {
-        return this.content.toByteArray();
+        if (this.content == null) {
+            throw new IllegalStateException("The page is finished.");
+        }
+        if (this.savedStates.isEmpty()) {
+            return this.content.toByteArray();
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(
+                this.content.size() + 2 * this.savedStates.size());
+        try {
+            writeRawStreamData(out);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Writes the stream content directly to the output stream, without 
+     * making a copy.
+     * 
+     * @param out  the output stream ({@code null} not permitted).
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    @Override
+    protected void writeRawStreamData(OutputStream out) throws IOException {
+        if (this.content == null) {
+            throw new IllegalStateException("The page is finished.");
+        }
+        this.content.writeTo(out);
+        // restore any saved states that are still open, so that the 'q' and
+        // 'Q' operators are balanced within the content stream
+        for (int i = 0; i < this.savedStates.size(); i++) {
+            out.write('Q');
+            out.write('\n');
+        }
+    }
+
+    /**
+     * A key for a shape that can be reused, containing the geometry relative
+     * to the first point of the shape (rounded to the precision of the 
+     * output) and the way the shape is drawn.  The first point is recorded
+     * but is not part of the key.
+     */
+    private static final class ShapeKey {
+        
+        /** The x-coordinate of the first point. */
+        final double x;
+        
+        /** The y-coordinate of the first point. */
+        final double y;
+        
+        /** Is the shape filled (rather than drawn)? */
+        final boolean fill;
+        
+        /** The winding rule. */
+        final int windingRule;
+        
+        /** The stroke padding. */
+        final double pad;
+        
+        /** The segment types. */
+        final byte[] types;
+        
+        /** The relative coordinates (scaled and rounded). */
+        final long[] coords;
+        
+        /** The hash code. */
+        final int hash;
+        
+        private ShapeKey(double x, double y, boolean fill, int windingRule, 
+                double pad, byte[] types, long[] coords) {
+            this.x = x;
+            this.y = y;
+            this.fill = fill;
+            this.windingRule = windingRule;
+            this.pad = pad;
+            this.types = types;
+            this.coords = coords;
+            int h = Arrays.hashCode(types);
+            h = 31 * h + Arrays.hashCode(coords);
+            h = 31 * h + (fill ? windingRule + 1 : 0);
+            h = 31 * h + Double.hashCode(pad);
+            this.hash = h;
+        }
+        
+        /**
+         * Creates a key for the specified shape, or returns {@code null} if
+         * the shape does not start with a move or has too many segments.
+         * 
+         * @param shape  the shape ({@code null} not permitted).
+         * @param fill  is the shape filled?
+         * @param pad  the stroke padding.
+         * @param scale  the scale factor for rounding the coordinates.
+         * 
+         * @return The key (possibly {@code null}).
+         */
+        static ShapeKey create(Shape shape, boolean fill, double pad, 
+                double scale) {
+            PathIterator iterator = shape.getPathIterator(null);
+            if (iterator.isDone()) {
+                return null;
+            }
+            double[] c = new double[6];
+            if (iterator.currentSegment(c) != PathIterator.SEG_MOVETO) {
+                return null;
+            }
+            double x0 = c[0];
+            double y0 = c[1];
+            byte[] types = new byte[8];
+            long[] coords = new long[48];
+            int segments = 0;
+            int n = 0;
+            while (!iterator.isDone()) {
+                if (segments == MAX_REUSE_SEGMENTS) {
+                    return null;
+                }
+                if (segments == types.length) {
+                    types = Arrays.copyOf(types, segments * 2);
+                    coords = Arrays.copyOf(coords, segments * 12);
+                }
+                int type = iterator.currentSegment(c);
+                types[segments++] = (byte) type;
+                int points = type == PathIterator.SEG_CLOSE ? 0 
+                        : type == PathIterator.SEG_QUADTO ? 2 
+                        : type == PathIterator.SEG_CUBICTO ? 3 : 1;
+                for (int i = 0; i < points; i++) {
+                    coords[n++] = Math.round((c[2 * i] - x0) * scale);
+                    coords[n++] = Math.round((c[2 * i + 1] - y0) * scale);
+                }
+                iterator.next();
+            }
+            return new ShapeKey(x0, y0, fill, fill 
+                    ? iterator.getWindingRule() : 0, pad, 
+                    Arrays.copyOf(types, segments), Arrays.copyOf(coords, n));
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof ShapeKey)) {
+                return false;
+            }
+            ShapeKey that = (ShapeKey) obj;
+            return this.hash == that.hash && this.fill == that.fill 
+                    && this.windingRule == that.windingRule
+                    && Double.compare(this.pad, that.pad) == 0
+                    && Arrays.equals(this.types, that.types) 
+                    && Arrays.equals(this.coords, that.coords);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+    }
+    
+    /**
+     * The number of occurrences of a shape that can be reused, and the 
+     * name of the form XObject once it has been created.
+     */
+    private static final class ShapeEntry {
+        
+        /** The number of times the shape has been drawn. */
+        int count;
+        
+        /** The form reference name (null until the form is created). */
+        String name;
+    }
+    
+    /**
+     * A level opened for a child graphics instance, recording the attributes
+     * of the enclosing level that are restored when the level is closed.
+     */
+    private static final class Level {
+        
+        /** The level id. */
+        final int id;
+        
+        /** Has the 'q' operator for the level been written? */
+        boolean written;
+        
+        /** The number of saved states at the base of the enclosing level. */
+        int depth;
+        
+        /** The transform at the base of the enclosing level (or null). */
+        AffineTransform transform;
+        
+        /** The flag for a saved state used to reset the clip. */
+        boolean clipSaved;
+        
+        /** The flag for a saved state used to reset the transform. */
+        boolean transformSaved;
+        
+        Level(int id) {
+            this.id = id;
+        }
     }
 
 }
@@ -0,0 +1,508 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+package com.orsonpdf;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import com.orsonpdf.util.Args;
+
+/**
+ * Reads the pixels of an image for a {@link PDFImage} (the RGB samples) and
+ * a {@link PDFSoftMaskImage} (the alpha samples) or 
+ * {@link PDFStencilMaskImage} (the alpha samples reduced to one bit per
+ * pixel), with fast paths that read the {@code DataBuffer} directly for 
+ * the common {@code BufferedImage} types.  When the image and its soft 
+ * mask share an instance, both planes are read in a single pass over the 
+ * image: the object written first keeps the plane for the other object 
+ * until it is written.  Rows are written bottom row first.
+ */
+final class ImageRaster {
+
+    /** The plane index for the RGB samples (3 bytes per pixel). */
+    static final int RGB = 0;
+    
+    /** The plane index for the alpha samples (1 byte per pixel). */
+    static final int ALPHA = 1;
+    
+    /** 
+     * The plane index for the stencil mask samples (1 bit per pixel, set for
+     * the transparent pixels, rows padded to a whole byte).  This plane 
+     * replaces the {@link #ALPHA} plane.
+     */
+    static final int STENCIL = 2;
+    
+    /** Layout: use {@code BufferedImage.getRGB()} a row at a time. */
+    private static final int LAYOUT_OTHER = 0;
+
+    /** Layout: one int per pixel, {@code TYPE_INT_RGB}. */
+    private static final int LAYOUT_INT_RGB = 1;
+    
+    /** Layout: one int per pixel, {@code TYPE_INT_ARGB}. */
+    private static final int LAYOUT_INT_ARGB = 2;
+    
+    /** Layout: interleaved bytes, {@code TYPE_3BYTE_BGR}. */
+    private static final int LAYOUT_3BYTE_BGR = 3;
+    
+    /** Layout: interleaved bytes, {@code TYPE_4BYTE_ABGR}. */
+    private static final int LAYOUT_4BYTE_ABGR = 4;
+    
+    /** Layout: one byte per pixel, {@code TYPE_BYTE_GRAY}. */
+    private static final int LAYOUT_BYTE_GRAY = 5;
+    
+    /** The source image. */
+    private final Image source;
+    
+    /** The width. */
+    private final int width;
+    
+    /** The height. */
+    private final int height;
+    
+    /** The image as a {@code BufferedImage} (created when first needed). */
+    private BufferedImage image;
+    
+    /** The layout of the image data. */
+    private int layout;
+    
+    /** The data for the int layouts. */
+    private int[] intData;
+    
+    /** The data for the byte layouts. */
+    private byte[] byteData;
+    
+    /** The offset of pixel (0, 0) in the data. */
+    private int offset;
+    
+    /** The offset between rows in the data. */
+    private int scanlineStride;
+    
+    /** The offset between pixels in the data (byte layouts). */
+    private int pixelStride;
+    
+    /** The offsets of the red, green, blue and alpha bytes in a pixel. */
+    private int[] bandOffsets;
+    
+    /** The sRGB values for the gray levels ({@code TYPE_BYTE_GRAY}). */
+    private int[] grayToRGB;
+    
+    /** Flags for the planes that still have to be written. */
+    private final boolean[] wanted;
+    
+    /** Flags for the planes being read by a pass for the other plane. */
+    private final boolean[] producing;
+    
+    /** The planes kept for the object that has not been written yet. */
+    private final byte[][] stored;
+    
+    /** Is the alpha plane written as a stencil mask? */
+    private boolean stencil;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param img  the image ({@code null} not permitted).
+     */
+    ImageRaster(Image img) {
+        Args.nullNotPermitted(img, "img");
+        this.source = img;
+        this.width = img.getWidth(null);
+        this.height = img.getHeight(null);
+        this.wanted = new boolean[2];
+        this.producing = new boolean[2];
+        this.stored = new byte[2][];
+    }
+    
+    /**
+     * Creates a new instance that reads a copy of the pixels in the 
+     * specified image, so that the image can be modified after this call 
+     * without changing the data that is written.
+     * 
+     * @param img  the image ({@code null} not permitted).
+     * 
+     * @return A new instance.
+     */
+    static ImageRaster copyOf(Image img) {
+        Args.nullNotPermitted(img, "img");
+        BufferedImage copy;
+        if (img instanceof BufferedImage) {
+            BufferedImage bi = (BufferedImage) img;
+            copy = new BufferedImage(bi.getColorModel(), bi.copyData(null), 
+                    bi.isAlphaPremultiplied(), null);
+        } else {
+            copy = toBufferedImage(img);
+        }
+        return new ImageRaster(copy);
+    }
+    
+    /**
+     * Returns a new {@code TYPE_INT_ARGB} image with the pixels of the 
+     * specified image, on a transparent (white) background.
+     * 
+     * @param img  the image.
+     * 
+     * @return The new image.
+     */
+    private static BufferedImage toBufferedImage(Image img) {
+        int w = img.getWidth(null);
+        int h = img.getHeight(null);
+        BufferedImage bi = new BufferedImage(w, h, 
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = bi.createGraphics();
+        g2.setBackground(new Color(255, 255, 255, 0));
+        g2.clearRect(0, 0, w, h);
+        g2.drawImage(img, 0, 0, null);
+        g2.dispose();
+        return bi;
+    }
+    
+    /**
+     * Returns the image width.
+     * 
+     * @return The width. 
+     */
+    int getWidth() {
+        return this.width;
+    }
+    
+    /**
+     * Returns the image height.
+     * 
+     * @return The height. 
+     */
+    int getHeight() {
+        return this.height;
+    }
+    
+    /**
+     * Records that the specified plane will be written, so that a pass over
+     * the image for the other plane will keep it.
+     * 
+     * @param plane  the plane ({@link #RGB}, {@link #ALPHA} or 
+     *     {@link #STENCIL}).
+     */
+    synchronized void require(int plane) {
+        if (plane == STENCIL) {
+            this.stencil = true;
+            plane = ALPHA;
+        }
+        this.wanted[plane] = true;
+    }
+    
+    /**
+     * Returns {@code true} if the image has an alpha channel, and 
+     * {@code false} if it is opaque by type (so there is no need to check
+     * the alpha samples).
+     * 
+     * @return A boolean. 
+     */
+    boolean hasAlpha() {
+        init();
+        return this.image.getColorModel().hasAlpha();
+    }
+    
+    /**
+     * Prepares the image for reading with 
+     * {@link #readRow(int, byte[], byte[], int[])} and returns the scratch
+     * array to pass to that method for every row.
+     * 
+     * @return An array with one int per pixel, or {@code null} if there is 
+     *     a fast path for the image layout.
+     */
+    int[] createScratch() {
+        init();
+        return this.layout == LAYOUT_OTHER ? new int[this.width] : null;
+    }
+    
+    /**
+     * Writes the samples for the specified plane to the output stream, 
+     * bottom row first.  If the other plane will be written later, it is
+     * read in the same pass and kept until then.
+     * 
+     * @param out  the output stream ({@code null} not permitted).
+     * @param plane  the plane ({@link #RGB}, {@link #ALPHA} or 
+     *     {@link #STENCIL}).
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    void write(OutputStream out, int plane) throws IOException {
+        if (plane == STENCIL) {
+            plane = ALPHA;
+        }
+        int other = 1 - plane;
+        byte[] data;
+        boolean readOther;
+        synchronized (this) {
+            while (this.producing[plane]) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            data = this.stored[plane];
+            this.stored[plane] = null;
+            this.wanted[plane] = false;
+            readOther = data == null && this.wanted[other] 
+                    && this.stored[other] == null;
+            if (readOther) {
+                this.producing[other] = true;
+            }
+        }
+        if (data != null) {
+            out.write(data);
+            return;
+        }
+        byte[] otherData = null;
+        try {
+            otherData = pass(out, plane, readOther);
+        } finally {
+            if (readOther) {
+                synchronized (this) {
+                    this.stored[other] = otherData;
+                    this.producing[other] = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reads all the rows of the image, writing the samples for one plane 
+     * to the output stream and (optionally) keeping the samples for the 
+     * other plane.
+     * 
+     * @param out  the output stream.
+     * @param plane  the plane to write.
+     * @param readOther  keep the other plane?
+     * 
+     * @return The other plane (or {@code null}).
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    private byte[] pass(OutputStream out, int plane, boolean readOther) 
+            throws IOException {
+        init();
+        byte[] rgb = plane == RGB || readOther ? new byte[this.width * 3] 
+                : null;
+        byte[] alpha = plane == ALPHA || readOther ? new byte[this.width] 
+                : null;
+        byte[] mask = this.stencil && alpha != null 
+                ? new byte[(this.width + 7) / 8] : null;
+        byte[] alphaRow = mask != null ? mask : alpha;
+        byte[] otherRow = plane == RGB ? alphaRow : rgb;
+        byte[] otherData = readOther 
+                ? new byte[otherRow.length * this.height] : null;
+        int[] scratch = createScratch();
+        int i = 0;
+        for (int y = this.height - 1; y >= 0; y--) {
+            readRow(y, rgb, alpha, scratch);
+            if (mask != null) {
+                Arrays.fill(mask, (byte) 0);
+                for (int x = 0; x < this.width; x++) {
+                    if ((alpha[x] & 0xFF) < 128) {
+                        mask[x >> 3] |= 0x80 >>> (x & 7);
+                    }
+                }
+            }
+            out.write(plane == RGB ? rgb : alphaRow);
+            if (readOther) {
+                System.arraycopy(otherRow, 0, otherData, i, otherRow.length);
+                i += otherRow.length;
+            }
+        }
+        return otherData;
+    }
+    
+    /**
+     * Prepares the image for reading, converting it to a 
+     * {@code BufferedImage} if necessary and selecting a fast path for the 
+     * image layout if there is one.
+     */
+    private synchronized void init() {
+        if (this.image != null) {
+            return;
+        }
+        BufferedImage bi;
+        if (this.source instanceof BufferedImage) {
+            bi = (BufferedImage) this.source;
+        } else {
+            bi = toBufferedImage(this.source);
+        }
+        this.layout = LAYOUT_OTHER;
+        WritableRaster raster = bi.getRaster();
+        SampleModel sm = raster.getSampleModel();
+        DataBuffer db = raster.getDataBuffer();
+        int x0 = -raster.getSampleModelTranslateX();
+        int y0 = -raster.getSampleModelTranslateY();
+        if (db.getNumBanks() == 1 && db instanceof DataBufferInt
+                && sm instanceof SinglePixelPackedSampleModel) {
+            SinglePixelPackedSampleModel sppsm 
+                    = (SinglePixelPackedSampleModel) sm;
+            if (bi.getType() == BufferedImage.TYPE_INT_RGB) {
+                this.layout = LAYOUT_INT_RGB;
+            } else if (bi.getType() == BufferedImage.TYPE_INT_ARGB) {
+                this.layout = LAYOUT_INT_ARGB;
+            }
+            this.intData = ((DataBufferInt) db).getData();
+            this.offset = db.getOffset() + sppsm.getOffset(x0, y0);
+            this.scanlineStride = sppsm.getScanlineStride();
+        } else if (db.getNumBanks() == 1 && db instanceof DataBufferByte
+                && sm instanceof ComponentSampleModel) {
+            ComponentSampleModel csm = (ComponentSampleModel) sm;
+            int[] offsets = csm.getBandOffsets();
+            if (bi.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+                this.layout = LAYOUT_3BYTE_BGR;
+            } else if (bi.getType() == BufferedImage.TYPE_4BYTE_ABGR) {
+                this.layout = LAYOUT_4BYTE_ABGR;
+            } else if (bi.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+                this.layout = LAYOUT_BYTE_GRAY;
+                // the gray levels are linear, getRGB() converts them to sRGB
+                this.grayToRGB = new int[256];
+                for (int g = 0; g < 256; g++) {
+                    this.grayToRGB[g] = bi.getColorModel().getRGB(g);
+                }
+            }
+            this.byteData = ((DataBufferByte) db).getData();
+            this.offset = db.getOffset() + y0 * csm.getScanlineStride() 
+                    + x0 * csm.getPixelStride();
+            this.scanlineStride = csm.getScanlineStride();
+            this.pixelStride = csm.getPixelStride();
+            this.bandOffsets = offsets;
+        }
+        this.image = bi;
+    }
+    
+    /**
+     * Reads one row of the image.  The image must be prepared first with
+     * {@link #createScratch()}.
+     * 
+     * @param y  the row index.
+     * @param rgb  the array for the RGB samples, 3 bytes per pixel 
+     *     ({@code null} permitted).
+     * @param alpha  the array for the alpha samples, 1 byte per pixel 
+     *     ({@code null} permitted).
+     * @param scratch  the array returned by {@link #createScratch()}.
+     */
+    void readRow(int y, byte[] rgb, byte[] alpha, int[] scratch) {
+        int w = this.width;
+        switch (this.layout) {
+            case LAYOUT_INT_RGB:
+            case LAYOUT_INT_ARGB: {
+                int[] data = this.intData;
+                int p = this.offset + y * this.scanlineStride;
+                boolean hasAlpha = this.layout == LAYOUT_INT_ARGB;
+                for (int x = 0, j = 0; x < w; x++, p++) {
+                    int argb = data[p];
+                    if (rgb != null) {
+                        rgb[j++] = (byte) (argb >> 16);
+                        rgb[j++] = (byte) (argb >> 8);
+                        rgb[j++] = (byte) argb;
+                    }
+                    if (alpha != null) {
+                        alpha[x] = hasAlpha ? (byte) (argb >>> 24) 
+                                : (byte) 0xFF;
+                    }
+                }
+                break;
+            }
+            case LAYOUT_3BYTE_BGR:
+            case LAYOUT_4BYTE_ABGR: {
+                byte[] data = this.byteData;
+                int p = this.offset + y * this.scanlineStride;
+                int r = this.bandOffsets[0];
+                int g = this.bandOffsets[1];
+                int b = this.bandOffsets[2];
+                int a = this.layout == LAYOUT_4BYTE_ABGR 
+                        ? this.bandOffsets[3] : -1;
+                int step = this.pixelStride;
+                for (int x = 0, j = 0; x < w; x++, p += step) {
+                    if (rgb != null) {
+                        rgb[j++] = data[p + r];
+                        rgb[j++] = data[p + g];
+                        rgb[j++] = data[p + b];
+                    }
+                    if (alpha != null) {
+                        alpha[x] = a >= 0 ? data[p + a] : (byte) 0xFF;
+                    }
+                }
+                break;
+            }
+            case LAYOUT_BYTE_GRAY: {
+                byte[] data = this.byteData;
+                int p = this.offset + y * this.scanlineStride 
+                        + this.bandOffsets[0];
+                int step = this.pixelStride;
+                for (int x = 0, j = 0; x < w; x++, p += step) {
+                    if (rgb != null) {
+                        int c = this.grayToRGB[data[p] & 0xFF];
+                        rgb[j++] = (byte) (c >> 16);
+                        rgb[j++] = (byte) (c >> 8);
+                        rgb[j++] = (byte) c;
+                    }
+                    if (alpha != null) {
+                        alpha[x] = (byte) 0xFF;
+                    }
+                }
+                break;
+            }
+            default: {
+                this.image.getRGB(0, y, w, 1, scratch, 0, w);
+                for (int x = 0, j = 0; x < w; x++) {
+                    int argb = scratch[x];
+                    if (rgb != null) {
+                        rgb[j++] = (byte) (argb >> 16);
+                        rgb[j++] = (byte) (argb >> 8);
+                        rgb[j++] = (byte) argb;
+                    }
+                    if (alpha != null) {
+                        alpha[x] = (byte) (argb >>> 24);
+                    }
+                }
+            }
+        }
+    }
+
+}
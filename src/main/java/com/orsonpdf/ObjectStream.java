@@ -0,0 +1,141 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+
+package com.orsonpdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import com.orsonpdf.filter.FlateFilter;
+import com.orsonpdf.util.Args;
+
+/**
+ * An object stream ({@code /Type /ObjStm}) that holds the bytes for a number
+ * of (non-stream) PDF objects, compressed together.  Object streams are 
+ * created by the {@link PDFWriter} when the document is written with a 
+ * compressed structure (see 
+ * {@link PDFDocument#setCompressedStructure(boolean)}).
+ */
+final class ObjectStream extends Stream {
+
+    /** The object numbers and offsets (the header of the stream data). */
+    private final StringBuilder header;
+    
+    /** The bytes for the objects in the stream. */
+    private final ByteArrayOutputStream objects;
+    
+    /** The number of objects in the stream. */
+    private int count;
+
+    /**
+     * Creates a new (empty) object stream.
+     * 
+     * @param number  the PDF object number.
+     */
+    ObjectStream(int number) {
+        super(number);
+        this.header = new StringBuilder();
+        this.objects = new ByteArrayOutputStream();
+        addFilter(new FlateFilter());
+    }
+    
+    /**
+     * Returns the number of objects in the stream.
+     * 
+     * @return The number of objects in the stream. 
+     */
+    int getCount() {
+        return this.count;
+    }
+    
+    /**
+     * Adds an object to the stream.
+     * 
+     * @param number  the PDF object number.
+     * @param bytes  the bytes that go between the 'obj' and 'endobj' for the
+     *     object ({@code null} not permitted).
+     * 
+     * @return The index of the object within the stream.
+     */
+    int add(int number, byte[] bytes) {
+        Args.nullNotPermitted(bytes, "bytes");
+        if (this.count > 0) {
+            this.header.append(' ');
+        }
+        this.header.append(number).append(' ').append(this.objects.size());
+        try {
+            this.objects.write(bytes);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        this.objects.write('\n');
+        return this.count++;
+    }
+
+    /**
+     * Returns the raw data for the stream (the object numbers and offsets
+     * followed by the objects).
+     * 
+     * @return The raw data for the stream. 
+     */
+    @Override
+    public byte[] getRawStreamData() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try {
+            baos.write(getHeaderBytes());
+            this.objects.writeTo(baos);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return baos.toByteArray();
+    }
+    
+    private byte[] getHeaderBytes() {
+        return PDFUtils.toBytes(this.header.toString() + "\n");
+    }
+    
+    /**
+     * Creates the dictionary for the object stream.
+     * 
+     * @param streamLength  the stream length.
+     * 
+     * @return The dictionary. 
+     */
+    @Override
+    protected Dictionary createDictionary(int streamLength) {
+        Dictionary dictionary = super.createDictionary(streamLength);
+        dictionary.setType("/ObjStm");
+        dictionary.put("/N", this.count);
+        dictionary.put("/First", getHeaderBytes().length);
+        return dictionary;
+    }
+
+}
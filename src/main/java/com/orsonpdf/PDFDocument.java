@@ -33,17 +33,21 @@ package com.orsonpdf;
 
 import java.awt.geom.Rectangle2D;
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import com.orsonpdf.filter.FlateFilter;
 import com.orsonpdf.util.Args;
+import com.orsonpdf.util.NumberFormatter;
 
 /**
  * Represents a PDF document.  The focus of this implementation is to
@@ -57,10 +61,24 @@ import com.orsonpdf.util.Args;
  * <code>g2.draw(new Rectangle(10, 10, 40, 50));<br></code>
  * <code>pdfDoc.writeToFile(new File("demo.pdf"));<br></code>
  * <p>
+ * For very large documents, the {@link #PDFDocument(OutputStream)} 
+ * constructor creates a document that writes each page to the output stream
+ * as soon as it is finished (see {@link Page#finish()}), so that the memory 
+ * required depends on the size of a single page rather than on the number 
+ * of pages.  The remaining document structure is written when the 
+ * {@link #close()} method is called:
+ * <p>
+ * <code>PDFDocument pdfDoc = new PDFDocument(out);<br></code>
+ * <code>for (...) {<br></code>
+ * <code>&nbsp;&nbsp;Page page = pdfDoc.createPage(bounds);<br></code>
+ * <code>&nbsp;&nbsp;// draw the page content...<br></code>
+ * <code>}<br></code>
+ * <code>pdfDoc.close();<br></code>
+ * <p>
  * The implementation is light-weight and works very well alongside packages 
  * such as <b>JFreeChart</b> and <b>Orson Charts</b>.
  */
-public class PDFDocument {
+public class PDFDocument implements Closeable {
     
     private static final Logger LOGGER = Logger.getLogger(
             PDFDocument.class.getName());
@@ -89,6 +107,9 @@ public class PDFDocument {
     /** A list of other objects added to the document. */
     private List<PDFObject> otherObjects;
     
+    /** The resources shared by the pages in the document. */
+    private SharedResources sharedResources;
+    
     /** The next PDF object number in the document. */
     private int nextNumber = 1;
 
@@ -98,11 +119,58 @@ public class PDFDocument {
      * the output can be read in a text editor.
      */
     private boolean debug;
+    
+    /** 
+     * A flag that controls whether stream lengths are written as indirect
+     * objects following each stream.
+     */
+    private boolean indirectStreamLength;
+    
+    /** The number of decimal places for coordinates in page content. */
+    private int geometryPrecision = 2;
+    
+    /** The number of decimal places for transforms in page content. */
+    private int transformPrecision = 6;
+    
+    /** The number of decimal places for color components in page content. */
+    private int colorPrecision = 3;
+
+    /** The filter used to compress page content streams. */
+    private FlateFilter contentFlateFilter;
+    
+    /** The filter used to compress image data. */
+    private FlateFilter imageFlateFilter;
+
+    /** 
+     * A flag that controls whether objects are written to compressed object
+     * streams, with a cross-reference stream (PDF 1.5).
+     */
+    private boolean compressedStructure;
+    
+    /** 
+     * The executor used to compress streams in parallel (if {@code null},
+     * streams are compressed one at a time on the calling thread).
+     */
+    private Executor compressionExecutor;
+
+    /** 
+     * The writer for a document in streaming mode (or {@code null} if the 
+     * document is encoded in memory by {@link #getPDFBytes()}).
+     */
+    private PDFWriter writer;
+    
+    /** The most recently created page (used in streaming mode only). */
+    private Page currentPage;
+    
+    /** A flag that records whether the document (streaming mode) is closed. */
+    private boolean closed;
 
     /**
      * Creates a new {@code PDFDocument}, initially with no content.
      */
     public PDFDocument() {
+        this.contentFlateFilter = new FlateFilter();
+        this.imageFlateFilter = new FlateFilter();
         this.catalog = new DictionaryObject(this.nextNumber++, "/Catalog");
         this.outlines = new DictionaryObject(this.nextNumber++, "/Outlines");
         this.info = new DictionaryObject(this.nextNumber++, "/Info");
@@ -118,6 +186,26 @@ public class PDFDocument {
         this.pages = new Pages(this.nextNumber++, 0, this);
         this.catalog.put("Pages", this.pages);
         this.otherObjects = new ArrayList<PDFObject>();
+        this.sharedResources = new SharedResources(this);
+    }
+    
+    /**
+     * Creates a new {@code PDFDocument} in streaming mode.  Each page is 
+     * written to {@code out} when it is finished, either by calling 
+     * {@link Page#finish()} or implicitly when the next page is created, and
+     * the document structure (catalog, page tree, fonts and trailer) is 
+     * written by the {@link #close()} method.  In this mode the 
+     * {@link #getPDFBytes()} and {@link #writeToFile(java.io.File)} methods
+     * are not available.
+     * 
+     * @param out  the output stream ({@code null} not permitted).
+     * 
+     * @since 2.0
+     */
+    public PDFDocument(OutputStream out) {
+        this();
+        Args.nullNotPermitted(out, "out");
+        this.writer = new PDFWriter(this, out);
     }
     
     /**
@@ -190,21 +278,297 @@ public class PDFDocument {
         this.debug = debug;
     }
 
+    /**
+     * Returns the flag that controls whether the length of each stream is 
+     * written as an indirect object following the stream.  The default value
+     * is {@code false}.
+     * 
+     * @return A boolean.
+     * 
+     * @since 2.0
+     */
+    public boolean isIndirectStreamLength() {
+        return this.indirectStreamLength;
+    }
+    
+    /**
+     * Sets the flag that controls whether the length of each stream is 
+     * written as an indirect object following the stream.  When this is
+     * enabled, page content and image data is compressed directly into the
+     * output as it is written, rather than being encoded to a separate array
+     * first so that the length is known up front.  This reduces the peak 
+     * memory used when writing documents with large streams, at the cost of
+     * one extra (small) object per stream.
+     * 
+     * @param indirect  the new flag value.
+     * 
+     * @since 2.0
+     */
+    public void setIndirectStreamLength(boolean indirect) {
+        this.indirectStreamLength = indirect;
+    }
+
+    /**
+     * Returns the maximum number of decimal places used for coordinates 
+     * (and other lengths) in page content.  The default value is 
+     * {@code 2}.
+     * 
+     * @return The number of decimal places.
+     * 
+     * @since 2.0
+     */
+    public int getGeometryPrecision() {
+        return this.geometryPrecision;
+    }
+    
+    /**
+     * Sets the maximum number of decimal places used for coordinates (and 
+     * other lengths) in the content of pages created after this call.  
+     * Fewer decimal places give smaller content streams.
+     * 
+     * @param decimals  the number of decimal places (0 to 10).
+     * 
+     * @since 2.0
+     */
+    public void setGeometryPrecision(int decimals) {
+        NumberFormatter.checkDecimals(decimals);
+        this.geometryPrecision = decimals;
+    }
+    
+    /**
+     * Returns the maximum number of decimal places used for transform 
+     * matrices in page content.  The default value is {@code 6}.
+     * 
+     * @return The number of decimal places.
+     * 
+     * @since 2.0
+     */
+    public int getTransformPrecision() {
+        return this.transformPrecision;
+    }
+    
+    /**
+     * Sets the maximum number of decimal places used for transform matrices
+     * in the content of pages created after this call.
+     * 
+     * @param decimals  the number of decimal places (0 to 10).
+     * 
+     * @since 2.0
+     */
+    public void setTransformPrecision(int decimals) {
+        NumberFormatter.checkDecimals(decimals);
+        this.transformPrecision = decimals;
+    }
+    
+    /**
+     * Returns the maximum number of decimal places used for color 
+     * components in page content.  The default value is {@code 3}, which 
+     * is enough to distinguish all 256 levels of an 8-bit component.
+     * 
+     * @return The number of decimal places.
+     * 
+     * @since 2.0
+     */
+    public int getColorPrecision() {
+        return this.colorPrecision;
+    }
+    
+    /**
+     * Sets the maximum number of decimal places used for color components 
+     * in the content of pages created after this call.
+     * 
+     * @param decimals  the number of decimal places (0 to 10).
+     * 
+     * @since 2.0
+     */
+    public void setColorPrecision(int decimals) {
+        NumberFormatter.checkDecimals(decimals);
+        this.colorPrecision = decimals;
+    }
+
+    /**
+     * Returns the filter used to compress the content streams for pages.
+     * 
+     * @return The filter (never {@code null}).
+     * 
+     * @since 2.0
+     */
+    public FlateFilter getContentFlateFilter() {
+        return this.contentFlateFilter;
+    }
+    
+    /**
+     * Sets the filter used to compress the content streams for pages 
+     * created after this call (the content stream is not compressed in 
+     * debug mode).  For example, 
+     * {@code new FlateFilter(Deflater.BEST_SPEED)} reduces the time spent
+     * compressing page content, at the cost of a larger file.
+     * 
+     * @param filter  the filter ({@code null} not permitted).
+     * 
+     * @since 2.0
+     */
+    public void setContentFlateFilter(FlateFilter filter) {
+        Args.nullNotPermitted(filter, "filter");
+        this.contentFlateFilter = filter;
+    }
+    
+    /**
+     * Returns the filter used to compress image data (including soft masks).
+     * 
+     * @return The filter (never {@code null}).
+     * 
+     * @since 2.0
+     */
+    public FlateFilter getImageFlateFilter() {
+        return this.imageFlateFilter;
+    }
+    
+    /**
+     * Sets the filter used to compress image data (including soft masks) 
+     * for images added after this call.  For example, 
+     * {@code new FlateFilter(Deflater.DEFAULT_COMPRESSION, Deflater.FILTERED)}
+     * often suits photographic images better than the default strategy.
+     * 
+     * @param filter  the filter ({@code null} not permitted).
+     * 
+     * @since 2.0
+     */
+    public void setImageFlateFilter(FlateFilter filter) {
+        Args.nullNotPermitted(filter, "filter");
+        this.imageFlateFilter = filter;
+    }
+
+    /**
+     * Returns the flag that controls whether the document structure is 
+     * compressed.  The default value is {@code false}.
+     * 
+     * @return A boolean.
+     * 
+     * @since 2.0
+     */
+    public boolean isCompressedStructure() {
+        return this.compressedStructure;
+    }
+    
+    /**
+     * Sets the flag that controls whether the document structure is 
+     * compressed.  When this is enabled, the objects that are not streams 
+     * (pages, fonts, shadings, patterns, graphics state dictionaries and so
+     * on) are packed into Flate-compressed object streams and the 
+     * cross-reference table is written as a binary cross-reference stream.
+     * This makes documents with many small objects considerably smaller, 
+     * but requires a PDF 1.5 (or later) reader.  In streaming mode, this 
+     * must be set before the first page is written.
+     * 
+     * @param compressed  the new flag value.
+     * 
+     * @since 2.0
+     */
+    public void setCompressedStructure(boolean compressed) {
+        this.compressedStructure = compressed;
+    }
+
+    /**
+     * Returns the executor used to compress streams in parallel when the 
+     * document is written.  The default value is {@code null}.
+     * 
+     * @return The executor (possibly {@code null}).
+     * 
+     * @since 2.0
+     */
+    public Executor getCompressionExecutor() {
+        return this.compressionExecutor;
+    }
+    
+    /**
+     * Sets the executor used to compress streams (page content and images)
+     * in parallel when the document is written.  The streams are encoded as
+     * independent tasks and then written in the usual order, so the output 
+     * is identical to that from serial compression.  Each stream is encoded
+     * to a buffer in memory (even with indirect stream lengths, where 
+     * serial compression writes directly to the output), and the number of
+     * encoded streams waiting to be written is limited to about twice the
+     * parallelism of the executor.  Pass 
+     * {@code ForkJoinPool.commonPool()} to use the common pool, or 
+     * {@code null} to compress one stream at a time on the calling thread.
+     * 
+     * @param executor  the executor ({@code null} permitted).
+     * 
+     * @since 2.0
+     */
+    public void setCompressionExecutor(Executor executor) {
+        this.compressionExecutor = executor;
+    }
+
+    /**
+     * Returns {@code true} if this document writes its pages to an output 
+     * stream as they are finished, and {@code false} if the document is 
+     * encoded in memory.
+     * 
+     * @return A boolean.
+     * 
+     * @since 2.0
+     */
+    public boolean isStreamingMode() {
+        return this.writer != null;
+    }
+
     /**
      * Creates a new {@code Page}, adds it to the document, and returns
-     * a reference to the {@code Page}.
+     * a reference to the {@code Page}.  In streaming mode, the previous page
+     * (if any) is finished and written to the output first.
      * 
      * @param bounds  the page bounds ({@code null} not permitted).
      * 
      * @return The new page. 
      */
     public Page createPage(Rectangle2D bounds) {
+        if (this.closed) {
+            throw new IllegalStateException("The document is closed.");
+        }
+        if (this.currentPage != null) {
+            this.currentPage.finish();
+        }
         Page page = new Page(this.nextNumber++, 0, this.pages, bounds, 
                 !this.debug);
         this.pages.add(page);
+        if (this.writer != null) {
+            this.currentPage = page;
+        }
         return page;
     }
     
+    /**
+     * Writes the specified page, its content stream and all objects added to
+     * the document since the previous page was finished, then releases the
+     * page content.  This method does nothing unless the document is in
+     * streaming mode.  It is called by {@link Page#finish()}.
+     * 
+     * @param page  the page ({@code null} not permitted).
+     */
+    void finishPage(Page page) {
+        Args.nullNotPermitted(page, "page");
+        if (this.writer == null || page.isFinished()) {
+            return;
+        }
+        try {
+            List<PDFObject> objects = new ArrayList<PDFObject>();
+            objects.add(page);
+            objects.add(page.getContents());
+            objects.addAll(this.otherObjects);
+            this.writer.writeObjects(objects);
+            this.otherObjects.clear();
+            this.writer.flush();
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        page.release();
+        if (this.currentPage == page) {
+            this.currentPage = null;
+        }
+    }
+    
     /**
      * Adds an object to the document.
      * 
@@ -215,6 +579,16 @@ public class PDFDocument {
         this.otherObjects.add(object);
     }
 
+    /**
+     * Returns the functions, shadings, patterns and graphics state 
+     * dictionaries that are shared by the pages in the document.
+     * 
+     * @return The shared resources (never {@code null}).
+     */
+    SharedResources getSharedResources() {
+        return this.sharedResources;
+    }
+    
     /**
      * Returns a new PDF object number and increments the internal counter
      * for the next PDF object number.  This method is used to ensure that
@@ -228,70 +602,96 @@ public class PDFDocument {
         return result;
     }
 
+    /**
+     * Returns the number of entries required for the cross-reference table,
+     * which is one more than the highest object number allocated so far.
+     * 
+     * @return The cross-reference table size.
+     */
+    int getCrossReferenceSize() {
+        return this.nextNumber;
+    }
+
     /**
      * Returns a byte array containing the encoding of this PDF document.
      * 
      * @return A byte array containing the encoding of this PDF document. 
      */
     public byte[] getPDFBytes() {
-        int[] xref = new int[this.nextNumber];
+        if (this.writer != null) {
+            throw new IllegalStateException(
+                    "Not available for a document in streaming mode.");
+        }
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         try {
-            bos.write(toBytes("%PDF-1.4\n"));
-            bos.write(new byte[] { (byte) 37, (byte) 128, (byte) 129, 
-                (byte) 130, (byte) 131, (byte) 10});
-            xref[this.catalog.getNumber() - 1] = bos.size();  // offset to catalog
-            bos.write(this.catalog.toPDFBytes());
-            xref[this.outlines.getNumber() - 1] = bos.size();  // offset to outlines
-            bos.write(this.outlines.toPDFBytes());            
-            xref[this.info.getNumber() - 1] = bos.size();  // offset to info
-            bos.write(this.info.toPDFBytes());
-            xref[this.pages.getNumber() - 1] = bos.size();  // offset to pages
-            bos.write(this.pages.toPDFBytes());
+            List<PDFObject> objects = new ArrayList<PDFObject>();
+            objects.add(this.catalog);
+            objects.add(this.outlines);
+            objects.add(this.info);
+            objects.add(this.pages);
             for (Page page : this.pages.getPages()) {
-                xref[page.getNumber() - 1] = bos.size();
-                bos.write(page.toPDFBytes());
-                PDFObject contents = page.getContents();
-                xref[contents.getNumber() - 1] = bos.size();
-                bos.write(contents.toPDFBytes());
-            }
-            for (PDFFont font: this.pages.getFonts()) {
-                xref[font.getNumber() - 1] = bos.size();
-                bos.write(font.toPDFBytes());
+                objects.add(page);
+                objects.add(page.getContents());
             }
-            for (PDFObject object: this.otherObjects) {
-                xref[object.getNumber() - 1] = bos.size();
-                bos.write(object.toPDFBytes());
+            objects.addAll(this.pages.getFonts());
+            objects.addAll(this.otherObjects);
+            if (this.indirectStreamLength) {
+                for (PDFObject object : objects) {
+                    if (object instanceof Stream 
+                            && ((Stream) object).getLengthNumber() == 0) {
+                        ((Stream) object).setLengthNumber(getNextNumber());
+                    }
+                }
             }
-            xref[xref.length - 1] = bos.size();
-            // write the xref table
-            bos.write(toBytes("xref\n"));
-            bos.write(toBytes("0 " + this.nextNumber
-                    + "\n"));
-            bos.write(toBytes("0000000000 65535 f \n"));
-            for (int i = 0; i < this.nextNumber - 1; i++) {
-                String offset = String.valueOf(xref[i]);
-                int len = offset.length();
-                String offset10 = "0000000000".substring(len) + offset;
-                bos.write(toBytes(offset10 + " 00000 n \n"));
+            // any numbers allocated by the writer (for object streams and 
+            // the cross-reference stream) are only used for this encoding 
+            // of the document, so they are released afterwards
+            int next = this.nextNumber;
+            try {
+                PDFWriter w = new PDFWriter(this, bos);
+                w.writeObjects(objects);
+                w.writeTrailer(this.catalog, this.info);
+            } finally {
+                this.nextNumber = next;
             }
-  
-            // write the trailer
-            bos.write(toBytes("trailer\n"));
-            Dictionary trailer = new Dictionary();
-            trailer.put("/Size", this.nextNumber);
-            trailer.put("/Root", this.catalog);
-            trailer.put("/Info", this.info);
-            bos.write(trailer.toPDFBytes());
-            bos.write(toBytes("startxref\n"));
-            bos.write(toBytes(xref[this.nextNumber - 1] + "\n"));
-            bos.write(toBytes("%%EOF"));
         } catch (IOException ex) {
             throw new RuntimeException(ex);
         }
         return bos.toByteArray();
     }
     
+    /**
+     * Completes a document in streaming mode by finishing the last page and
+     * then writing the remaining objects, the document structure and the 
+     * trailer, before closing the output stream.  For a document that is not
+     * in streaming mode, or one that is already closed, this method does 
+     * nothing.
+     * 
+     * @throws IOException if there is an I/O problem.
+     * 
+     * @since 2.0
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.writer == null || this.closed) {
+            return;
+        }
+        if (this.currentPage != null) {
+            this.currentPage.finish();
+        }
+        List<PDFObject> objects = new ArrayList<PDFObject>(this.otherObjects);
+        objects.addAll(this.pages.getFonts());
+        objects.add(this.catalog);
+        objects.add(this.outlines);
+        objects.add(this.info);
+        objects.add(this.pages);
+        this.writer.writeObjects(objects);
+        this.otherObjects.clear();
+        this.writer.writeTrailer(this.catalog, this.info);
+        this.writer.close();
+        this.closed = true;
+    }
+    
     /**
      * Writes the PDF document to a file.  This is not a robust method, it
      * exists mainly for the demo output. 
@@ -317,18 +717,5 @@ public class PDFDocument {
             }
         }
     }
-   
-    /**
-     * A utility method to convert a string to US-ASCII byte format.
-     * 
-     * @param s  the string.
-     * 
-     * @return The corresponding byte array.
-     */
-    private byte[] toBytes(String s) {
-        byte[] result = null;
-        result = s.getBytes(StandardCharsets.US_ASCII);
-        return result;
-    }
 
 }
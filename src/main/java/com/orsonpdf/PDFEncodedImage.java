@@ -0,0 +1,156 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+package com.orsonpdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import com.orsonpdf.util.Args;
+
+/**
+ * Represents an image in a PDF document whose data is copied from a JPEG or
+ * PNG file without decoding it (see {@link EncodedImage}).  The stream has 
+ * no filters of its own: the encoded data is written as-is and the 
+ * dictionary gives the {@code /DCTDecode} or {@code /FlateDecode} filter 
+ * (with the PNG predictors) that decodes it.
+ */
+class PDFEncodedImage extends Stream {
+    
+    /** The encoded image. */
+    private final EncodedImage image;
+    
+    /**
+     * Creates a new image object.
+     * 
+     * @param number  the PDF object number.
+     * @param image  the encoded image ({@code null} not permitted, and 
+     *     {@link EncodedImage#isPassThrough()} must be {@code true}).
+     */
+    PDFEncodedImage(int number, EncodedImage image) {
+        super(number);
+        Args.nullNotPermitted(image, "image");
+        if (!image.isPassThrough()) {
+            throw new IllegalArgumentException(
+                    "The image data cannot be copied as-is.");
+        }
+        this.image = image;
+    }
+
+    /**
+     * Returns the encoded image data (the filters in the dictionary decode 
+     * it).
+     * 
+     * @return The raw stream data. 
+     */
+    @Override
+    public byte[] getRawStreamData() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(
+                this.image.getStreamLength());
+        try {
+            this.image.writeStreamData(baos);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return baos.toByteArray();
+    }
+    
+    /**
+     * Copies the encoded image data to the output stream.
+     * 
+     * @param out  the output stream ({@code null} not permitted).
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    @Override
+    protected void writeRawStreamData(OutputStream out) throws IOException {
+        this.image.writeStreamData(out);
+    }
+    
+    /**
+     * Creates a dictionary reflecting the current configuration for this
+     * image.
+     * 
+     * @param streamLength  the stream length.
+     * 
+     * @return A dictionary. 
+     */
+    @Override
+    protected Dictionary createDictionary(int streamLength) {
+        Dictionary dictionary = super.createDictionary(streamLength);
+        dictionary.setType("/XObject");
+        dictionary.put("/Subtype", "/Image");
+        EncodedImage img = this.image;
+        int components = img.getComponents();
+        if (img.getPalette() != null) {
+            StringBuilder b = new StringBuilder("[/Indexed /DeviceRGB ");
+            byte[] palette = img.getPalette();
+            b.append(palette.length / 3 - 1).append(" <");
+            for (byte c : palette) {
+                b.append(Character.forDigit((c >> 4) & 0xF, 16));
+                b.append(Character.forDigit(c & 0xF, 16));
+            }
+            dictionary.put("/ColorSpace", b.append(">]").toString());
+        } else if (components == 1) {
+            dictionary.put("/ColorSpace", "/DeviceGray");
+        } else if (components == 3) {
+            dictionary.put("/ColorSpace", "/DeviceRGB");
+        } else {
+            dictionary.put("/ColorSpace", "/DeviceCMYK");
+        }
+        dictionary.put("/BitsPerComponent", img.getBitsPerComponent());
+        dictionary.put("/Width", img.getWidth());
+        dictionary.put("/Height", img.getHeight());
+        if (img.isInverted()) {
+            dictionary.put("/Decode", "[1 0 1 0 1 0 1 0]");
+        }
+        int[] colorKey = img.getColorKey();
+        if (colorKey != null && colorKey.length > 0) {
+            StringBuilder b = new StringBuilder("[");
+            for (int i = 0; i < colorKey.length; i++) {
+                b.append(i > 0 ? " " : "").append(colorKey[i]);
+            }
+            dictionary.put("/Mask", b.append(']').toString());
+        }
+        if (img.isJPEG()) {
+            dictionary.put("/Filter", "/DCTDecode");
+        } else {
+            dictionary.put("/Filter", "/FlateDecode");
+            Dictionary parms = new Dictionary();
+            parms.put("/Predictor", 15);
+            parms.put("/Colors", components);
+            parms.put("/BitsPerComponent", img.getBitsPerComponent());
+            parms.put("/Columns", img.getWidth());
+            dictionary.put("/DecodeParms", parms);
+        }
+        return dictionary;
+    }
+}
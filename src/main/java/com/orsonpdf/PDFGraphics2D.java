@@ -55,7 +55,6 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Arc2D;
 import java.awt.geom.Area;
 import java.awt.geom.Ellipse2D;
-import java.awt.geom.GeneralPath;
 import java.awt.geom.Line2D;
 import java.awt.geom.NoninvertibleTransformException;
 import java.awt.geom.Path2D;
@@ -69,6 +68,7 @@ import java.awt.image.renderable.RenderableImage;
 import java.text.AttributedCharacterIterator;
 import java.text.AttributedString;
 import java.util.Map;
+import com.orsonpdf.filter.DCTFilter;
 import com.orsonpdf.util.Args;
 import com.orsonpdf.util.GraphicsUtils;
 
@@ -104,11 +104,22 @@ public final class PDFGraphics2D extends Graphics2D {
     /** The user clip (can be null). */
     private Shape clip = null;
     
+    /** The page bounds in device space ({@code null} if not known). */
+    private Rectangle2D pageBounds;
+    
+    /** The clip that {@code visibleBounds} was computed for. */
+    private Shape visibleClip;
+    
+    /** 
+     * The bounds of the visible area in device space (the page bounds 
+     * intersected with the clip bounds), computed when first needed.
+     */
+    private Rectangle2D visibleBounds;
+    
     private Font font = new Font("SansSerif", Font.PLAIN, 12);
     
-    /** A hidden image used for font metrics. */
-    private final BufferedImage image = new BufferedImage(10, 10, 
-            BufferedImage.TYPE_INT_RGB);
+    /** A hidden image used for font metrics (created when first needed). */
+    private BufferedImage image;
 
     /**
      * An instance that is lazily instantiated in drawLine and then 
@@ -154,11 +165,12 @@ public final class PDFGraphics2D extends Graphics2D {
             null, false, true);
 
     /** 
-     * When an instance is created via the {@link #create()} method, a copy
-     * of the transform in effect is retained so it can be restored once the
-     * child instance is disposed.  See issue #4 at GitHub.
+     * When an instance is created via the {@link #create()} method, the 
+     * graphics state is saved in a new level of the graphics stream that is
+     * closed when the child instance is disposed (0 if there is no open 
+     * level).  See issue #4 at GitHub.
      */ 
-    AffineTransform originalTransform;
+    private int level;
 
     /**
      * Creates a new instance of {@code PDFGraphics2D}.  You won't 
@@ -193,6 +205,13 @@ public final class PDFGraphics2D extends Graphics2D {
         this.hints = new RenderingHints(RenderingHints.KEY_ANTIALIASING, 
                 RenderingHints.VALUE_ANTIALIAS_ON);
         this.gs = gs;
+        Rectangle2D b = gs.getPageBounds();
+        if (skipJava2DTransform) {
+            this.pageBounds = b;
+        } else {
+            this.pageBounds = new Rectangle2D.Double(b.getX(), 
+                    height - b.getMaxY(), b.getWidth(), b.getHeight());
+        }
         // flip the y-axis to match the Java2D convention
         if (!skipJava2DTransform) {
             this.gs.applyTransform(AffineTransform.getTranslateInstance(0.0, 
@@ -203,6 +222,30 @@ public final class PDFGraphics2D extends Graphics2D {
         this.gs.applyStrokeColor(getColor());
         this.gs.applyFillColor(getColor());
         this.gs.applyStroke(getStroke());
+        this.gs.setOwner(this);
+    }
+
+    /**
+     * Creates a new instance with the same attributes as the specified 
+     * instance and drawing to the same graphics stream.  Nothing is written
+     * to the stream.
+     * 
+     * @param parent  the parent instance ({@code null} not permitted).
+     */
+    private PDFGraphics2D(PDFGraphics2D parent) {
+        this.width = parent.width;
+        this.height = parent.height;
+        this.hints = (RenderingHints) parent.hints.clone();
+        this.paint = parent.paint;
+        this.color = parent.color;
+        this.background = parent.background;
+        this.composite = parent.composite;
+        this.stroke = parent.stroke;
+        this.transform = new AffineTransform(parent.transform);
+        this.clip = parent.clip;
+        this.pageBounds = parent.pageBounds;
+        this.font = parent.font;
+        this.gs = parent.gs;
     }
 
     /**
@@ -213,20 +256,50 @@ public final class PDFGraphics2D extends Graphics2D {
      */
     @Override
     public Graphics create() {
-        PDFGraphics2D copy = new PDFGraphics2D(this.gs, this.width, 
-                this.height, true);
-        copy.setRenderingHints(getRenderingHints());
-        copy.setTransform(getTransform());
-        copy.originalTransform = getTransform();
-        copy.setClip(getClip());
-        copy.setPaint(getPaint());
-        copy.setColor(getColor());
-        copy.setComposite(getComposite());
-        copy.setStroke(getStroke());
-        copy.setFont(getFont());
-        copy.setBackground(getBackground());
+        PDFGraphics2D copy = new PDFGraphics2D(this);
+        copy.level = this.gs.openLevel();
+        if (this.gs.getOwner() == this) {
+            // the copy has the same attributes, so it can take over
+            this.gs.setOwner(copy);
+        }
         return copy;
     }
+    
+    /**
+     * Returns the graphics stream, first applying all the attributes of 
+     * this instance to it if the most recent changes were made by another
+     * instance drawing to the same stream (for example, a child created via
+     * {@link #create()}).  Applying the attributes does not write anything,
+     * the stream only writes the operators for values that differ from 
+     * those in effect when they are needed for drawing.
+     * 
+     * @return The graphics stream.
+     */
+    private GraphicsStream stream() {
+        if (this.gs.getOwner() != this) {
+            this.gs.setOwner(this);
+            this.gs.setTransform(this.transform);
+            this.gs.setClip(this.clip);
+            this.gs.applyFont(this.font);
+            this.gs.applyStroke(this.stroke);
+            if (this.composite instanceof AlphaComposite) {
+                this.gs.applyComposite((AlphaComposite) this.composite);
+            } else {
+                this.gs.applyComposite(null);
+            }
+            if (this.paint instanceof Color) {
+                this.gs.applyStrokeColor((Color) this.paint);
+                this.gs.applyFillColor((Color) this.paint);
+            } else if (this.paint instanceof GradientPaint) {
+                this.gs.applyStrokeGradient((GradientPaint) this.paint);
+                this.gs.applyFillGradient((GradientPaint) this.paint);
+            } else if (this.paint instanceof RadialGradientPaint) {
+                this.gs.applyStrokeGradient((RadialGradientPaint) this.paint);
+                this.gs.applyFillGradient((RadialGradientPaint) this.paint);
+            }
+        }
+        return this.gs;
+    }
  
     /**
      * Returns the paint used to draw or fill shapes (or text).  The default 
@@ -264,11 +337,11 @@ public final class PDFGraphics2D extends Graphics2D {
         this.paint = paint;
         if (paint instanceof GradientPaint) {
             GradientPaint gp = (GradientPaint) paint;
-            this.gs.applyStrokeGradient(gp);
+            stream().applyStrokeGradient(gp);
             this.gs.applyFillGradient(gp);
         } else if (paint instanceof RadialGradientPaint) {
             RadialGradientPaint rgp = (RadialGradientPaint) paint;
-            this.gs.applyStrokeGradient(rgp);
+            stream().applyStrokeGradient(rgp);
             this.gs.applyFillGradient(rgp);
         }
     }
@@ -303,7 +376,7 @@ public final class PDFGraphics2D extends Graphics2D {
         }
         this.color = c;
         this.paint = c;
-        this.gs.applyStrokeColor(c);
+        stream().applyStrokeColor(c);
         this.gs.applyFillColor(c);
     }
     
@@ -361,9 +434,9 @@ public final class PDFGraphics2D extends Graphics2D {
         this.composite = comp;
         if (comp instanceof AlphaComposite) {
             AlphaComposite ac = (AlphaComposite) comp;
-            this.gs.applyComposite(ac);
+            stream().applyComposite(ac);
         } else {
-            this.gs.applyComposite(null);
+            stream().applyComposite(null);
         }
     }
     
@@ -394,7 +467,7 @@ public final class PDFGraphics2D extends Graphics2D {
             return;
         }
         this.stroke = s;
-        this.gs.applyStroke(s);
+        stream().applyStroke(s);
     }
 
     /**
@@ -464,22 +537,11 @@ public final class PDFGraphics2D extends Graphics2D {
         this.hints.putAll(hints);
     }
 
-    private Shape invTransformedClip(Shape clip) {
-        Shape result = clip;
-        try {
-            AffineTransform inv = this.transform.createInverse();
-            result = inv.createTransformedShape(clip);
-        } catch (NoninvertibleTransformException e) {
-            //
-        }
-        return result;
-    }
     /**
      * Draws the specified shape with the current {@code paint} and 
-     * {@code stroke}.  There is direct handling for {@code Line2D} 
-     * and {@code Path2D} instances.  All other shapes are mapped to a 
-     * {@code GeneralPath} and then drawn (effectively as {@code Path2D} 
-     * objects).
+     * {@code stroke}.  There is direct handling for {@code Rectangle2D} 
+     * and {@code Line2D} instances, all other shapes are written directly
+     * from their path iterator.
      * 
      * @param s  the shape ({@code null} not permitted). 
      * 
@@ -491,33 +553,23 @@ public final class PDFGraphics2D extends Graphics2D {
             fill(this.stroke.createStrokedShape(s));
             return;
         }
-        if (s instanceof Line2D) {
-            if (this.clip != null) {
-                this.gs.pushGraphicsState();
-                this.gs.applyClip(invTransformedClip(this.clip));
-                this.gs.drawLine((Line2D) s);
-                this.gs.popGraphicsState();
-            } else {
-                this.gs.drawLine((Line2D) s);
-            }
-        } else if (s instanceof Path2D) {
-            if (this.clip != null) {
-                this.gs.pushGraphicsState();
-                this.gs.applyClip(invTransformedClip(this.clip));
-                this.gs.drawPath2D((Path2D) s);
-                this.gs.popGraphicsState();
-            } else {
-                this.gs.drawPath2D((Path2D) s);                
-            }
-        } else {
-            draw(new GeneralPath(s));  // fallback
+        if (isCulled(s.getBounds2D(), true)) {
+            this.gs.getStatistics().incrementCulledShapeCount();
+            return;
         }
+        int threshold = shapeReuseThreshold();
+        if (threshold > 0 && stream().drawReusableShape(s, false, 
+                strokePadding(), threshold)) {
+            return;
+        }
+        stream().drawShape(s, pathTolerance());
     }
 
     /**
-     * Fills the specified shape with the current {@code paint}.  There is
-     * direct handling for {@code Path2D} instances. All other shapes are 
-     * mapped to a {@code GeneralPath} and then filled.
+     * Fills the specified shape with the current {@code paint}, using the 
+     * winding rule of the shape.  There is direct handling for 
+     * {@code Rectangle2D} instances, all other shapes are written directly
+     * from their path iterator.
      * 
      * @param s  the shape ({@code null} not permitted). 
      * 
@@ -525,18 +577,204 @@ public final class PDFGraphics2D extends Graphics2D {
      */    
     @Override
     public void fill(Shape s) {
-        if (s instanceof Path2D) {
-            if (this.clip != null) {
-                this.gs.pushGraphicsState();
-                this.gs.applyClip(invTransformedClip(this.clip));
-                this.gs.fillPath2D((Path2D) s);
-                this.gs.popGraphicsState();
-            } else {
-                this.gs.fillPath2D((Path2D) s);
+        if (isCulled(s.getBounds2D(), false)) {
+            this.gs.getStatistics().incrementCulledShapeCount();
+            return;
+        }
+        int threshold = shapeReuseThreshold();
+        if (threshold > 0 && stream().drawReusableShape(s, true, 0.0, 
+                threshold)) {
+            return;
+        }
+        stream().fillShape(s, pathTolerance());
+    }
+
+    /**
+     * Returns {@code true} if a drawing operation with the specified bounds
+     * (in user space) would be completely outside the page bounds or the 
+     * clip, so that it can be skipped.  The test is conservative: a 
+     * margin is allowed for the stroke width (including miter joins and 
+     * square caps) and for antialiasing.
+     * 
+     * @param bounds  the bounds in user space ({@code null} not permitted).
+     * @param stroked  is the outline drawn with the current stroke?
+     * 
+     * @return A boolean.
+     */
+    private boolean isCulled(Rectangle2D bounds, boolean stroked) {
+        Rectangle2D visible = visibleBounds();
+        if (visible == null) {
+            return false;
+        }
+        if (visible.isEmpty()) {
+            return true;
+        }
+        double pad = stroked ? strokePadding() : 0.0;
+        Rectangle2D r = new Rectangle2D.Double(bounds.getX() - pad, 
+                bounds.getY() - pad, bounds.getWidth() + 2 * pad, 
+                bounds.getHeight() + 2 * pad);
+        Rectangle2D device = GraphicsUtils.transformRectangle(r, 
+                this.transform);
+        if (device == null) {
+            device = this.transform.createTransformedShape(r).getBounds2D();
+        }
+        // allow one unit in device space for hairlines and antialiasing
+        return device.getMaxX() + 1.0 < visible.getMinX() 
+                || device.getMinX() - 1.0 > visible.getMaxX()
+                || device.getMaxY() + 1.0 < visible.getMinY()
+                || device.getMinY() - 1.0 > visible.getMaxY();
+    }
+    
+    /**
+     * Returns the distance (in user space) that the outline drawn by the 
+     * current stroke can extend beyond the bounds of a shape, allowing for 
+     * miter joins and square caps.
+     * 
+     * @return The distance.
+     */
+    private double strokePadding() {
+        if (!(this.stroke instanceof BasicStroke)) {
+            return 0.0;
+        }
+        BasicStroke bs = (BasicStroke) this.stroke;
+        double factor = Math.sqrt(2.0);
+        if (bs.getLineJoin() == BasicStroke.JOIN_MITER) {
+            factor = Math.max(factor, bs.getMiterLimit());
+        }
+        return bs.getLineWidth() / 2.0 * factor;
+    }
+    
+    /**
+     * Returns {@code true} if the polygon (or polyline) defined by the 
+     * specified points would be completely outside the page bounds or the
+     * clip.
+     * 
+     * @param xPoints  the x-coordinates.
+     * @param yPoints  the y-coordinates.
+     * @param nPoints  the number of points (at least 1).
+     * @param stroked  is the outline drawn with the current stroke?
+     * 
+     * @return A boolean.
+     */
+    private boolean isCulled(int[] xPoints, int[] yPoints, int nPoints, 
+            boolean stroked) {
+        if (visibleBounds() == null) {
+            return false;
+        }
+        int minX = xPoints[0];
+        int maxX = minX;
+        int minY = yPoints[0];
+        int maxY = minY;
+        for (int i = 1; i < nPoints; i++) {
+            minX = Math.min(minX, xPoints[i]);
+            maxX = Math.max(maxX, xPoints[i]);
+            minY = Math.min(minY, yPoints[i]);
+            maxY = Math.max(maxY, yPoints[i]);
+        }
+        return isCulled(new Rectangle2D.Double(minX, minY, 
+                (double) maxX - minX, (double) maxY - minY), stroked);
+    }
+    
+    /**
+     * Returns bounds in user space that contain the visible area (with a 
+     * margin for hairlines and antialiasing, and for the stroke if 
+     * required), for culling the items in bulk drawing operations.
+     * 
+     * @param stroked  allow for the current stroke?
+     * 
+     * @return The bounds ({@code null} if items should not be culled).
+     */
+    private Rectangle2D userCullBounds(boolean stroked) {
+        Rectangle2D visible = visibleBounds();
+        if (visible == null) {
+            return null;
+        }
+        AffineTransform inv;
+        try {
+            inv = this.transform.createInverse();
+        } catch (NoninvertibleTransformException ex) {
+            return null;
+        }
+        // allow one unit in device space for hairlines and antialiasing
+        Rectangle2D r = new Rectangle2D.Double(visible.getX() - 1.0, 
+                visible.getY() - 1.0, visible.getWidth() + 2.0, 
+                visible.getHeight() + 2.0);
+        Rectangle2D result = GraphicsUtils.transformRectangle(r, inv);
+        if (result == null) {
+            result = inv.createTransformedShape(r).getBounds2D();
+        }
+        if (stroked) {
+            double pad = strokePadding();
+            result.setRect(result.getX() - pad, result.getY() - pad, 
+                    result.getWidth() + 2 * pad, result.getHeight() + 2 * pad);
+        }
+        return result;
+    }
+    
+    /**
+     * Returns the bounds of the visible area in device space, that is the
+     * page bounds intersected with the bounds of the clip.
+     * 
+     * @return The visible bounds ({@code null} if not known).
+     */
+    private Rectangle2D visibleBounds() {
+        if (this.clip == null) {
+            return this.pageBounds;
+        }
+        if (this.visibleClip != this.clip) {
+            Rectangle2D r = this.clip.getBounds2D();
+            if (this.pageBounds != null && !r.isEmpty()) {
+                r = r.createIntersection(this.pageBounds);
             }
-        } else {
-            fill(new GeneralPath(s));  // fallback
+            this.visibleBounds = r;
+            this.visibleClip = this.clip;
+        }
+        return this.visibleBounds;
+    }
+
+    /**
+     * Returns the threshold for drawing repeated shapes by reference to a 
+     * form XObject, as specified by the {@link PDFHints#KEY_SHAPE_REUSE} 
+     * hint.
+     * 
+     * @return The threshold, {@code 0} if shapes should not be reused.
+     */
+    private int shapeReuseThreshold() {
+        Object value = this.hints.get(PDFHints.KEY_SHAPE_REUSE);
+        if (value instanceof Number) {
+            return Math.max(((Number) value).intValue(), 0);
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the quality for images encoded in JPEG format, as specified by
+     * the {@link PDFHints#KEY_IMAGE_QUALITY} hint.
+     * 
+     * @return The quality (0.0 to 1.0).
+     */
+    private float imageQuality() {
+        Object value = this.hints.get(PDFHints.KEY_IMAGE_QUALITY);
+        if (value instanceof Number) {
+            float q = ((Number) value).floatValue();
+            return Math.max(Math.min(q, 1.0f), 0.0f);
+        }
+        return DCTFilter.DEFAULT_QUALITY;
+    }
+
+    /**
+     * Returns the tolerance for path simplification, as specified by the
+     * {@link PDFHints#KEY_PATH_SIMPLIFICATION} hint.
+     * 
+     * @return The tolerance (in device space), {@code 0.0} if paths should
+     *     not be simplified.
+     */
+    private double pathTolerance() {
+        Object value = this.hints.get(PDFHints.KEY_PATH_SIMPLIFICATION);
+        if (value instanceof Number) {
+            return Math.max(((Number) value).doubleValue(), 0.0);
         }
+        return 0.0;
     }
 
     /**
@@ -564,7 +802,7 @@ public final class PDFGraphics2D extends Graphics2D {
             return;
         }
         this.font = font;
-        this.gs.applyFont(font);
+        stream().applyFont(font);
     }
 
     /**
@@ -576,6 +814,9 @@ public final class PDFGraphics2D extends Graphics2D {
      */
     @Override
     public FontMetrics getFontMetrics(Font f) {
+        if (this.image == null) {
+            this.image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        }
         return this.image.createGraphics().getFontMetrics(f);
     }
 
@@ -622,25 +863,29 @@ public final class PDFGraphics2D extends Graphics2D {
         if (str.isEmpty()) {
             return; // nothing to do
         }
-        if (this.clip != null) {
-            this.gs.pushGraphicsState();
-            this.gs.applyClip(invTransformedClip(this.clip));
-        }
-
         // the following hint allows the user to switch between standard
         // text output and drawing text as vector graphics
         if (!PDFHints.VALUE_DRAW_STRING_TYPE_VECTOR.equals(
                 this.hints.get(PDFHints.KEY_DRAW_STRING_TYPE))) {
-            this.gs.drawString(str, x, y);
+            if (visibleBounds() != null) {
+                Rectangle2D b = this.font.getStringBounds(str, 
+                        getFontRenderContext());
+                // the PDF font that replaces the Java font can have wider
+                // glyphs, so allow a generous margin
+                double m = this.font.getSize2D() + b.getWidth() / 2.0;
+                if (isCulled(new Rectangle2D.Double(x + b.getX() - m, 
+                        y + b.getY() - m, b.getWidth() + 2 * m, 
+                        b.getHeight() + 2 * m), false)) {
+                    this.gs.getStatistics().incrementCulledStringCount();
+                    return;
+                }
+            }
+            stream().drawString(str, x, y);
         } else {
             AttributedString as = new AttributedString(str, 
                     this.font.getAttributes());
             drawString(as.getIterator(), x, y);
         }
-        
-        if (this.clip != null) {
-            this.gs.popGraphicsState();
-        }
     }
 
     /**
@@ -709,9 +954,8 @@ public final class PDFGraphics2D extends Graphics2D {
      */
     @Override
     public void translate(double tx, double ty) {
-        AffineTransform t = getTransform();
-        t.translate(tx, ty);
-        setTransform(t);
+        this.transform.translate(tx, ty);
+        stream().setTransform(this.transform);
     }
 
     /**
@@ -721,9 +965,8 @@ public final class PDFGraphics2D extends Graphics2D {
      */
     @Override
     public void rotate(double theta) {
-        AffineTransform t = getTransform();
-        t.rotate(theta);
-        setTransform(t);
+        this.transform.rotate(theta);
+        stream().setTransform(this.transform);
     }
 
     /**
@@ -748,9 +991,8 @@ public final class PDFGraphics2D extends Graphics2D {
      */
     @Override
     public void scale(double sx, double sy) {
-        AffineTransform t = getTransform();
-        t.scale(sx, sy);
-        setTransform(t);
+        this.transform.scale(sx, sy);
+        stream().setTransform(this.transform);
     }
 
     /**
@@ -766,8 +1008,8 @@ public final class PDFGraphics2D extends Graphics2D {
      */
     @Override
     public void shear(double shx, double shy) {
-        AffineTransform t = AffineTransform.getShearInstance(shx, shy);
-        transform(t);
+        this.transform.shear(shx, shy);
+        stream().setTransform(this.transform);
     }
 
     /**
@@ -777,9 +1019,8 @@ public final class PDFGraphics2D extends Graphics2D {
      */
     @Override
     public void transform(AffineTransform t) {
-        AffineTransform tx = getTransform();
-        tx.concatenate(t);
-        setTransform(tx);
+        this.transform.concatenate(t);
+        stream().setTransform(this.transform);
     }
 
     /**
@@ -805,11 +1046,11 @@ public final class PDFGraphics2D extends Graphics2D {
     @Override
     public void setTransform(AffineTransform t) {
         if (t == null) {
-            this.transform = new AffineTransform();
+            this.transform.setToIdentity();
         } else {
-            this.transform = new AffineTransform(t);
+            this.transform.setTransform(t);
         }
-        this.gs.setTransform(this.transform);
+        stream().setTransform(this.transform);
     }
 
     /**
@@ -889,10 +1130,17 @@ public final class PDFGraphics2D extends Graphics2D {
         AffineTransform inv;
         try {
             inv = this.transform.createInverse();
-            return inv.createTransformedShape(this.clip);
         } catch (NoninvertibleTransformException ex) {
             return null;
         }
+        if (this.clip instanceof Rectangle2D) {
+            Rectangle2D r = GraphicsUtils.transformRectangle(
+                    (Rectangle2D) this.clip, inv);
+            if (r != null) {
+                return r;
+            }
+        }
+        return inv.createTransformedShape(this.clip);
     }
 
     /**
@@ -904,13 +1152,11 @@ public final class PDFGraphics2D extends Graphics2D {
      */
     @Override
     public void setClip(Shape shape) {
-        // null is handled fine here...
-        this.clip = this.transform.createTransformedShape(shape);
-        // the clip does not get applied to the PDF output immediately,
-        // instead it is applied with each draw (or fill) operation by
-        // pushing the current graphics state, applying the clip, doing the 
-        // draw/fill, then popping the graphics state to restore it to the
-        // previous clip
+        this.clip = transformedShape(shape);
+        // the clip does not get applied to the PDF output immediately, the
+        // graphics stream writes it before the next draw (or fill) operation
+        // and keeps it in effect until it is changed
+        stream().setClip(this.clip);
     }
 
     /**
@@ -946,15 +1192,30 @@ public final class PDFGraphics2D extends Graphics2D {
             setClip(s);
             return;
         }
-        Shape ts = this.transform.createTransformedShape(s);
-        if (!ts.intersects(this.clip.getBounds2D())) {
-            setClip(new Rectangle2D.Double());
-        } else {
-          Area a1 = new Area(ts);
-          Area a2 = new Area(this.clip);
-          a1.intersect(a2);
-          this.clip = new Path2D.Double(a1);
+        this.clip = GraphicsUtils.intersect(transformedShape(s), this.clip);
+        stream().setClip(this.clip);
+    }
+    
+    /**
+     * Returns a new shape that is the result of applying the current 
+     * transform to the specified shape.  A rectangle stays a rectangle 
+     * (which allows for fast clipping) if the transform has no rotation or
+     * shear.
+     * 
+     * @param shape  the shape ({@code null} permitted).
+     * 
+     * @return The transformed shape ({@code null} if {@code shape} is 
+     *     {@code null}).
+     */
+    private Shape transformedShape(Shape shape) {
+        if (shape instanceof Rectangle2D) {
+            Rectangle2D r = GraphicsUtils.transformRectangle(
+                    (Rectangle2D) shape, this.transform);
+            if (r != null) {
+                return r;
+            }
         }
+        return this.transform.createTransformedShape(shape);
     }
 
     /**
@@ -1007,6 +1268,21 @@ public final class PDFGraphics2D extends Graphics2D {
         draw(this.line);
     }
 
+    /**
+     * Draws the outline of the specified rectangle with the current
+     * {@code paint} and {@code stroke}.
+     *
+     * @param x  the x-coordinate.
+     * @param y  the y-coordinate.
+     * @param width  the rectangle width.
+     * @param height  the rectangle height.
+     */
+    @Override
+    public void drawRect(int x, int y, int width, int height) {
+        setRect(x, y, width, height);
+        draw(this.rect);
+    }
+
     /**
      * Fills the specified rectangle with the current {@code paint}.
      * 
@@ -1172,9 +1448,19 @@ public final class PDFGraphics2D extends Graphics2D {
      */
     @Override
     public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
-        GeneralPath p = GraphicsUtils.createPolygon(xPoints, yPoints, nPoints,
-                false);
-        draw(p);
+        if (nPoints < 1) {
+            return;
+        }
+        if (this.stroke instanceof BasicStroke && pathTolerance() <= 0.0) {
+            if (isCulled(xPoints, yPoints, nPoints, true)) {
+                this.gs.getStatistics().incrementCulledShapeCount();
+                return;
+            }
+            stream().drawPolyline(xPoints, yPoints, nPoints, false);
+        } else {
+            draw(GraphicsUtils.createPolygon(xPoints, yPoints, nPoints, 
+                    false));
+        }
     }
 
     /**
@@ -1188,9 +1474,18 @@ public final class PDFGraphics2D extends Graphics2D {
      * @see #fillPolygon(int[], int[], int)      */
     @Override
     public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
-        GeneralPath p = GraphicsUtils.createPolygon(xPoints, yPoints, nPoints, 
-                true);
-        draw(p);
+        if (nPoints < 1) {
+            return;
+        }
+        if (this.stroke instanceof BasicStroke) {
+            if (isCulled(xPoints, yPoints, nPoints, true)) {
+                this.gs.getStatistics().incrementCulledShapeCount();
+                return;
+            }
+            stream().drawPolyline(xPoints, yPoints, nPoints, true);
+        } else {
+            draw(GraphicsUtils.createPolygon(xPoints, yPoints, nPoints, true));
+        }
     }
 
     /**
@@ -1204,9 +1499,189 @@ public final class PDFGraphics2D extends Graphics2D {
      */
     @Override
     public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
-        GeneralPath p = GraphicsUtils.createPolygon(xPoints, yPoints, nPoints, 
-                true);
-        fill(p);
+        if (nPoints < 1) {
+            return;
+        }
+        if (isCulled(xPoints, yPoints, nPoints, false)) {
+            this.gs.getStatistics().incrementCulledShapeCount();
+            return;
+        }
+        stream().fillPolygon(xPoints, yPoints, nPoints);
+    }
+
+    /**
+     * Draws the polyline defined by the specified points using the current
+     * {@code paint} and {@code stroke}.  The result is the same as drawing
+     * a {@code Path2D} through the points, but the coordinates are written 
+     * directly from the arrays.
+     * 
+     * @param xPoints  the x-coordinates ({@code null} not permitted).
+     * @param yPoints  the y-coordinates ({@code null} not permitted).
+     * @param nPoints  the number of points to use for the polyline.
+     * 
+     * @since 2.0
+     */
+    public void drawPolyline(double[] xPoints, double[] yPoints, 
+            int nPoints) {
+        Args.nullNotPermitted(xPoints, "xPoints");
+        Args.nullNotPermitted(yPoints, "yPoints");
+        if (nPoints < 1) {
+            return;
+        }
+        if (!(this.stroke instanceof BasicStroke)) {
+            Path2D path = new Path2D.Double(Path2D.WIND_NON_ZERO, nPoints);
+            path.moveTo(xPoints[0], yPoints[0]);
+            for (int i = 1; i < nPoints; i++) {
+                path.lineTo(xPoints[i], yPoints[i]);
+            }
+            draw(path);
+            return;
+        }
+        double minX = xPoints[0];
+        double maxX = minX;
+        double minY = yPoints[0];
+        double maxY = minY;
+        for (int i = 1; i < nPoints; i++) {
+            minX = Math.min(minX, xPoints[i]);
+            maxX = Math.max(maxX, xPoints[i]);
+            minY = Math.min(minY, yPoints[i]);
+            maxY = Math.max(maxY, yPoints[i]);
+        }
+        if (isCulled(new Rectangle2D.Double(minX, minY, maxX - minX, 
+                maxY - minY), true)) {
+            this.gs.getStatistics().incrementCulledShapeCount();
+            return;
+        }
+        stream().drawPolyline(xPoints, yPoints, nPoints, pathTolerance());
+    }
+    
+    /**
+     * Draws the polyline defined by the points in the specified builder 
+     * using the current {@code paint} and {@code stroke}.
+     * 
+     * @param polyline  the polyline ({@code null} not permitted).
+     * 
+     * @since 2.0
+     */
+    public void drawPolyline(PolylineBuilder polyline) {
+        Args.nullNotPermitted(polyline, "polyline");
+        drawPolyline(polyline.xPoints(), polyline.yPoints(), polyline.size());
+    }
+    
+    /**
+     * Draws line segments using the current {@code paint} and 
+     * {@code stroke}.  The coordinates are packed into the array as 
+     * {@code (x1, y1, x2, y2)} quadruples, and the result is the same as 
+     * calling {@link #draw(java.awt.Shape)} with a {@code Line2D} for each 
+     * quadruple.  The segments are written as a single path, except when 
+     * the alpha transparency is less than 1 (then each segment is stroked
+     * separately, so that overlapping segments are composited as they 
+     * would be with separate calls).  Segments that are outside the page 
+     * bounds or the clip are skipped.
+     * 
+     * @param lines  the line coordinates ({@code null} not permitted).
+     * 
+     * @since 2.0
+     */
+    public void drawLines(double[] lines) {
+        Args.nullNotPermitted(lines, "lines");
+        if (!(this.stroke instanceof BasicStroke)) {
+            Line2D line = new Line2D.Double();
+            for (int i = 0; i + 3 < lines.length; i += 4) {
+                line.setLine(lines[i], lines[i + 1], lines[i + 2], 
+                        lines[i + 3]);
+                draw(line);
+            }
+            return;
+        }
+        int culled = stream().drawLines(lines, userCullBounds(true));
+        this.gs.getStatistics().addCulledShapes(culled);
+    }
+    
+    /**
+     * Fills rectangles using the current {@code paint}.  The coordinates 
+     * are packed into the array as {@code (x, y, w, h)} quadruples, and the
+     * result is the same as calling {@link #fill(java.awt.Shape)} with a 
+     * {@code Rectangle2D} for each quadruple.  The rectangles are written as
+     * a single path, except when the alpha transparency is less than 1 
+     * (then each rectangle is filled separately, so that overlapping 
+     * rectangles are composited as they would be with separate calls).  
+     * Rectangles that are outside the page bounds or the clip (or that have
+     * a negative width or height) are skipped.
+     * 
+     * @param rects  the rectangle coordinates ({@code null} not permitted).
+     * 
+     * @since 2.0
+     */
+    public void fillRects(double[] rects) {
+        Args.nullNotPermitted(rects, "rects");
+        int culled = stream().fillRects(rects, userCullBounds(false));
+        this.gs.getStatistics().addCulledShapes(culled);
+    }
+    
+    /**
+     * Draws the outline of a marker shape at each of the specified points, 
+     * using the current {@code paint} and {@code stroke}.  The result is 
+     * the same as drawing the marker translated to each point, but when 
+     * the paint is a {@code Color} the marker is written just once as a 
+     * form XObject and drawn by reference at each point.
+     * 
+     * @param marker  the marker shape, relative to the point 
+     *     ({@code null} not permitted).
+     * @param xPoints  the x-coordinates ({@code null} not permitted).
+     * @param yPoints  the y-coordinates ({@code null} not permitted).
+     * @param nPoints  the number of points.
+     * 
+     * @see #fillMarkers(java.awt.Shape, double[], double[], int) 
+     * 
+     * @since 2.0
+     */
+    public void drawMarkers(Shape marker, double[] xPoints, double[] yPoints,
+            int nPoints) {
+        drawMarkers(marker, xPoints, yPoints, nPoints, false);
+    }
+    
+    /**
+     * Fills a marker shape at each of the specified points, using the 
+     * current {@code paint}.  The result is the same as filling the marker 
+     * translated to each point, but when the paint is a {@code Color} the 
+     * marker is written just once as a form XObject and drawn by reference 
+     * at each point.
+     * 
+     * @param marker  the marker shape, relative to the point 
+     *     ({@code null} not permitted).
+     * @param xPoints  the x-coordinates ({@code null} not permitted).
+     * @param yPoints  the y-coordinates ({@code null} not permitted).
+     * @param nPoints  the number of points.
+     * 
+     * @see #drawMarkers(java.awt.Shape, double[], double[], int) 
+     * 
+     * @since 2.0
+     */
+    public void fillMarkers(Shape marker, double[] xPoints, double[] yPoints,
+            int nPoints) {
+        drawMarkers(marker, xPoints, yPoints, nPoints, true);
+    }
+    
+    private void drawMarkers(Shape marker, double[] xPoints, 
+            double[] yPoints, int nPoints, boolean fill) {
+        Args.nullNotPermitted(marker, "marker");
+        Args.nullNotPermitted(xPoints, "xPoints");
+        Args.nullNotPermitted(yPoints, "yPoints");
+        if (nPoints < 1) {
+            return;
+        }
+        if (!fill && !(this.stroke instanceof BasicStroke)) {
+            AffineTransform t = new AffineTransform();
+            for (int i = 0; i < nPoints; i++) {
+                t.setToTranslation(xPoints[i], yPoints[i]);
+                draw(t.createTransformedShape(marker));
+            }
+            return;
+        }
+        int culled = stream().drawMarkers(marker, xPoints, yPoints, nPoints, 
+                fill, fill ? 0.0 : strokePadding(), userCullBounds(false));
+        this.gs.getStatistics().addCulledShapes(culled);
     }
 
     /**
@@ -1307,7 +1782,11 @@ public final class PDFGraphics2D extends Graphics2D {
     /**
      * Draws the image into the rectangle defined by {@code (x, y, w, h)}.  
      * Note that the {@code observer} is ignored (it is not useful in this
-     * context).
+     * context).  The pixels are hashed each time an image is drawn, and
+     * an image with the same pixels as one already in the document is 
+     * written by reference to it.  Otherwise the pixels are copied when the
+     * image is drawn, so the image can be modified (and drawn again) 
+     * straight after this call.
      * 
      * @param img  the image.
      * @param x  the x-coordinate.
@@ -1321,17 +1800,63 @@ public final class PDFGraphics2D extends Graphics2D {
     @Override
     public boolean drawImage(Image img, int x, int y, int w, int h, 
             ImageObserver observer) {
-        if (this.clip != null) {
-            this.gs.pushGraphicsState();
-            this.gs.applyClip(invTransformedClip(this.clip));
-            this.gs.drawImage(img, x, y, w, h);
-            this.gs.popGraphicsState();
-        } else {
-            this.gs.drawImage(img, x, y, w, h);
+        if (w > 0 && h > 0 
+                && isCulled(new Rectangle2D.Double(x, y, w, h), false)) {
+            this.gs.getStatistics().incrementCulledImageCount();
+            return true;
         }
+        stream().drawImage(img, x, y, w, h, 
+                this.hints.get(PDFHints.KEY_IMAGE_ENCODING), imageQuality());
         return true;
     }
 
+    /**
+     * Draws an image in JPEG or PNG format at the location {@code (x, y)}, 
+     * at its natural size (one pixel per unit in user space).
+     * 
+     * @param img  the image ({@code null} not permitted).
+     * @param x  the x-coordinate.
+     * @param y  the y-coordinate.
+     * 
+     * @see #drawImage(EncodedImage, int, int, int, int) 
+     * 
+     * @since 2.0
+     */
+    public void drawImage(EncodedImage img, int x, int y) {
+        Args.nullNotPermitted(img, "img");
+        drawImage(img, x, y, img.getWidth(), img.getHeight());
+    }
+    
+    /**
+     * Draws an image in JPEG or PNG format into the rectangle defined by 
+     * {@code (x, y, w, h)}.  Where possible (see 
+     * {@link EncodedImage#isPassThrough()}), the encoded data is copied to 
+     * the document as-is, so the image is not decoded and the 
+     * {@link PDFHints#KEY_IMAGE_ENCODING} hint does not apply.  Otherwise 
+     * the image is decoded and drawn in the same way as any other image.
+     * 
+     * @param img  the image ({@code null} not permitted).
+     * @param x  the x-coordinate.
+     * @param y  the y-coordinate.
+     * @param w  the width.
+     * @param h  the height.
+     * 
+     * @since 2.0
+     */
+    public void drawImage(EncodedImage img, int x, int y, int w, int h) {
+        Args.nullNotPermitted(img, "img");
+        if (!img.isPassThrough()) {
+            drawImage(img.getImage(), x, y, w, h, null);
+            return;
+        }
+        if (w > 0 && h > 0 
+                && isCulled(new Rectangle2D.Double(x, y, w, h), false)) {
+            this.gs.getStatistics().incrementCulledImageCount();
+            return;
+        }
+        stream().drawImage(img, x, y, w, h);
+    }
+
     /**
      * Draws an image at the location {@code (x, y)}.  Note that the 
      * {@code observer} is ignored.
@@ -1464,17 +1989,36 @@ public final class PDFGraphics2D extends Graphics2D {
     
     /**
      * Performs any actions required when the graphics instance is finished
-     * with.  Here we restore the transform on the graphics stream if this
-     * instance was created via the {@link #create() } method.  See issue #4
-     * at GitHub for background info.
+     * with.  Here we restore the graphics state on the graphics stream if 
+     * this instance was created via the {@link #create() } method (along 
+     * with the state for any of its own children that are still open).  See
+     * issue #4 at GitHub for background info.  Calling this method more 
+     * than once has no further effect.  This method should be called from
+     * the thread that draws to the page: levels that are still open when 
+     * the page content is written are closed at that point (an instance 
+     * that is never disposed is not disposed by the finalizer, see 
+     * {@link #finalize()}).
      */
     @Override
     public void dispose() {
-        if (this.originalTransform != null) {
-            this.gs.setTransform(this.originalTransform);
+        if (this.level != 0) {
+            this.gs.closeLevel(this.level);
+            this.level = 0;
+            if (this.gs.getOwner() == this) {
+                this.gs.setOwner(null);
+            }
         }
     }
 
+    /**
+     * Does nothing, so that the finalizer never calls {@link #dispose()}.
+     */
+    @Override
+    @SuppressWarnings("deprecation")
+    public void finalize() {
+        // do nothing, open levels are closed when the content is written
+    }
+
     /**
      * Sets the attributes of the reusable {@link Rectangle2D} object that is
      * used by the {@link #drawRect(int, int, int, int)} and 
@@ -35,10 +35,16 @@ import java.awt.RenderingHints;
 
 /**
  * Defines the rendering hints that can be used with the {@link PDFGraphics2D} 
- * class.  There is just one hint defined at present:<br>
+ * class:<br>
  * <ul>
  * <li>{@link #KEY_DRAW_STRING_TYPE} that controls how the drawString() methods
  * generate output (regular text or vector graphics);</li>
+ * <li>{@link #KEY_PATH_SIMPLIFICATION} that enables the simplification of 
+ * dense paths within a tolerance (in device units);</li>
+ * <li>{@link #KEY_SHAPE_REUSE} that enables drawing repeated shapes (for 
+ * example, markers) by reference to a form XObject;</li>
+ * <li>{@link #KEY_IMAGE_ENCODING} and {@link #KEY_IMAGE_QUALITY} that 
+ * control whether images are encoded losslessly or in JPEG format;</li>
  * </ul>
  * 
  * @since 1.5
@@ -74,6 +80,94 @@ public final class PDFHints {
     public static final Object VALUE_DRAW_STRING_TYPE_VECTOR
             = "VALUE_DRAW_STRING_TYPE_VECTOR";
     
+    /**
+     * The key for the hint that enables the simplification of runs of line
+     * segments in shapes that are drawn or filled.  The hint value is a 
+     * {@code Number} giving the tolerance in device units (points, 1/72 
+     * inch) after the current transform is applied: line segments are 
+     * dropped only where no dropped point lies further than the tolerance 
+     * from the simplified path.  A tolerance of {@code 72.0 / (2 * dpi)} 
+     * keeps the deviation under half a pixel at the target resolution 
+     * {@code dpi}, so the visible result is unchanged.  The default 
+     * ({@code null}) writes every segment.  The number of segments dropped 
+     * is reported by {@link Page#getStatistics()}.
+     * 
+     * @since 2.0
+     */
+    public static final PDFHints.Key KEY_PATH_SIMPLIFICATION 
+            = new PDFHints.Key(1);
+    
+    /**
+     * The key for the hint that enables drawing repeated shapes (for 
+     * example, the markers in a scatter plot) by reference to a form XObject
+     * that contains the shape geometry, so that each occurrence is written
+     * as {@code q 1 0 0 1 tx ty cm /Fm1 Do Q} instead of the full path.  The
+     * hint value is a {@code Number} giving the threshold: the number of 
+     * times a shape (with the same geometry relative to its first point and
+     * drawn in the same way) must occur on a page before it is written as 
+     * a form XObject.  The default ({@code null}) writes every shape in 
+     * full.  Shapes are only reused when the paint is a {@code Color}, and 
+     * rectangles, lines and paths with many segments are always written in
+     * full.  The number of shapes drawn by reference is reported by 
+     * {@link Page#getStatistics()}.
+     * 
+     * @since 2.0
+     */
+    public static final PDFHints.Key KEY_SHAPE_REUSE = new PDFHints.Key(2);
+    
+    /**
+     * The key for the hint that controls how the images drawn after the 
+     * hint is set are encoded.  Valid hint values are 
+     * {@link #VALUE_IMAGE_ENCODING_FLATE} (the default), 
+     * {@link #VALUE_IMAGE_ENCODING_DCT} and 
+     * {@link #VALUE_IMAGE_ENCODING_AUTO}.  Only the color samples are 
+     * JPEG encoded, the mask for a transparent image is always encoded 
+     * losslessly.
+     * 
+     * @since 2.0
+     */
+    public static final PDFHints.Key KEY_IMAGE_ENCODING = new PDFHints.Key(3);
+    
+    /**
+     * Hint value for {@code KEY_IMAGE_ENCODING} to specify that images are
+     * encoded losslessly with the document's image flate filter.
+     * 
+     * @since 2.0
+     */
+    public static final Object VALUE_IMAGE_ENCODING_FLATE 
+            = "VALUE_IMAGE_ENCODING_FLATE";
+    
+    /**
+     * Hint value for {@code KEY_IMAGE_ENCODING} to specify that images are
+     * encoded in JPEG format (lossy), with the quality given by the 
+     * {@link #KEY_IMAGE_QUALITY} hint.
+     * 
+     * @since 2.0
+     */
+    public static final Object VALUE_IMAGE_ENCODING_DCT 
+            = "VALUE_IMAGE_ENCODING_DCT";
+    
+    /**
+     * Hint value for {@code KEY_IMAGE_ENCODING} to specify that images that
+     * look photographic (images that are not small and have many distinct
+     * colors) are encoded in JPEG format and other images (for example, 
+     * icons and charts) are encoded losslessly.
+     * 
+     * @since 2.0
+     */
+    public static final Object VALUE_IMAGE_ENCODING_AUTO 
+            = "VALUE_IMAGE_ENCODING_AUTO";
+    
+    /**
+     * The key for the hint that sets the quality for images encoded in JPEG
+     * format.  The hint value is a {@code Number} from {@code 0.0} 
+     * (smallest output) to {@code 1.0} (best quality).  The default 
+     * ({@code null}) is {@link com.orsonpdf.filter.DCTFilter#DEFAULT_QUALITY}.
+     * 
+     * @since 2.0
+     */
+    public static final PDFHints.Key KEY_IMAGE_QUALITY = new PDFHints.Key(4);
+    
     /**
      * A key for hints used by the {@link PDFGraphics2D} class.
      */
@@ -98,6 +192,21 @@ public final class PDFHints {
                     return val == null 
                             || VALUE_DRAW_STRING_TYPE_STANDARD.equals(val)
                             || VALUE_DRAW_STRING_TYPE_VECTOR.equals(val);
+                case 1:
+                    return val == null || (val instanceof Number 
+                            && ((Number) val).doubleValue() >= 0.0);
+                case 2:
+                    return val == null || (val instanceof Number 
+                            && ((Number) val).intValue() >= 1);
+                case 3:
+                    return val == null 
+                            || VALUE_IMAGE_ENCODING_FLATE.equals(val)
+                            || VALUE_IMAGE_ENCODING_DCT.equals(val)
+                            || VALUE_IMAGE_ENCODING_AUTO.equals(val);
+                case 4:
+                    return val == null || (val instanceof Number 
+                            && ((Number) val).doubleValue() >= 0.0
+                            && ((Number) val).doubleValue() <= 1.0);
                 default:
                     throw new RuntimeException("Not expected!");
             }
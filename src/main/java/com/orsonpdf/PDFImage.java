@@ -32,10 +32,10 @@
 package com.orsonpdf;
 
 import com.orsonpdf.util.Args;
-import java.awt.Color;
-import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * Represents an image in a PDF document.
@@ -48,11 +48,14 @@ public class PDFImage extends Stream {
     /** The height. */
     int height;
 
-    /** The image. */
-    Image image;
-    
     String softMaskImageRef;
     
+    /** The stencil mask image reference (or {@code null}). */
+    String maskImageRef;
+    
+    /** The pixel reader (possibly shared with the soft mask image). */
+    private final ImageRaster raster;
+    
     /**
      * Creates a new image object.
      * 
@@ -62,12 +65,45 @@ public class PDFImage extends Stream {
      *     permitted).
      */
     public PDFImage(int number, Image img, String softMaskImageRef) {
+        this(number, new ImageRaster(img), softMaskImageRef);
+    }
+
+    /**
+     * Creates a new image object that reads the pixels with the specified
+     * raster, which can be shared with the soft mask image so that the
+     * image data is read only once.
+     * 
+     * @param number  the PDF object number.
+     * @param raster  the pixel reader ({@code null} not permitted).
+     * @param softMaskImageRef  the soft mask image reference ({@code null} 
+     *     permitted).
+     */
+    PDFImage(int number, ImageRaster raster, String softMaskImageRef) {
+        this(number, raster, softMaskImageRef, null);
+    }
+
+    /**
+     * Creates a new image object that reads the pixels with the specified
+     * raster and is masked by either a soft mask image or a stencil mask
+     * image (or neither).
+     * 
+     * @param number  the PDF object number.
+     * @param raster  the pixel reader ({@code null} not permitted).
+     * @param softMaskImageRef  the soft mask image reference ({@code null} 
+     *     permitted).
+     * @param maskImageRef  the stencil mask image reference ({@code null} 
+     *     permitted).
+     */
+    PDFImage(int number, ImageRaster raster, String softMaskImageRef, 
+            String maskImageRef) {
         super(number);
-        Args.nullNotPermitted(img, "img");
-        this.width = img.getWidth(null);
-        this.height = img.getHeight(null);
-        this.image = img;
+        Args.nullNotPermitted(raster, "raster");
+        this.width = raster.getWidth();
+        this.height = raster.getHeight();
+        this.raster = raster;
         this.softMaskImageRef = softMaskImageRef;
+        this.maskImageRef = maskImageRef;
+        raster.require(ImageRaster.RGB);
     }
 
     /**
@@ -79,29 +115,27 @@ public class PDFImage extends Stream {
      */
     @Override
     public byte[] getRawStreamData() {
-        BufferedImage bi;
-        if (!(this.image instanceof BufferedImage)) {
-            bi = new BufferedImage(this.width, this.height, 
-                    BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2 = bi.createGraphics();
-            g2.setBackground(new Color(255, 255, 255, 0));
-            g2.clearRect(0, 0, this.width, this.height);
-            g2.drawImage(this.image, 0, 0, null);
-        } else {
-            bi = (BufferedImage) this.image;
-        }
-        // create a byte array of the image data to go in the PDF
-        byte[] result = new byte[this.width * this.height * 3];
-        int i = 0;
-        for (int hh = this.height - 1; hh >= 0; hh--) {
-            for (int ww = 0; ww < this.width; ww++) {
-                int rgb = bi.getRGB(ww, hh);
-                result[i++] = (byte) (rgb >> 16);
-                result[i++] = (byte) (rgb >> 8);
-                result[i++] = (byte) rgb;
-            }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(
+                this.width * this.height * 3);
+        try {
+            this.raster.write(baos, ImageRaster.RGB);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
         }
-        return result;
+        return baos.toByteArray();
+    }
+    
+    /**
+     * Writes the raw image data to the output stream one row at a time, so
+     * that the complete data is never held in memory.
+     * 
+     * @param out  the output stream ({@code null} not permitted).
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    @Override
+    protected void writeRawStreamData(OutputStream out) throws IOException {
+        this.raster.write(out, ImageRaster.RGB);
     }
     
     /**
@@ -124,6 +158,9 @@ public class PDFImage extends Stream {
         if (this.softMaskImageRef != null) {
             dictionary.put("/SMask", this.softMaskImageRef);
         }
+        if (this.maskImageRef != null) {
+            dictionary.put("/Mask", this.maskImageRef);
+        }
         return dictionary;
     }
 }
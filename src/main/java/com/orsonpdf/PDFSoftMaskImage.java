@@ -32,9 +32,10 @@
 package com.orsonpdf;
 
 import com.orsonpdf.util.Args;
-import java.awt.Graphics2D;
 import java.awt.Image;
-import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * Represents a soft mask image in a PDF document.
@@ -47,8 +48,8 @@ public class PDFSoftMaskImage extends Stream {
     /** The height. */
     int height;
 
-    /** The image. */
-    Image image;
+    /** The pixel reader (possibly shared with the image). */
+    private final ImageRaster raster;
     
     /**
      * Creates a new soft mask image object.
@@ -57,11 +58,24 @@ public class PDFSoftMaskImage extends Stream {
      * @param img  the AWT image object ({@code null} not permitted).
      */
     public PDFSoftMaskImage(int number, Image img) {
+        this(number, new ImageRaster(img));
+    }
+
+    /**
+     * Creates a new soft mask image object that reads the pixels with the
+     * specified raster, which can be shared with the image so that the 
+     * image data is read only once.
+     * 
+     * @param number  the PDF object number.
+     * @param raster  the pixel reader ({@code null} not permitted).
+     */
+    PDFSoftMaskImage(int number, ImageRaster raster) {
         super(number);
-        Args.nullNotPermitted(img, "img");
-        this.width = img.getWidth(null);
-        this.height = img.getHeight(null);
-        this.image = img;
+        Args.nullNotPermitted(raster, "raster");
+        this.width = raster.getWidth();
+        this.height = raster.getHeight();
+        this.raster = raster;
+        raster.require(ImageRaster.ALPHA);
     }
 
     /**
@@ -73,25 +87,27 @@ public class PDFSoftMaskImage extends Stream {
      */
     @Override
     public byte[] getRawStreamData() {
-        BufferedImage bi;
-        if (!(this.image instanceof BufferedImage)) {
-            bi = new BufferedImage(this.width, this.height, 
-                    BufferedImage.TYPE_INT_ARGB);
-            Graphics2D g2 = bi.createGraphics();
-            g2.drawImage(this.image, 0, 0, null);
-        } else {
-            bi = (BufferedImage) this.image;
-        }
-        // create a byte array of the image data to go in the PDF
-        byte[] result = new byte[this.width * this.height];
-        int i = 0;
-        for (int hh = this.height - 1; hh >= 0; hh--) {
-            for (int ww = 0; ww < this.width; ww++) {
-                int rgb = bi.getRGB(ww, hh);
-                result[i++] = (byte) (rgb >> 24);
-            }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(
+                this.width * this.height);
+        try {
+            this.raster.write(baos, ImageRaster.ALPHA);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
         }
-        return result;
+        return baos.toByteArray();
+    }
+    
+    /**
+     * Writes the raw image data to the output stream one row at a time, so
+     * that the complete data is never held in memory.
+     * 
+     * @param out  the output stream ({@code null} not permitted).
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    @Override
+    protected void writeRawStreamData(OutputStream out) throws IOException {
+        this.raster.write(out, ImageRaster.ALPHA);
     }
     
     /**
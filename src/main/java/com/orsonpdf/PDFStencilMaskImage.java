@@ -0,0 +1,122 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+package com.orsonpdf;
+
+import com.orsonpdf.util.Args;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Represents a stencil mask image in a PDF document: one bit per pixel, 
+ * where a set bit masks out the pixel in the image that refers to the 
+ * stencil mask via its {@code /Mask} entry.  This is used instead of a 
+ * {@link PDFSoftMaskImage} for images that have only fully transparent and
+ * fully opaque pixels.
+ */
+class PDFStencilMaskImage extends Stream {
+
+    /** The width. */
+    int width;
+    
+    /** The height. */
+    int height;
+
+    /** The pixel reader (shared with the image). */
+    private final ImageRaster raster;
+    
+    /**
+     * Creates a new stencil mask image object.
+     * 
+     * @param number  the PDF object number.
+     * @param raster  the pixel reader ({@code null} not permitted).
+     */
+    PDFStencilMaskImage(int number, ImageRaster raster) {
+        super(number);
+        Args.nullNotPermitted(raster, "raster");
+        this.width = raster.getWidth();
+        this.height = raster.getHeight();
+        this.raster = raster;
+        raster.require(ImageRaster.STENCIL);
+    }
+
+    /**
+     * Returns the raw image data.  Each call will resample the image data
+     * and populate a new array.  Note that the stream may encode this
+     * data before it is written to the PDF output.
+     * 
+     * @return The raw stream data. 
+     */
+    @Override
+    public byte[] getRawStreamData() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(
+                (this.width + 7) / 8 * this.height);
+        try {
+            this.raster.write(baos, ImageRaster.STENCIL);
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return baos.toByteArray();
+    }
+    
+    /**
+     * Writes the raw image data to the output stream one row at a time, so
+     * that the complete data is never held in memory.
+     * 
+     * @param out  the output stream ({@code null} not permitted).
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    @Override
+    protected void writeRawStreamData(OutputStream out) throws IOException {
+        this.raster.write(out, ImageRaster.STENCIL);
+    }
+    
+    /**
+     * Creates a dictionary reflecting the current configuration for this
+     * image.
+     * 
+     * @param streamLength  the stream length.
+     * 
+     * @return A dictionary. 
+     */
+    @Override
+    protected Dictionary createDictionary(int streamLength) {
+        Dictionary dictionary = super.createDictionary(streamLength);
+        dictionary.setType("/XObject");
+        dictionary.put("/Subtype", "/Image");
+        dictionary.put("/ImageMask", "true");
+        dictionary.put("/Width", this.width);
+        dictionary.put("/Height", this.height);
+        return dictionary;
+    }
+}
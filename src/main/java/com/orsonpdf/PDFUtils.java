@@ -32,6 +32,7 @@
 package com.orsonpdf;
 
 import com.orsonpdf.util.Args;
+import com.orsonpdf.util.NumberFormatter;
 import java.awt.geom.AffineTransform;
 import java.nio.charset.StandardCharsets;
 import java.text.DateFormat;
@@ -68,7 +69,9 @@ public class PDFUtils {
     }
     
     /**
-     * A utility method to convert a float[] to a PDF array string.
+     * A utility method to convert a float[] to a PDF array string.  The 
+     * values are rounded to {@link NumberFormatter#DEFAULT_DECIMALS} decimal
+     * places.
      * 
      * @param f  the array ({@code null} not permitted).
      * 
@@ -81,13 +84,15 @@ public class PDFUtils {
             if (i != 0) {
                 b.append(" ");
             }
-            b.append(f[i]);
+            NumberFormatter.format(f[i], NumberFormatter.DEFAULT_DECIMALS, b);
         }
         return b.append("]").toString();
     }
     
     /**
-     * A utility method to convert a double[] to a PDF array string.
+     * A utility method to convert a double[] to a PDF array string.  The 
+     * values are rounded to {@link NumberFormatter#DEFAULT_DECIMALS} decimal
+     * places.
      * 
      * @param d  the array ({@code null} not permitted).
      * 
@@ -100,7 +105,7 @@ public class PDFUtils {
             if (i != 0) {
                 b.append(" ");
             }
-            b.append(d[i]);
+            NumberFormatter.format(d[i], NumberFormatter.DEFAULT_DECIMALS, b);
         }
         return b.append("]").toString();
     }
@@ -114,13 +119,14 @@ public class PDFUtils {
      */
     public static String transformToPDF(AffineTransform t) {
         Args.nullNotPermitted(t, "t");
+        int dp = NumberFormatter.DEFAULT_DECIMALS;
         StringBuilder b = new StringBuilder("[");
-        b.append(t.getScaleX()).append(" ");
-        b.append(t.getShearY()).append(" ");
-        b.append(t.getShearX()).append(" ");
-        b.append(t.getScaleY()).append(" ");
-        b.append(t.getTranslateX()).append(" ");
-        b.append(t.getTranslateY());
+        NumberFormatter.format(t.getScaleX(), dp, b).append(" ");
+        NumberFormatter.format(t.getShearY(), dp, b).append(" ");
+        NumberFormatter.format(t.getShearX(), dp, b).append(" ");
+        NumberFormatter.format(t.getScaleY(), dp, b).append(" ");
+        NumberFormatter.format(t.getTranslateX(), dp, b).append(" ");
+        NumberFormatter.format(t.getTranslateY(), dp, b);
         return b.append("]").toString();
     }
 
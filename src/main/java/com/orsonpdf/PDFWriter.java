@@ -0,0 +1,501 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+package com.orsonpdf;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import com.orsonpdf.util.Args;
+
+/**
+ * Writes PDF objects to an output stream, keeping track of the byte offset
+ * of each object so that the cross-reference table can be written at the
+ * end.  The same writer is used both when the complete document is encoded
+ * in memory (see {@link PDFDocument#getPDFBytes()}) and when pages are
+ * streamed to an {@code OutputStream} as they are finished.
+ * <p>
+ * When the document is written with a compressed structure (see 
+ * {@link PDFDocument#setCompressedStructure(boolean)}), objects that are not
+ * streams are collected into {@link ObjectStream}s and the cross-reference 
+ * table is written as a {@link CrossReferenceStream}.
+ */
+final class PDFWriter {
+
+    /** The maximum number of objects in one object stream. */
+    private static final int OBJECTS_PER_STREAM = 100;
+
+    /** The document being written. */
+    private final PDFDocument document;
+
+    /** The output target (counts the bytes written). */
+    private final CountingOutputStream out;
+
+    /**
+     * The byte offsets of the objects written so far, indexed by object
+     * number ({@code -1} for objects that have not been written).
+     */
+    private long[] offsets;
+
+    /**
+     * The object stream numbers for the objects written to object streams,
+     * indexed by object number ({@code 0} for objects that are not in an
+     * object stream).  For these objects, the {@code offsets} array holds 
+     * the index within the object stream.
+     */
+    private int[] containers;
+    
+    /** The object stream currently being filled (can be {@code null}). */
+    private ObjectStream objectStream;
+    
+    /** A flag that records whether or not the header has been written. */
+    private boolean headerWritten;
+    
+    /** 
+     * A flag that records whether or not the structure is compressed (this
+     * is fixed when the header is written).
+     */
+    private boolean compressed;
+
+    /**
+     * Creates a new writer.
+     *
+     * @param document  the document ({@code null} not permitted).
+     * @param out  the output stream ({@code null} not permitted).
+     */
+    PDFWriter(PDFDocument document, OutputStream out) {
+        Args.nullNotPermitted(document, "document");
+        Args.nullNotPermitted(out, "out");
+        this.document = document;
+        this.out = new CountingOutputStream(out);
+        this.offsets = new long[64];
+        Arrays.fill(this.offsets, -1L);
+        this.containers = new int[64];
+    }
+
+    /**
+     * Returns the number of bytes written so far.
+     *
+     * @return The number of bytes written so far.
+     */
+    long getPosition() {
+        return this.out.count;
+    }
+
+    /**
+     * Writes the PDF header, if it has not already been written.
+     *
+     * @throws IOException if there is an I/O problem.
+     */
+    void writeHeader() throws IOException {
+        if (this.headerWritten) {
+            return;
+        }
+        this.compressed = this.document.isCompressedStructure();
+        this.out.write(PDFUtils.toBytes(this.compressed ? "%PDF-1.5\n" 
+                : "%PDF-1.4\n"));
+        this.out.write(new byte[] { (byte) 37, (byte) 128, (byte) 129,
+                (byte) 130, (byte) 131, (byte) 10});
+        this.headerWritten = true;
+    }
+
+    /**
+     * Writes an object to the output, recording its offset for the
+     * cross-reference table.  If the document is configured to use indirect
+     * stream lengths, {@link Stream} objects are encoded directly to the
+     * output and their length is written as a separate object that follows
+     * the stream.  If the structure is compressed, objects that are not 
+     * streams are added to the current object stream instead.
+     *
+     * @param object  the object ({@code null} not permitted).
+     *
+     * @throws IOException if there is an I/O problem.
+     */
+    void writeObject(PDFObject object) throws IOException {
+        Args.nullNotPermitted(object, "object");
+        writeHeader();
+        if (object instanceof Stream 
+                && this.document.isIndirectStreamLength()) {
+            writeStream((Stream) object, null, true);
+            return;
+        }
+        if (this.compressed && !(object instanceof Stream) 
+                && object.getGeneration() == 0) {
+            addToObjectStream(object.getNumber(), object.getObjectBytes());
+            return;
+        }
+        recordOffset(object.getNumber());
+        this.out.write(object.toPDFBytes());
+    }
+    
+    /**
+     * Writes a list of objects to the output, in order.  If the document has
+     * a compression executor (see 
+     * {@link PDFDocument#setCompressionExecutor(Executor)}), the data for 
+     * the {@link Stream} objects in the list is encoded as separate tasks 
+     * on the executor, with at most twice the parallelism of the executor
+     * in flight (the next task is submitted as each result is written).  
+     * The objects are written in the same order as for the serial case, so
+     * the output is identical.  Each stream is encoded to memory in this 
+     * case, including streams that would otherwise be encoded directly to 
+     * the output with an indirect length.
+     * 
+     * @param objects  the objects ({@code null} not permitted).
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    void writeObjects(List<? extends PDFObject> objects) throws IOException {
+        Args.nullNotPermitted(objects, "objects");
+        Executor executor = this.document.getCompressionExecutor();
+        if (executor == null) {
+            for (PDFObject object : objects) {
+                writeObject(object);
+            }
+            return;
+        }
+        int window = 2 * parallelism(executor);
+        ArrayDeque<CompletableFuture<byte[]>> pending 
+                = new ArrayDeque<CompletableFuture<byte[]>>(window);
+        int next = 0;
+        for (PDFObject object : objects) {
+            while (next < objects.size() && pending.size() < window) {
+                PDFObject o = objects.get(next++);
+                if (o instanceof Stream) {
+                    pending.add(encode((Stream) o, executor));
+                }
+            }
+            if (object instanceof Stream) {
+                writeHeader();
+                writeStream((Stream) object, join(pending.poll()), true);
+            } else {
+                writeObject(object);
+            }
+        }
+    }
+    
+    /**
+     * Returns the number of tasks that the executor runs at the same time 
+     * (the parallelism of a {@code ForkJoinPool}, otherwise the number of 
+     * available processors).
+     * 
+     * @param executor  the executor.
+     * 
+     * @return The parallelism (at least 1).
+     */
+    private static int parallelism(Executor executor) {
+        int parallelism = executor instanceof ForkJoinPool 
+                ? ((ForkJoinPool) executor).getParallelism() 
+                : Runtime.getRuntime().availableProcessors();
+        return Math.max(parallelism, 1);
+    }
+    
+    /**
+     * Submits a task to the executor that encodes the data for a stream.
+     * 
+     * @param stream  the stream.
+     * @param executor  the executor.
+     * 
+     * @return The task result.
+     */
+    private static CompletableFuture<byte[]> encode(Stream stream, 
+            Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return stream.getEncodedStreamData();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+    
+    /**
+     * Waits for the result of an encoding task, rethrowing any exception 
+     * that occurred while the task was running.
+     * 
+     * @param future  the task result.
+     * 
+     * @return The encoded data.
+     * 
+     * @throws IOException if the encoding failed with an I/O problem.
+     */
+    private static byte[] join(CompletableFuture<byte[]> future) 
+            throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Adds the bytes for an object to the current object stream, writing 
+     * the object stream when it is full.
+     * 
+     * @param number  the object number.
+     * @param bytes  the bytes that go between the 'obj' and 'endobj' for
+     *     the object.
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    private void addToObjectStream(int number, byte[] bytes) 
+            throws IOException {
+        if (this.objectStream == null) {
+            this.objectStream = new ObjectStream(
+                    this.document.getNextNumber());
+        }
+        int index = this.objectStream.add(number, bytes);
+        recordOffset(number);
+        this.offsets[number] = index;
+        this.containers[number] = this.objectStream.getNumber();
+        if (this.objectStream.getCount() >= OBJECTS_PER_STREAM) {
+            writeObjectStream();
+        }
+    }
+    
+    /**
+     * Writes the current object stream (if there is one).  Object streams 
+     * always have a direct length, since the length object would otherwise
+     * need to go in another object stream.
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    private void writeObjectStream() throws IOException {
+        if (this.objectStream == null) {
+            return;
+        }
+        writeStream(this.objectStream, 
+                this.objectStream.getEncodedStreamData(), false);
+        this.objectStream = null;
+    }
+
+    /**
+     * Writes a stream object.  If the document uses indirect stream lengths,
+     * the length object is written immediately after the stream.
+     * 
+     * @param stream  the stream.
+     * @param data  the encoded stream data, or {@code null} to encode the
+     *     data directly to the output (permitted for indirect stream lengths
+     *     only).
+     * @param indirectLength  permit an indirect stream length (if the 
+     *     document is configured to use them)?
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    private void writeStream(Stream stream, byte[] data, 
+            boolean indirectLength) throws IOException {
+        recordOffset(stream.getNumber());
+        this.out.write(PDFUtils.toBytes(stream.getNumber() + " " 
+                + stream.getGeneration() + " obj\n"));
+        if (!indirectLength || !this.document.isIndirectStreamLength()) {
+            this.out.write(stream.createDictionary(data.length).toPDFBytes());
+            this.out.write(PDFUtils.toBytes("stream\n"));
+            this.out.write(data);
+            this.out.write(PDFUtils.toBytes("endstream\nendobj\n"));
+            return;
+        }
+        if (stream.getLengthNumber() == 0) {
+            stream.setLengthNumber(this.document.getNextNumber());
+        }
+        int lengthNumber = stream.getLengthNumber();
+        Dictionary dictionary = stream.createDictionary(0);
+        dictionary.put("/Length", lengthNumber + " 0 R");
+        this.out.write(dictionary.toPDFBytes());
+        this.out.write(PDFUtils.toBytes("stream\n"));
+        long start = this.out.count;
+        if (data != null) {
+            this.out.write(data);
+        } else {
+            stream.writeEncodedStreamData(this.out);
+        }
+        long length = this.out.count - start;
+        this.out.write(PDFUtils.toBytes("endstream\nendobj\n"));
+        if (this.compressed) {
+            addToObjectStream(lengthNumber, PDFUtils.toBytes(
+                    String.valueOf(length)));
+            return;
+        }
+        recordOffset(lengthNumber);
+        this.out.write(PDFUtils.toBytes(lengthNumber + " 0 obj\n" + length 
+                + "\nendobj\n"));
+    }
+
+    private void recordOffset(int number) {
+        if (number >= this.offsets.length) {
+            int oldLength = this.offsets.length;
+            int newLength = Math.max(number + 1, oldLength * 2);
+            this.offsets = Arrays.copyOf(this.offsets, newLength);
+            Arrays.fill(this.offsets, oldLength, newLength, -1L);
+            this.containers = Arrays.copyOf(this.containers, newLength);
+        }
+        this.offsets[number] = this.out.count;
+    }
+
+    /**
+     * Writes the cross-reference table and the trailer, then flushes the
+     * output.  Objects that have been allocated a number but were never
+     * written are recorded as free entries.  If the structure is compressed,
+     * the last object stream is written first, followed by a 
+     * cross-reference stream.
+     *
+     * @param root  the document catalog ({@code null} not permitted).
+     * @param info  the document info ({@code null} not permitted).
+     *
+     * @throws IOException if there is an I/O problem.
+     */
+    void writeTrailer(PDFObject root, PDFObject info) throws IOException {
+        writeHeader();
+        if (this.compressed) {
+            writeCrossReferenceStream(root, info);
+            return;
+        }
+        int size = this.document.getCrossReferenceSize();
+        long xrefOffset = this.out.count;
+        this.out.write(PDFUtils.toBytes("xref\n"));
+        this.out.write(PDFUtils.toBytes("0 " + size + "\n"));
+        this.out.write(PDFUtils.toBytes("0000000000 65535 f \n"));
+        for (int i = 1; i < size; i++) {
+            long offset = i < this.offsets.length ? this.offsets[i] : -1L;
+            if (offset < 0) {
+                this.out.write(PDFUtils.toBytes("0000000000 65535 f \n"));
+            } else {
+                String s = String.valueOf(offset);
+                String offset10 = "0000000000".substring(s.length()) + s;
+                this.out.write(PDFUtils.toBytes(offset10 + " 00000 n \n"));
+            }
+        }
+        this.out.write(PDFUtils.toBytes("trailer\n"));
+        Dictionary trailer = new Dictionary();
+        trailer.put("/Size", size);
+        trailer.put("/Root", root);
+        trailer.put("/Info", info);
+        this.out.write(trailer.toPDFBytes());
+        this.out.write(PDFUtils.toBytes("startxref\n"));
+        this.out.write(PDFUtils.toBytes(xrefOffset + "\n"));
+        this.out.write(PDFUtils.toBytes("%%EOF"));
+        this.out.flush();
+    }
+
+    /**
+     * Writes the final object stream (if any) then a cross-reference stream 
+     * (which also serves as the trailer).
+     * 
+     * @param root  the document catalog.
+     * @param info  the document info.
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    private void writeCrossReferenceStream(PDFObject root, PDFObject info) 
+            throws IOException {
+        writeObjectStream();
+        int number = this.document.getNextNumber();
+        recordOffset(number);
+        long xrefOffset = this.out.count;
+        int size = number + 1;
+        CrossReferenceStream xref = new CrossReferenceStream(number, size, 
+                root, info);
+        for (int i = 1; i < size; i++) {
+            if (this.containers[i] != 0) {
+                xref.setEntry(i, CrossReferenceStream.COMPRESSED, 
+                        this.containers[i], (int) this.offsets[i]);
+            } else if (this.offsets[i] >= 0) {
+                xref.setEntry(i, CrossReferenceStream.IN_USE, 
+                        this.offsets[i], 0);
+            }
+        }
+        writeStream(xref, xref.getEncodedStreamData(), false);
+        this.out.write(PDFUtils.toBytes("startxref\n"));
+        this.out.write(PDFUtils.toBytes(xrefOffset + "\n"));
+        this.out.write(PDFUtils.toBytes("%%EOF"));
+        this.out.flush();
+    }
+
+    /**
+     * Flushes the underlying output stream.
+     *
+     * @throws IOException if there is an I/O problem.
+     */
+    void flush() throws IOException {
+        this.out.flush();
+    }
+
+    /**
+     * Closes the underlying output stream.
+     *
+     * @throws IOException if there is an I/O problem.
+     */
+    void close() throws IOException {
+        this.out.close();
+    }
+
+    /**
+     * An output stream that counts the bytes that pass through it.
+     */
+    private static final class CountingOutputStream
+            extends FilterOutputStream {
+
+        /** The number of bytes written so far. */
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+            this.count += len;
+        }
+    }
+}
@@ -34,7 +34,6 @@ package com.orsonpdf;
 import java.awt.Font;
 import java.awt.GradientPaint;
 import java.awt.Image;
-import java.awt.MultipleGradientPaint;
 import java.awt.RadialGradientPaint;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Rectangle2D;
@@ -42,11 +41,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import com.orsonpdf.Pattern.ShadingPattern;
-import com.orsonpdf.filter.FlateFilter;
-import com.orsonpdf.shading.AxialShading;
-import com.orsonpdf.shading.RadialShading;
-import com.orsonpdf.shading.Shading;
 import com.orsonpdf.util.Args;
 import com.orsonpdf.util.GradientPaintKey;
 import com.orsonpdf.util.RadialGradientPaintKey;
@@ -97,6 +91,24 @@ public class Page extends PDFObject {
     private AffineTransform j2DTransform;
 
     private Dictionary xObjects = new Dictionary();
+    
+    /** The names of the images on the page, keyed by object reference. */
+    private Map<String, String> imagesOnPage = new HashMap<String, String>();
+    
+    /** The number of form XObjects added to the page. */
+    private int formCount;
+    
+    /** 
+     * A flag that records whether the page has been finished (written to the
+     * output in streaming mode).
+     */
+    private boolean finished;
+
+    /** 
+     * A flag that controls whether or not streams for the page (the content
+     * and any form XObjects) have a FlateFilter applied.
+     */
+    private final boolean filter;
 
     /**
      * Creates a new page.
@@ -132,8 +144,10 @@ public class Page extends PDFObject {
         this.fontsOnPage = new ArrayList<String>();
         int n = this.parent.getDocument().getNextNumber();
         this.contents = new GraphicsStream(n, this);
+        this.filter = filter;
         if (filter) {
-            this.contents.addFilter(new FlateFilter());
+            this.contents.addFilter(
+                    this.parent.getDocument().getContentFlateFilter());
         }
         this.gradientPaintsOnPage = new HashMap<GradientPaintKey, String>();
         this.radialGradientPaintsOnPage = new HashMap<RadialGradientPaintKey,
@@ -166,12 +180,26 @@ public class Page extends PDFObject {
         return this.contents;
     }
     
+    /**
+     * Returns the statistics for the content drawn to the page so far.
+     * 
+     * @return The statistics (never {@code null}).
+     * 
+     * @since 2.0
+     */
+    public PageStatistics getStatistics() {
+        return this.contents.getStatistics();
+    }
+    
     /**
      * Returns the {@link PDFGraphics2D} instance for drawing to the page.
      * 
      * @return The {@code PDFGraphics2D} instance for drawing to the page.
      */
     public PDFGraphics2D getGraphics2D() {
+        if (this.finished) {
+            throw new IllegalStateException("The page is finished.");
+        }
         if (this.graphics2d == null) {
             this.graphics2d = new PDFGraphics2D(this.contents, 
                     (int) this.bounds.getWidth(), 
@@ -180,6 +208,50 @@ public class Page extends PDFObject {
         return this.graphics2d;
     }
 
+    /**
+     * Finishes the page.  When the document is in streaming mode (see 
+     * {@link PDFDocument#PDFDocument(java.io.OutputStream)}) this writes the 
+     * page, its content and the resources it uses to the output and releases
+     * the page content, after which no further drawing to the page is 
+     * possible.  Otherwise this method does nothing.  Calling this method 
+     * more than once has no additional effect.
+     * 
+     * @since 2.0
+     */
+    public void finish() {
+        this.parent.getDocument().finishPage(this);
+    }
+    
+    /**
+     * Returns {@code true} if the page has been finished and written to the
+     * output (this only happens in streaming mode), and {@code false} 
+     * otherwise.
+     * 
+     * @return A boolean.
+     * 
+     * @since 2.0
+     */
+    public boolean isFinished() {
+        return this.finished;
+    }
+    
+    /**
+     * Releases the page content and resources once the page has been written
+     * to the output.
+     */
+    void release() {
+        this.finished = true;
+        this.contents.release();
+        this.graphics2d = null;
+        this.xObjects = new Dictionary();
+        this.imagesOnPage.clear();
+        this.patterns = new Dictionary();
+        this.graphicsStates = new Dictionary();
+        this.gradientPaintsOnPage.clear();
+        this.radialGradientPaintsOnPage.clear();
+        this.alphaDictionaries.clear();
+    }
+
     /**
      * Finds the font reference corresponding to the given Java2D font, 
      * creating a new one if there isn't one already.
@@ -218,22 +290,8 @@ public class Page extends PDFObject {
         GradientPaintKey key = new GradientPaintKey(gp);
         String patternName = this.gradientPaintsOnPage.get(key);
         if (patternName == null) {
-            PDFDocument doc = this.parent.getDocument();
-            Function f = new ExponentialInterpolationFunction(
-                    doc.getNextNumber(), 
-                    gp.getColor1().getRGBColorComponents(null), 
-                    gp.getColor2().getRGBColorComponents(null));
-            doc.addObject(f);
-            double[] coords = new double[4];
-            coords[0] = gp.getPoint1().getX();
-            coords[1] = gp.getPoint1().getY();
-            coords[2] = gp.getPoint2().getX();
-            coords[3] = gp.getPoint2().getY();
-            Shading s = new AxialShading(doc.getNextNumber(), coords, f);
-            doc.addObject(s);
-            Pattern p = new ShadingPattern(doc.getNextNumber(), s, 
-                    this.j2DTransform);
-            doc.addObject(p);
+            Pattern p = getDocument().getSharedResources().findOrCreatePattern(
+                    gp, this.j2DTransform);
             patternName = "/P" + (this.patterns.size() + 1);
             this.patterns.put(patternName, p);
             this.gradientPaintsOnPage.put(key, patternName);
@@ -254,21 +312,8 @@ public class Page extends PDFObject {
         RadialGradientPaintKey key = new RadialGradientPaintKey(gp);
         String patternName = this.radialGradientPaintsOnPage.get(key);
         if (patternName == null) {
-            PDFDocument doc = this.parent.getDocument();
-            Function f = createFunctionForMultipleGradient(gp);
-            doc.addObject(f);
-            double[] coords = new double[6];
-            coords[0] = gp.getFocusPoint().getX();
-            coords[1] = gp.getFocusPoint().getY();
-            coords[2] = 0.0;
-            coords[3] = gp.getCenterPoint().getX();
-            coords[4] = gp.getCenterPoint().getY();
-            coords[5] = gp.getRadius();
-            Shading s = new RadialShading(doc.getNextNumber(), coords, f);
-            doc.addObject(s);
-            Pattern p = new ShadingPattern(doc.getNextNumber(), s, 
-                    this.j2DTransform);
-            doc.addObject(p);
+            Pattern p = getDocument().getSharedResources().findOrCreatePattern(
+                    gp, this.j2DTransform);
             patternName = "/P" + (this.patterns.size() + 1);
             this.patterns.put(patternName, p);
             this.radialGradientPaintsOnPage.put(key, patternName);
@@ -276,38 +321,6 @@ public class Page extends PDFObject {
         return patternName; 
     }
     
-    private Function createFunctionForMultipleGradient(
-            MultipleGradientPaint mgp) {
-        PDFDocument doc = this.parent.getDocument();
-
-        if (mgp.getColors().length == 2) {
-            return new ExponentialInterpolationFunction(
-                    doc.getNextNumber(),
-                    mgp.getColors()[0].getRGBColorComponents(null),
-                    mgp.getColors()[1].getRGBColorComponents(null));
-        } else {
-            int count = mgp.getColors().length - 1;
-            Function[] functions = new Function[count];
-            float[] fbounds = new float[count - 1];
-            float[] encode = new float[count * 2];
-            for (int i = 0; i < count; i++) {
-                // create a linear function for each pair of colors
-                functions[i] = new ExponentialInterpolationFunction(
-                    doc.getNextNumber(),
-                    mgp.getColors()[i].getRGBColorComponents(null), 
-                    mgp.getColors()[i + 1].getRGBColorComponents(null));
-                doc.addObject(functions[i]);
-                if (i < count - 1) {
-                    fbounds[i] = mgp.getFractions()[i + 1];
-                }
-                encode[i * 2] = 0;
-                encode[i * 2 + 1] = 1;
-            }
-            return new StitchingFunction(doc.getNextNumber(), functions, 
-                    fbounds, encode);
-        }
-    }
-    
     private Map<Integer, String> alphaDictionaries 
             = new HashMap<Integer, String>();
     
@@ -322,15 +335,10 @@ public class Page extends PDFObject {
      */
     String findOrCreateGSDictionary(int alpha) {
         Integer key = alpha;
-        float alphaValue = alpha / 255f;
         String name = this.alphaDictionaries.get(key);
         if (name == null) {
-            PDFDocument pdfDoc = this.parent.getDocument();
-            GraphicsStateDictionary gsd = new GraphicsStateDictionary(
-                    pdfDoc.getNextNumber());
-            gsd.setNonStrokeAlpha(alphaValue);
-            gsd.setStrokeAlpha(alphaValue);
-            pdfDoc.addObject(gsd);
+            GraphicsStateDictionary gsd = getDocument().getSharedResources()
+                    .findOrCreateAlphaState(alpha);
             name = "/GS" + (this.graphicsStates.size() + 1);
             this.graphicsStates.put(name, gsd);
             this.alphaDictionaries.put(key, name);
@@ -339,52 +347,101 @@ public class Page extends PDFObject {
     }
 
     /**
-     * Adds a soft mask image to the page.  This is called from the 
-     * {@link #addImage(java.awt.Image, boolean)} method to support image transparency.
+     * Adds an image to the page.  The image XObject is shared with any 
+     * other page that uses the same image (see 
+     * {@link SharedResources#findOrCreateImage(java.awt.Image, boolean)}), 
+     * and this method adds a reference to it in the {@code xObjects} 
+     * resources for the page.  You should not call this method directly, 
+     * it exists for the use of the
+     * {@link PDFGraphics2D#drawImage(java.awt.Image, int, int, int, int, java.awt.image.ImageObserver)} 
+     * method.
      * 
      * @param img  the image ({@code null} not permitted).
+     * @param addSoftMaskImage  include a soft mask for the image 
+     *     transparency?
+     * @param encoding  the image encoding (a value for the 
+     *     {@link PDFHints#KEY_IMAGE_ENCODING} hint, {@code null} permitted).
+     * @param quality  the quality for JPEG encoding.
      * 
-     * @return The soft mask image reference.
+     * @return The image reference name.
      */
-    String addSoftMaskImage(Image img) {
+    String addImage(Image img, boolean addSoftMaskImage, Object encoding, 
+            float quality) {
         Args.nullNotPermitted(img, "img");
-        PDFDocument pdfDoc = this.parent.getDocument();
-        PDFSoftMaskImage softMaskImage = new PDFSoftMaskImage(
-                pdfDoc.getNextNumber(), img);
-        softMaskImage.addFilter(new FlateFilter());
-        pdfDoc.addObject(softMaskImage);
-        String reference = "/Image" + this.xObjects.size();
-        this.xObjects.put(reference, softMaskImage);
-        return softMaskImage.getReference();
+        String objectRef = getDocument().getSharedResources()
+                .findOrCreateImage(img, addSoftMaskImage, encoding, quality);
+        return addImageReference(objectRef);
     }
     
     /**
-     * Adds an image to the page.  This creates the required PDF object, 
-     * as well as adding a reference in the {@code xObjects} resources.
-     * You should not call this method directly, it exists for the use of the
-     * {@link PDFGraphics2D#drawImage(java.awt.Image, int, int, int, int, java.awt.image.ImageObserver)} 
-     * method.
+     * Adds an image whose encoded data is copied to the document without
+     * decoding it.  The image XObject is shared with any other page that 
+     * draws the same {@link EncodedImage} instance.
      * 
-     * @param img  the image ({@code null} not permitted).
+     * @param img  the image ({@code null} not permitted, and 
+     *     {@link EncodedImage#isPassThrough()} must be {@code true}).
      * 
      * @return The image reference name.
      */
-    String addImage(Image img, boolean addSoftMaskImage) {
+    String addEncodedImage(EncodedImage img) {
         Args.nullNotPermitted(img, "img");
+        return addImageReference(getDocument().getSharedResources()
+                .findOrCreateEncodedImage(img));
+    }
+    
+    /**
+     * Returns the name for an image XObject in the resources for this page,
+     * adding it to the {@code xObjects} resources if necessary.
+     * 
+     * @param objectRef  the PDF object reference for the image.
+     * 
+     * @return The image reference name.
+     */
+    private String addImageReference(String objectRef) {
+        String reference = this.imagesOnPage.get(objectRef);
+        if (reference == null) {
+            reference = "/Image" + this.xObjects.size();
+            this.xObjects.put(reference, objectRef);
+            this.imagesOnPage.put(objectRef, reference);
+        }
+        return reference;
+    }
+    
+    /**
+     * Adds a form XObject to the page.  This creates the required PDF 
+     * object, as well as adding a reference in the {@code xObjects} 
+     * resources.  The form is compressed only if the page content is 
+     * compressed (that is, not in debug mode).
+     * 
+     * @param content  the form content ({@code null} not permitted).
+     * @param bbox  the bounding box in form space ({@code null} not 
+     *     permitted).
+     * 
+     * @return The form reference name.
+     */
+    String addForm(byte[] content, Rectangle2D bbox) {
         PDFDocument pdfDoc = this.parent.getDocument();
-        String softMaskImageRef = null;
-        if (addSoftMaskImage) {
-            softMaskImageRef = addSoftMaskImage(img);
+        FormXObject form = new FormXObject(pdfDoc.getNextNumber(), content, 
+                bbox);
+        if (this.filter) {
+            form.addFilter(pdfDoc.getContentFlateFilter());
         }
-        PDFImage image = new PDFImage(pdfDoc.getNextNumber(), img, 
-                softMaskImageRef);
-        image.addFilter(new FlateFilter());
-        pdfDoc.addObject(image);
-        String reference = "/Image" + this.xObjects.size();
-        this.xObjects.put(reference, image);
+        pdfDoc.addObject(form);
+        this.formCount++;
+        String reference = "/Fm" + this.formCount;
+        this.xObjects.put(reference, form);
         return reference;
     }
     
+    /**
+     * Returns the document that the page belongs to.
+     * 
+     * @return The document.
+     */
+    PDFDocument getDocument() {
+        return this.parent.getDocument();
+    }
+
     @Override
     public byte[] getObjectBytes() {
         return createDictionary().toPDFBytes();
@@ -0,0 +1,192 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+package com.orsonpdf;
+
+/**
+ * Statistics for the content of a {@link Page}, see 
+ * {@link Page#getStatistics()}.
+ * 
+ * @since 2.0
+ */
+public final class PageStatistics {
+
+    /** The number of line segments passed to path simplification. */
+    private long simplifiedSegmentCount;
+    
+    /** The number of line segments dropped by path simplification. */
+    private long droppedSegmentCount;
+    
+    /** The number of shape operations skipped as not visible. */
+    private long culledShapeCount;
+    
+    /** The number of string operations skipped as not visible. */
+    private long culledStringCount;
+    
+    /** The number of image operations skipped as not visible. */
+    private long culledImageCount;
+    
+    /** The number of shapes drawn by reference to a form XObject. */
+    private long reusedShapeCount;
+
+    /**
+     * Creates a new instance with all counts zero.
+     */
+    PageStatistics() {
+    }
+    
+    /**
+     * Returns the number of line segments that were passed to path 
+     * simplification (see {@link PDFHints#KEY_PATH_SIMPLIFICATION}).
+     * 
+     * @return The number of line segments.
+     */
+    public long getSimplifiedSegmentCount() {
+        return this.simplifiedSegmentCount;
+    }
+    
+    /**
+     * Returns the number of line segments that were dropped by path 
+     * simplification (see {@link PDFHints#KEY_PATH_SIMPLIFICATION}).
+     * 
+     * @return The number of line segments.
+     */
+    public long getDroppedSegmentCount() {
+        return this.droppedSegmentCount;
+    }
+    
+    /**
+     * Returns the number of shape drawing (or filling) operations that were
+     * skipped because the shape is completely outside the page bounds or 
+     * the clip.
+     * 
+     * @return The number of operations.
+     */
+    public long getCulledShapeCount() {
+        return this.culledShapeCount;
+    }
+    
+    /**
+     * Returns the number of string drawing operations that were skipped 
+     * because the string is completely outside the page bounds or the clip.
+     * 
+     * @return The number of operations.
+     */
+    public long getCulledStringCount() {
+        return this.culledStringCount;
+    }
+    
+    /**
+     * Returns the number of image drawing operations that were skipped 
+     * because the image is completely outside the page bounds or the clip.
+     * 
+     * @return The number of operations.
+     */
+    public long getCulledImageCount() {
+        return this.culledImageCount;
+    }
+    
+    /**
+     * Returns the number of shapes that were drawn (or filled) by reference
+     * to a form XObject (see {@link PDFHints#KEY_SHAPE_REUSE}).
+     * 
+     * @return The number of shapes.
+     */
+    public long getReusedShapeCount() {
+        return this.reusedShapeCount;
+    }
+    
+    /**
+     * Records a shape operation that was skipped as not visible.
+     */
+    void incrementCulledShapeCount() {
+        this.culledShapeCount++;
+    }
+    
+    /**
+     * Records items in a bulk shape operation that were skipped as not 
+     * visible.
+     * 
+     * @param count  the number of items.
+     */
+    void addCulledShapes(int count) {
+        this.culledShapeCount += count;
+    }
+    
+    /**
+     * Records a string operation that was skipped as not visible.
+     */
+    void incrementCulledStringCount() {
+        this.culledStringCount++;
+    }
+    
+    /**
+     * Records an image operation that was skipped as not visible.
+     */
+    void incrementCulledImageCount() {
+        this.culledImageCount++;
+    }
+    
+    /**
+     * Records a shape that was drawn by reference to a form XObject.
+     */
+    void incrementReusedShapeCount() {
+        this.reusedShapeCount++;
+    }
+    
+    /**
+     * Records the result of simplifying a run of line segments.
+     * 
+     * @param segments  the number of line segments in the run.
+     * @param dropped  the number of line segments dropped.
+     */
+    void addSimplifiedSegments(int segments, int dropped) {
+        this.simplifiedSegmentCount += segments;
+        this.droppedSegmentCount += dropped;
+    }
+
+    /**
+     * Returns a string representation of the statistics, for debugging.
+     * 
+     * @return A string.
+     */
+    @Override
+    public String toString() {
+        return "PageStatistics[simplifiedSegments=" 
+                + this.simplifiedSegmentCount + ", droppedSegments=" 
+                + this.droppedSegmentCount + ", culledShapes=" 
+                + this.culledShapeCount + ", culledStrings=" 
+                + this.culledStringCount + ", culledImages=" 
+                + this.culledImageCount + ", reusedShapes=" 
+                + this.reusedShapeCount + "]";
+    }
+
+}
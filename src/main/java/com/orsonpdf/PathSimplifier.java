@@ -0,0 +1,217 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+package com.orsonpdf;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.util.Arrays;
+
+/**
+ * Simplifies runs of connected line segments using the Ramer-Douglas-Peucker
+ * algorithm, so that no dropped point is further than a given tolerance 
+ * (measured in device space) from the simplified line.  The buffers are 
+ * reused from one run to the next.
+ */
+final class PathSimplifier {
+
+    /** The x-coordinates of the points in the run (user space). */
+    private double[] x;
+    
+    /** The y-coordinates of the points in the run (user space). */
+    private double[] y;
+    
+    /** The x-coordinates of the points in the run (device space). */
+    private double[] dx;
+    
+    /** The y-coordinates of the points in the run (device space). */
+    private double[] dy;
+    
+    /** Flags for the points that are kept after simplification. */
+    private boolean[] keep;
+    
+    /** The stack of index ranges still to be processed. */
+    private int[] stack;
+    
+    /** The number of points in the run. */
+    private int count;
+
+    /**
+     * Creates a new instance.
+     */
+    PathSimplifier() {
+        this.x = new double[64];
+        this.y = new double[64];
+        this.count = 0;
+    }
+    
+    /**
+     * Removes all points from the current run.
+     */
+    void clear() {
+        this.count = 0;
+    }
+    
+    /**
+     * Starts a new run at the specified point.
+     * 
+     * @param x  the x-coordinate.
+     * @param y  the y-coordinate.
+     */
+    void start(double x, double y) {
+        this.count = 0;
+        add(x, y);
+    }
+    
+    /**
+     * Adds a point to the current run.
+     * 
+     * @param x  the x-coordinate.
+     * @param y  the y-coordinate.
+     */
+    void add(double x, double y) {
+        if (this.count == this.x.length) {
+            this.x = Arrays.copyOf(this.x, this.count * 2);
+            this.y = Arrays.copyOf(this.y, this.count * 2);
+        }
+        this.x[this.count] = x;
+        this.y[this.count] = y;
+        this.count++;
+    }
+    
+    /**
+     * Returns the number of points in the current run.
+     * 
+     * @return The number of points.
+     */
+    int size() {
+        return this.count;
+    }
+    
+    /**
+     * Returns the x-coordinate of a point in the run.
+     * 
+     * @param i  the point index.
+     * 
+     * @return The x-coordinate.
+     */
+    double getX(int i) {
+        return this.x[i];
+    }
+    
+    /**
+     * Returns the y-coordinate of a point in the run.
+     * 
+     * @param i  the point index.
+     * 
+     * @return The y-coordinate.
+     */
+    double getY(int i) {
+        return this.y[i];
+    }
+    
+    /**
+     * Returns {@code true} if the point is kept by the most recent call to
+     * {@link #simplify(java.awt.geom.AffineTransform, double)}.
+     * 
+     * @param i  the point index.
+     * 
+     * @return A boolean.
+     */
+    boolean isKept(int i) {
+        return this.keep[i];
+    }
+    
+    /**
+     * Simplifies the current run.  The first and last points are always 
+     * kept.
+     * 
+     * @param t  the transform from user space to device space 
+     *     ({@code null} not permitted).
+     * @param tolerance  the tolerance (in device space).
+     * 
+     * @return The number of points dropped.
+     */
+    int simplify(AffineTransform t, double tolerance) {
+        int n = this.count;
+        if (this.dx == null || this.dx.length < n) {
+            int capacity = Math.max(n, this.x.length);
+            this.dx = new double[capacity];
+            this.dy = new double[capacity];
+            this.keep = new boolean[capacity];
+            this.stack = new int[64];
+        }
+        double[] pts = new double[2];
+        for (int i = 0; i < n; i++) {
+            pts[0] = this.x[i];
+            pts[1] = this.y[i];
+            t.transform(pts, 0, pts, 0, 1);
+            this.dx[i] = pts[0];
+            this.dy[i] = pts[1];
+            this.keep[i] = false;
+        }
+        this.keep[0] = true;
+        this.keep[n - 1] = true;
+        double toleranceSq = tolerance * tolerance;
+        int kept = 2;
+        int top = 0;
+        this.stack[top++] = 0;
+        this.stack[top++] = n - 1;
+        while (top > 0) {
+            int last = this.stack[--top];
+            int first = this.stack[--top];
+            double maxDistSq = 0.0;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double d = Line2D.ptSegDistSq(this.dx[first], this.dy[first], 
+                        this.dx[last], this.dy[last], this.dx[i], this.dy[i]);
+                if (d > maxDistSq) {
+                    maxDistSq = d;
+                    index = i;
+                }
+            }
+            if (index >= 0 && maxDistSq > toleranceSq) {
+                this.keep[index] = true;
+                kept++;
+                if (top + 4 > this.stack.length) {
+                    this.stack = Arrays.copyOf(this.stack, 
+                            this.stack.length * 2);
+                }
+                this.stack[top++] = first;
+                this.stack[top++] = index;
+                this.stack[top++] = index;
+                this.stack[top++] = last;
+            }
+        }
+        return n - kept;
+    }
+
+}
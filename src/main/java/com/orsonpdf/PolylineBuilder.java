@@ -0,0 +1,164 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+package com.orsonpdf;
+
+import java.util.Arrays;
+
+/**
+ * A builder for a polyline that grows one point at a time, storing the 
+ * coordinates in primitive arrays (so that no objects are created for the 
+ * points).  The polyline can be drawn with 
+ * {@link PDFGraphics2D#drawPolyline(PolylineBuilder)}, and the builder can 
+ * be cleared and reused for the next series.
+ * 
+ * @since 2.0
+ */
+public final class PolylineBuilder {
+
+    /** The x-coordinates. */
+    private double[] xPoints;
+    
+    /** The y-coordinates. */
+    private double[] yPoints;
+    
+    /** The number of points. */
+    private int count;
+
+    /**
+     * Creates a new empty builder.
+     */
+    public PolylineBuilder() {
+        this(64);
+    }
+    
+    /**
+     * Creates a new empty builder with the specified initial capacity.
+     * 
+     * @param capacity  the initial capacity (number of points).
+     */
+    public PolylineBuilder(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Requires 'capacity' >= 1.");
+        }
+        this.xPoints = new double[capacity];
+        this.yPoints = new double[capacity];
+    }
+    
+    /**
+     * Adds a point to the end of the polyline.
+     * 
+     * @param x  the x-coordinate.
+     * @param y  the y-coordinate.
+     * 
+     * @return This builder (for chaining method calls).
+     */
+    public PolylineBuilder add(double x, double y) {
+        if (this.count == this.xPoints.length) {
+            int capacity = this.count * 2;
+            this.xPoints = Arrays.copyOf(this.xPoints, capacity);
+            this.yPoints = Arrays.copyOf(this.yPoints, capacity);
+        }
+        this.xPoints[this.count] = x;
+        this.yPoints[this.count] = y;
+        this.count++;
+        return this;
+    }
+    
+    /**
+     * Returns the number of points in the polyline.
+     * 
+     * @return The number of points.
+     */
+    public int size() {
+        return this.count;
+    }
+    
+    /**
+     * Returns the x-coordinate of a point in the polyline.
+     * 
+     * @param index  the point index (in the range {@code 0} to 
+     *     {@code size() - 1}).
+     * 
+     * @return The x-coordinate.
+     */
+    public double getX(int index) {
+        checkIndex(index);
+        return this.xPoints[index];
+    }
+    
+    /**
+     * Returns the y-coordinate of a point in the polyline.
+     * 
+     * @param index  the point index (in the range {@code 0} to 
+     *     {@code size() - 1}).
+     * 
+     * @return The y-coordinate.
+     */
+    public double getY(int index) {
+        checkIndex(index);
+        return this.yPoints[index];
+    }
+    
+    /**
+     * Removes all the points (the storage is kept for reuse).
+     */
+    public void clear() {
+        this.count = 0;
+    }
+    
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.count) {
+            throw new IndexOutOfBoundsException("Invalid index: " + index);
+        }
+    }
+    
+    /**
+     * Returns the array of x-coordinates (not a copy, the array can be 
+     * longer than the number of points).
+     * 
+     * @return The x-coordinates.
+     */
+    double[] xPoints() {
+        return this.xPoints;
+    }
+
+    /**
+     * Returns the array of y-coordinates (not a copy, the array can be 
+     * longer than the number of points).
+     * 
+     * @return The y-coordinates.
+     */
+    double[] yPoints() {
+        return this.yPoints;
+    }
+
+}
@@ -0,0 +1,569 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+package com.orsonpdf;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Image;
+import java.awt.MultipleGradientPaint;
+import java.awt.RadialGradientPaint;
+import java.awt.Transparency;
+import java.awt.geom.AffineTransform;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import com.orsonpdf.Pattern.ShadingPattern;
+import com.orsonpdf.filter.DCTFilter;
+import com.orsonpdf.filter.Filter;
+import com.orsonpdf.shading.AxialShading;
+import com.orsonpdf.shading.RadialShading;
+import com.orsonpdf.shading.Shading;
+import com.orsonpdf.util.Args;
+import com.orsonpdf.util.GradientPaintKey;
+import com.orsonpdf.util.RadialGradientPaintKey;
+
+/**
+ * The functions, shadings, patterns, graphics state dictionaries and images
+ * that are shared by all the pages in a {@link PDFDocument}.  Each object is 
+ * created (and added to the document) once, the first time it is needed, 
+ * and pages refer to the shared object under their own resource names.
+ */
+final class SharedResources {
+
+    /** The document. */
+    private final PDFDocument document;
+    
+    /** The functions, keyed by the color components (and fractions). */
+    private final Map<FunctionKey, Function> functions;
+    
+    /** The axial shadings for linear gradients. */
+    private final Map<GradientPaintKey, Shading> axialShadings;
+    
+    /** The radial shadings for radial gradients. */
+    private final Map<RadialGradientPaintKey, Shading> radialShadings;
+    
+    /** The shading patterns, keyed by shading and pattern matrix. */
+    private final Map<PatternKey, Pattern> patterns;
+    
+    /** The graphics state dictionaries, keyed by alpha value. */
+    private final Map<Integer, GraphicsStateDictionary> alphaStates;
+    
+    /** The images added to the document, keyed by content. */
+    private final Map<ImageKey, ImageEntry> imagesByContent;
+    
+    /** 
+     * The references to the encoded images copied to the document, keyed 
+     * by identity (the keys are weak references).
+     */
+    private final Map<EncodedImage, String> encodedImages;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param document  the document ({@code null} not permitted).
+     */
+    SharedResources(PDFDocument document) {
+        Args.nullNotPermitted(document, "document");
+        this.document = document;
+        this.functions = new HashMap<FunctionKey, Function>();
+        this.axialShadings = new HashMap<GradientPaintKey, Shading>();
+        this.radialShadings = new HashMap<RadialGradientPaintKey, Shading>();
+        this.patterns = new HashMap<PatternKey, Pattern>();
+        this.alphaStates = new HashMap<Integer, GraphicsStateDictionary>();
+        this.imagesByContent = new HashMap<ImageKey, ImageEntry>();
+        this.encodedImages = new WeakHashMap<EncodedImage, String>();
+    }
+    
+    /**
+     * Returns the shading pattern for the specified gradient, creating it 
+     * (along with the shading and function it uses) if necessary.
+     * 
+     * @param gp  the gradient ({@code null} not permitted).
+     * @param matrix  the pattern matrix ({@code null} not permitted).
+     * 
+     * @return The pattern. 
+     */
+    Pattern findOrCreatePattern(GradientPaint gp, AffineTransform matrix) {
+        GradientPaintKey key = new GradientPaintKey(gp);
+        Shading s = this.axialShadings.get(key);
+        if (s == null) {
+            Function f = findOrCreateFunction(new Color[] {gp.getColor1(), 
+                    gp.getColor2()}, null);
+            double[] coords = new double[4];
+            coords[0] = gp.getPoint1().getX();
+            coords[1] = gp.getPoint1().getY();
+            coords[2] = gp.getPoint2().getX();
+            coords[3] = gp.getPoint2().getY();
+            s = new AxialShading(this.document.getNextNumber(), coords, f);
+            this.document.addObject(s);
+            this.axialShadings.put(key, s);
+        }
+        return findOrCreatePattern(s, matrix);
+    }
+    
+    /**
+     * Returns the shading pattern for the specified radial gradient, 
+     * creating it (along with the shading and functions it uses) if 
+     * necessary.
+     * 
+     * @param gp  the gradient ({@code null} not permitted).
+     * @param matrix  the pattern matrix ({@code null} not permitted).
+     * 
+     * @return The pattern. 
+     */
+    Pattern findOrCreatePattern(RadialGradientPaint gp, 
+            AffineTransform matrix) {
+        RadialGradientPaintKey key = new RadialGradientPaintKey(gp);
+        Shading s = this.radialShadings.get(key);
+        if (s == null) {
+            Function f = createFunctionForMultipleGradient(gp);
+            double[] coords = new double[6];
+            coords[0] = gp.getFocusPoint().getX();
+            coords[1] = gp.getFocusPoint().getY();
+            coords[2] = 0.0;
+            coords[3] = gp.getCenterPoint().getX();
+            coords[4] = gp.getCenterPoint().getY();
+            coords[5] = gp.getRadius();
+            s = new RadialShading(this.document.getNextNumber(), coords, f);
+            this.document.addObject(s);
+            this.radialShadings.put(key, s);
+        }
+        return findOrCreatePattern(s, matrix);
+    }
+    
+    private Pattern findOrCreatePattern(Shading s, AffineTransform matrix) {
+        PatternKey key = new PatternKey(s, matrix);
+        Pattern p = this.patterns.get(key);
+        if (p == null) {
+            p = new ShadingPattern(this.document.getNextNumber(), s, matrix);
+            this.document.addObject(p);
+            this.patterns.put(key, p);
+        }
+        return p;
+    }
+    
+    private Function createFunctionForMultipleGradient(
+            MultipleGradientPaint mgp) {
+        Color[] colors = mgp.getColors();
+        if (colors.length == 2) {
+            return findOrCreateFunction(colors, null);
+        }
+        int count = colors.length - 1;
+        float[] fbounds = new float[count - 1];
+        for (int i = 0; i < count - 1; i++) {
+            fbounds[i] = mgp.getFractions()[i + 1];
+        }
+        return findOrCreateFunction(colors, fbounds);
+    }
+    
+    /**
+     * Returns the function that interpolates the specified colors, 
+     * creating it if necessary.  For two colors this is an exponential 
+     * interpolation function, for more colors it is a stitching function 
+     * (using the specified bounds) that combines an exponential 
+     * interpolation function for each pair of colors.
+     * 
+     * @param colors  the colors (at least two).
+     * @param bounds  the bounds for a stitching function ({@code null} for 
+     *     two colors).
+     * 
+     * @return The function.
+     */
+    private Function findOrCreateFunction(Color[] colors, float[] bounds) {
+        int n = colors.length;
+        float[] values = new float[n * 3 + (bounds != null 
+                ? bounds.length : 0)];
+        for (int i = 0; i < n; i++) {
+            float[] rgb = colors[i].getRGBColorComponents(null);
+            System.arraycopy(rgb, 0, values, i * 3, 3);
+        }
+        if (bounds != null) {
+            System.arraycopy(bounds, 0, values, n * 3, bounds.length);
+        }
+        FunctionKey key = new FunctionKey(values);
+        Function f = this.functions.get(key);
+        if (f != null) {
+            return f;
+        }
+        if (n == 2) {
+            f = new ExponentialInterpolationFunction(
+                    this.document.getNextNumber(), 
+                    colors[0].getRGBColorComponents(null), 
+                    colors[1].getRGBColorComponents(null));
+        } else {
+            int count = n - 1;
+            Function[] parts = new Function[count];
+            float[] encode = new float[count * 2];
+            for (int i = 0; i < count; i++) {
+                // a linear function for each pair of colors
+                parts[i] = findOrCreateFunction(new Color[] {colors[i], 
+                        colors[i + 1]}, null);
+                encode[i * 2] = 0;
+                encode[i * 2 + 1] = 1;
+            }
+            f = new StitchingFunction(this.document.getNextNumber(), parts, 
+                    bounds, encode);
+        }
+        this.document.addObject(f);
+        this.functions.put(key, f);
+        return f;
+    }
+    
+    /**
+     * Returns the graphics state dictionary for the specified alpha value,
+     * creating it if necessary.
+     * 
+     * @param alpha  the alpha value in the range 0 to 255.
+     * 
+     * @return The graphics state dictionary. 
+     */
+    GraphicsStateDictionary findOrCreateAlphaState(int alpha) {
+        GraphicsStateDictionary gsd = this.alphaStates.get(alpha);
+        if (gsd == null) {
+            float alphaValue = alpha / 255f;
+            gsd = new GraphicsStateDictionary(this.document.getNextNumber());
+            gsd.setNonStrokeAlpha(alphaValue);
+            gsd.setStrokeAlpha(alphaValue);
+            this.document.addObject(gsd);
+            this.alphaStates.put(alpha, gsd);
+        }
+        return gsd;
+    }
+
+    /**
+     * Returns the reference to the image XObject for the specified image, 
+     * creating the image XObject (and its mask) if necessary.  An image is
+     * found by a hash of the pixel data (computed each time, as an image 
+     * can be modified between calls), so an image that is drawn many times
+     * (or many images with the same pixels) is written to the document 
+     * only once.  A new image XObject reads a copy of the pixels taken 
+     * here, so the data written always matches the hash and the image can
+     * be modified as soon as this method returns.  The mask depends on the
+     * alpha samples: there is no mask for an opaque image, a 1-bit stencil
+     * mask for an image with only fully transparent and fully opaque 
+     * pixels, and a soft mask otherwise.
+     * 
+     * @param img  the image ({@code null} not permitted).
+     * @param softMask  include a mask for the image transparency?
+     * @param encoding  the image encoding (a value for the 
+     *     {@link PDFHints#KEY_IMAGE_ENCODING} hint, {@code null} permitted).
+     * @param quality  the quality for JPEG encoding.
+     * 
+     * @return The PDF object reference for the image (for example, 
+     *     "12 0 R").
+     */
+    String findOrCreateImage(Image img, boolean softMask, Object encoding, 
+            float quality) {
+        Args.nullNotPermitted(img, "img");
+        ImageKey key = new ImageKey(new ImageRaster(img));
+        ImageEntry entry = this.imagesByContent.get(key);
+        if (entry == null) {
+            entry = new ImageEntry(key.transparency, key.photographic);
+            this.imagesByContent.put(key, entry);
+        }
+        boolean masked = softMask 
+                && entry.transparency != Transparency.OPAQUE;
+        boolean dct = PDFHints.VALUE_IMAGE_ENCODING_DCT.equals(encoding) 
+                || (PDFHints.VALUE_IMAGE_ENCODING_AUTO.equals(encoding) 
+                && entry.photographic);
+        String variant = (masked ? "masked " : "") 
+                + (dct ? "dct " + quality : "flate");
+        String reference = entry.references.get(variant);
+        if (reference == null) {
+            Filter filter = dct ? new DCTFilter(img.getWidth(null), 
+                    img.getHeight(null), 3, quality) 
+                    : this.document.getImageFlateFilter();
+            reference = createImage(img, 
+                    masked ? entry.transparency : Transparency.OPAQUE, 
+                    filter);
+            entry.references.put(variant, reference);
+        }
+        return reference;
+    }
+    
+    /**
+     * Returns the reference to the image XObject that contains a copy of 
+     * the data for the specified encoded image, creating the image XObject
+     * if necessary.
+     * 
+     * @param img  the image ({@code null} not permitted, and 
+     *     {@link EncodedImage#isPassThrough()} must be {@code true}).
+     * 
+     * @return The PDF object reference for the image (for example, 
+     *     "12 0 R").
+     */
+    String findOrCreateEncodedImage(EncodedImage img) {
+        Args.nullNotPermitted(img, "img");
+        String reference = this.encodedImages.get(img);
+        if (reference == null) {
+            PDFEncodedImage image = new PDFEncodedImage(
+                    this.document.getNextNumber(), img);
+            this.document.addObject(image);
+            reference = image.getReference();
+            this.encodedImages.put(img, reference);
+        }
+        return reference;
+    }
+    
+    /**
+     * Creates an image XObject (and its mask if required) that reads a copy
+     * of the pixels in the image, and adds it to the document.
+     * 
+     * @param img  the image ({@code null} not permitted).
+     * @param transparency  the mask to add: none 
+     *     ({@code Transparency.OPAQUE}), a stencil mask 
+     *     ({@code Transparency.BITMASK}) or a soft mask 
+     *     ({@code Transparency.TRANSLUCENT}).
+     * @param filter  the filter for the color samples (the mask always 
+     *     uses the image flate filter).
+     * 
+     * @return The PDF object reference for the image.
+     */
+    private String createImage(Image img, int transparency, Filter filter) {
+        PDFDocument doc = this.document;
+        ImageRaster raster = ImageRaster.copyOf(img);
+        Stream mask = null;
+        if (transparency == Transparency.TRANSLUCENT) {
+            mask = new PDFSoftMaskImage(doc.getNextNumber(), raster);
+        } else if (transparency == Transparency.BITMASK) {
+            mask = new PDFStencilMaskImage(doc.getNextNumber(), raster);
+        }
+        String maskRef = mask != null ? mask.getReference() : null;
+        PDFImage image = new PDFImage(doc.getNextNumber(), raster, 
+                transparency == Transparency.TRANSLUCENT ? maskRef : null,
+                transparency == Transparency.BITMASK ? maskRef : null);
+        image.addFilter(filter);
+        // the image is added first, so that the pass over the pixels that 
+        // writes it keeps the (smaller) alpha plane for the mask
+        doc.addObject(image);
+        if (mask != null) {
+            mask.addFilter(doc.getImageFlateFilter());
+            doc.addObject(mask);
+        }
+        return image.getReference();
+    }
+    
+    /**
+     * The references to the image XObjects for an image (with or without
+     * a mask, and with each encoding used), created when first needed.
+     */
+    private static final class ImageEntry {
+        
+        /** The transparency of the image pixels. */
+        final int transparency;
+        
+        /** Does the image look photographic? */
+        final boolean photographic;
+        
+        /** The references, keyed by a description of the variant. */
+        final Map<String, String> references;
+        
+        ImageEntry(int transparency, boolean photographic) {
+            this.transparency = transparency;
+            this.photographic = photographic;
+            this.references = new HashMap<String, String>(4);
+        }
+    }
+    
+    /**
+     * A key for the content of an image: the image size and a SHA-256 
+     * digest of the RGB and alpha samples.  The pass over the pixels also
+     * finds the transparency of the image: {@code Transparency.OPAQUE} if 
+     * all pixels are opaque, {@code Transparency.BITMASK} if the pixels are
+     * either fully opaque or fully transparent, and 
+     * {@code Transparency.TRANSLUCENT} otherwise.  It also counts the 
+     * distinct colors (up to a limit) to find images that look 
+     * photographic, as a guide for choosing JPEG encoding.
+     */
+    private static final class ImageKey {
+        
+        private final int width;
+        
+        private final int height;
+        
+        private final byte[] digest;
+        
+        /** The transparency (not part of the key, it follows the pixels). */
+        final int transparency;
+        
+        /** 
+         * Does the image look photographic (not part of the key, it follows
+         * the pixels)?
+         */
+        final boolean photographic;
+        
+        ImageKey(ImageRaster raster) {
+            this.width = raster.getWidth();
+            this.height = raster.getHeight();
+            MessageDigest md;
+            try {
+                md = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new RuntimeException(ex);
+            }
+            // images that are opaque by type need no check of the alpha 
+            // samples (but they are hashed, so that an opaque image matches
+            // the same pixels in an image type with an alpha channel)
+            boolean checkAlpha = raster.hasAlpha();
+            int t = Transparency.OPAQUE;
+            byte[] rgb = new byte[this.width * 3];
+            byte[] alpha = new byte[this.width];
+            // an image with at least 4096 pixels looks photographic if it 
+            // has one distinct color for every 16 pixels (up to 4096 colors)
+            int pixels = this.width * this.height;
+            int limit = pixels >= 4096 ? Math.min(pixels / 16, 4096) : 0;
+            int[] colors = new int[limit * 2];
+            int colorCount = 0;
+            int[] scratch = raster.createScratch();
+            for (int y = 0; y < this.height; y++) {
+                raster.readRow(y, rgb, alpha, scratch);
+                md.update(rgb);
+                md.update(alpha);
+                for (int x = 0, j = 0; colorCount < limit && x < this.width; 
+                        x++) {
+                    int c = 0x1000000 | (rgb[j++] & 0xFF) << 16 
+                            | (rgb[j++] & 0xFF) << 8 | (rgb[j++] & 0xFF);
+                    int i = (c * 0x9E3779B1 >>> 16) % colors.length;
+                    while (colors[i] != 0 && colors[i] != c) {
+                        i = (i + 1) % colors.length;
+                    }
+                    if (colors[i] == 0) {
+                        colors[i] = c;
+                        colorCount++;
+                    }
+                }
+                if (checkAlpha && t != Transparency.TRANSLUCENT) {
+                    for (int x = 0; x < this.width; x++) {
+                        int a = alpha[x] & 0xFF;
+                        if (a == 0) {
+                            t = Transparency.BITMASK;
+                        } else if (a != 255) {
+                            t = Transparency.TRANSLUCENT;
+                            break;
+                        }
+                    }
+                }
+            }
+            this.digest = md.digest();
+            this.transparency = t;
+            this.photographic = limit > 0 && colorCount >= limit;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof ImageKey)) {
+                return false;
+            }
+            ImageKey that = (ImageKey) obj;
+            return this.width == that.width && this.height == that.height
+                    && Arrays.equals(this.digest, that.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.digest);
+        }
+    }
+
+    /**
+     * A key for a function, containing the color components followed by the
+     * stitching bounds (if any).  The number of values distinguishes an 
+     * exponential interpolation function (6 values, for two colors) from a 
+     * stitching function (4n - 2 values for n colors, so at least 10).
+     */
+    private static final class FunctionKey {
+        
+        private final float[] values;
+        
+        FunctionKey(float[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof FunctionKey)) {
+                return false;
+            }
+            return Arrays.equals(this.values, ((FunctionKey) obj).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(this.values);
+        }
+    }
+    
+    /**
+     * A key for a shading pattern (the shading is compared by identity, 
+     * since shadings are shared).
+     */
+    private static final class PatternKey {
+        
+        private final Shading shading;
+        
+        private final AffineTransform matrix;
+        
+        PatternKey(Shading shading, AffineTransform matrix) {
+            this.shading = shading;
+            this.matrix = new AffineTransform(matrix);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof PatternKey)) {
+                return false;
+            }
+            PatternKey that = (PatternKey) obj;
+            return this.shading == that.shading 
+                    && this.matrix.equals(that.matrix);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(this.shading) 
+                    + this.matrix.hashCode();
+        }
+    }
+
+}
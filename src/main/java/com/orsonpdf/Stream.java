@@ -34,7 +34,9 @@ package com.orsonpdf;
 import com.orsonpdf.filter.Filter;
 import com.orsonpdf.util.Args;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -46,6 +48,12 @@ public abstract class Stream extends PDFObject {
     
     /** Filters (if any) to apply to the stream data. */
     private List<Filter> filters;
+    
+    /** 
+     * The PDF object number for the stream length, when it is written as an
+     * indirect object (zero until a number is allocated).
+     */
+    private int lengthNumber;
 
     /**
      * Creates a new stream.
@@ -88,11 +96,8 @@ public abstract class Stream extends PDFObject {
      */
     @Override
     public byte[] getObjectBytes() throws IOException {
+        byte[] streamData = getEncodedStreamData();
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        byte[] streamData = getRawStreamData();
-        for (Filter f: this.filters) {
-            streamData = f.encode(streamData);
-        }
         Dictionary dictionary = createDictionary(streamData.length);
         baos.write(dictionary.toPDFBytes());
         baos.write(PDFUtils.toBytes("stream\n"));
@@ -100,7 +105,65 @@ public abstract class Stream extends PDFObject {
         baos.write(PDFUtils.toBytes("endstream\n"));
         return baos.toByteArray();
     }
+    
+    /**
+     * Returns the stream data with all current filters applied.  This is 
+     * safe to call from a thread other than the one that created the stream
+     * as long as the stream content is not being modified at the same time
+     * (the {@link PDFWriter} uses this to compress independent streams in
+     * parallel).
+     * 
+     * @return The encoded stream data.
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    byte[] getEncodedStreamData() throws IOException {
+        ByteArrayOutputStream streamData = new ByteArrayOutputStream();
+        writeEncodedStreamData(streamData);
+        return streamData.toByteArray();
+    }
 
+    /**
+     * Returns the PDF object number used for the indirect stream length, or
+     * {@code 0} if no number has been allocated yet.
+     * 
+     * @return The object number for the stream length.
+     */
+    int getLengthNumber() {
+        return this.lengthNumber;
+    }
+    
+    /**
+     * Sets the PDF object number used for the indirect stream length.  This
+     * is allocated by the {@link PDFWriter} the first time the stream is 
+     * written with an indirect length, and reused after that.
+     * 
+     * @param number  the object number.
+     */
+    void setLengthNumber(int number) {
+        this.lengthNumber = number;
+    }
+
+    /**
+     * Writes the stream data, with all current filters applied, to 
+     * {@code out}.  The filters are chained so that the data passes through
+     * them in the order they were added (the reverse of the decode order in
+     * the stream dictionary), and the encoded data is passed to the output 
+     * as it is produced, without first being collected in memory.
+     * 
+     * @param out  the output stream ({@code null} not permitted).
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    void writeEncodedStreamData(OutputStream out) throws IOException {
+        OutputStream target = new NonClosingOutputStream(out);
+        for (int i = this.filters.size() - 1; i >= 0; i--) {
+            target = this.filters.get(i).wrap(target);
+        }
+        writeRawStreamData(target);
+        target.close();
+    }
+    
     /**
      * Creates the dictionary for this stream object.  The dictionary will
      * be populated with the stream length and the decode values for any
@@ -131,5 +194,42 @@ public abstract class Stream extends PDFObject {
      * @return The raw data for the stream. 
      */
     public abstract byte[] getRawStreamData();
+    
+    /**
+     * Writes the raw data for the stream to the specified output stream.  The
+     * default implementation writes the array returned by 
+     * {@link #getRawStreamData()}, subclasses can override this method to 
+     * avoid creating the array.
+     * 
+     * @param out  the output stream ({@code null} not permitted).
+     * 
+     * @throws IOException if there is an I/O problem.
+     */
+    protected void writeRawStreamData(OutputStream out) throws IOException {
+        out.write(getRawStreamData());
+    }
+    
+    /**
+     * An output stream that passes data through to the target but does not
+     * close it, so that the filters applied to the stream data can be closed
+     * (to write any trailing data) while the PDF output remains open.
+     */
+    private static final class NonClosingOutputStream 
+            extends FilterOutputStream {
+        
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.out.flush();
+        }
+    }
 
 }
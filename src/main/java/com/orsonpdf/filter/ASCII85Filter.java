@@ -31,8 +31,8 @@
 
 package com.orsonpdf.filter;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import com.orsonpdf.util.Args;
+import java.io.OutputStream;
 
 /**
  * A filter that can encode in ASCII-85 format.
@@ -55,19 +55,19 @@ public class ASCII85Filter implements Filter {
         return FilterType.ASCII85;
     }
 
+    /**
+     * Returns an output stream that encodes the data written to it in 
+     * ASCII-85 format and passes the result to {@code out}.
+     * 
+     * @param out  the output stream for the encoded data ({@code null} not 
+     *     permitted).
+     * 
+     * @return An ASCII-85 output stream.
+     */
     @Override
-    public byte[] encode(byte[] source) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        Ascii85OutputStream out = new Ascii85OutputStream(baos);
-        try {
-            out.write(source);
-            out.flush();
-            out.close();
-        } catch (IOException e) {
-            // didn't expect this...
-            throw new RuntimeException(e);
-        }
-        return baos.toByteArray();
+    public OutputStream wrap(OutputStream out) {
+        Args.nullNotPermitted(out, "out");
+        return new Ascii85OutputStream(out);
     }
     
 }
@@ -0,0 +1,249 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ * 
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates. 
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ * 
+ */
+
+package com.orsonpdf.filter;
+
+import com.orsonpdf.util.Args;
+import java.awt.Transparency;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * A filter that encodes image samples in JPEG format (lossy), using the 
+ * JPEG writer in {@code javax.imageio}.  As JPEG works on whole images, the
+ * filter is created for a specific image size and number of color 
+ * components, and the samples (8 bits per component, interleaved, one row 
+ * after another) are collected until the stream is closed.  This suits 
+ * photographic images, for which the output is usually many times smaller
+ * than with a {@link FlateFilter}.  The filter must be the only filter 
+ * applied to the stream (PDF readers apply the {@code /DCTDecode} filter 
+ * to the image data directly).
+ * 
+ * @since 2.0
+ */
+public class DCTFilter implements Filter {
+    
+    /** The default quality. */
+    public static final float DEFAULT_QUALITY = 0.85f;
+    
+    /** The image width. */
+    private final int width;
+    
+    /** The image height. */
+    private final int height;
+    
+    /** The number of color components (1 or 3). */
+    private final int components;
+    
+    /** The quality (0.0 to 1.0). */
+    private final float quality;
+    
+    /**
+     * Creates a new filter for an RGB image with the default quality.
+     * 
+     * @param width  the image width (in pixels).
+     * @param height  the image height (in pixels).
+     */
+    public DCTFilter(int width, int height) {
+        this(width, height, 3, DEFAULT_QUALITY);
+    }
+    
+    /**
+     * Creates a new filter.
+     * 
+     * @param width  the image width (in pixels).
+     * @param height  the image height (in pixels).
+     * @param components  the number of color components (1 for gray, 3 for
+     *     RGB).
+     * @param quality  the quality, from {@code 0.0} (smallest output) to 
+     *     {@code 1.0} (best quality).
+     */
+    public DCTFilter(int width, int height, int components, float quality) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Invalid size: " + width 
+                    + " x " + height);
+        }
+        if (components != 1 && components != 3) {
+            throw new IllegalArgumentException("Invalid components: " 
+                    + components);
+        }
+        if (!(quality >= 0.0f && quality <= 1.0f)) {
+            throw new IllegalArgumentException("Invalid quality: " + quality);
+        }
+        this.width = width;
+        this.height = height;
+        this.components = components;
+        this.quality = quality;
+    }
+    
+    /**
+     * Returns the quality.
+     * 
+     * @return The quality (0.0 to 1.0). 
+     */
+    public float getQuality() {
+        return this.quality;
+    }
+    
+    /**
+     * Returns the filter type.
+     * 
+     * @return {@link FilterType#DCT}. 
+     */
+    @Override
+    public FilterType getFilterType() {
+        return FilterType.DCT;
+    }
+
+    /**
+     * Returns an output stream that collects the image samples written to
+     * it and, when it is closed, writes the samples to {@code out} in JPEG
+     * format.
+     * 
+     * @param out  the output stream for the encoded data ({@code null} not 
+     *     permitted).
+     * 
+     * @return A JPEG output stream.
+     */
+    @Override
+    public OutputStream wrap(OutputStream out) {
+        Args.nullNotPermitted(out, "out");
+        return new DCTOutputStream(out);
+    }
+    
+    /**
+     * An output stream that collects the image samples and encodes them in
+     * JPEG format when it is closed.
+     */
+    private final class DCTOutputStream extends OutputStream {
+        
+        /** The output stream for the encoded data. */
+        private final OutputStream out;
+        
+        /** The image samples. */
+        private final byte[] samples;
+        
+        /** The number of samples received so far. */
+        private int count;
+        
+        /** Has the stream been closed? */
+        private boolean closed;
+        
+        DCTOutputStream(OutputStream out) {
+            this.out = out;
+            this.samples = new byte[width * height * components];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len > this.samples.length - this.count) {
+                throw new IOException("Too much data for a " + width + " x " 
+                        + height + " image.");
+            }
+            System.arraycopy(b, off, this.samples, this.count, len);
+            this.count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            if (this.count != this.samples.length) {
+                throw new IOException("Expected " + this.samples.length 
+                        + " bytes but received " + this.count + ".");
+            }
+            try {
+                encode();
+            } finally {
+                this.out.close();
+            }
+        }
+        
+        /**
+         * Writes the samples to the output stream in JPEG format.
+         * 
+         * @throws IOException if there is an I/O problem.
+         */
+        private void encode() throws IOException {
+            DataBuffer db = new DataBufferByte(this.samples, 
+                    this.samples.length);
+            int[] bandOffsets = components == 3 ? new int[] { 0, 1, 2 } 
+                    : new int[] { 0 };
+            WritableRaster raster = Raster.createInterleavedRaster(db, width,
+                    height, width * components, components, bandOffsets, 
+                    null);
+            ColorSpace cs = ColorSpace.getInstance(components == 3 
+                    ? ColorSpace.CS_sRGB : ColorSpace.CS_GRAY);
+            ColorModel cm = new ComponentColorModel(cs, false, false, 
+                    Transparency.OPAQUE, DataBuffer.TYPE_BYTE);
+            BufferedImage image = new BufferedImage(cm, raster, false, null);
+            Iterator<ImageWriter> writers 
+                    = ImageIO.getImageWritersByFormatName("jpeg");
+            if (!writers.hasNext()) {
+                throw new IOException("No JPEG image writer is available.");
+            }
+            ImageWriter writer = writers.next();
+            try (ImageOutputStream ios 
+                    = new MemoryCacheImageOutputStream(this.out)) {
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(quality);
+                writer.setOutput(ios);
+                writer.write(null, new IIOImage(image, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+        }
+    }
+    
+}
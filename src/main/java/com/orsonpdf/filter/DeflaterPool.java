@@ -0,0 +1,129 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+
+package com.orsonpdf.filter;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * A pool of {@code Deflater} instances, shared by all {@link FlateFilter}s,
+ * so that the native zlib state is reused across streams (and documents)
+ * rather than allocated for every stream.  Deflaters are pooled separately
+ * for each combination of level, strategy and format, since changing the
+ * parameters of a {@code Deflater} only takes effect part way through the
+ * next call to {@code deflate()}.
+ */
+final class DeflaterPool {
+
+    /** The maximum number of idle deflaters retained for each key. */
+    private static final int MAX_SIZE = 16;
+    
+    /** The idle deflaters, by key. */
+    private static final Map<Integer, ArrayDeque<Deflater>> POOLS 
+            = new HashMap<Integer, ArrayDeque<Deflater>>();
+    
+    private DeflaterPool() {
+        // no requirement to instantiate
+    }
+    
+    /**
+     * Returns the pool key for the specified parameters.
+     * 
+     * @param level  the compression level (-1 to 9).
+     * @param strategy  the compression strategy (0 to 2).
+     * @param nowrap  the format flag.
+     * 
+     * @return The key.
+     */
+    private static Integer key(int level, int strategy, boolean nowrap) {
+        return ((level + 1) << 3) | (strategy << 1) | (nowrap ? 1 : 0);
+    }
+    
+    /**
+     * Returns a deflater (from the pool if one is available) configured with
+     * the specified level and strategy.
+     * 
+     * @param level  the compression level (0-9 or 
+     *     {@code Deflater.DEFAULT_COMPRESSION}).
+     * @param strategy  the compression strategy.
+     * @param nowrap  if {@code true} the deflater writes raw deflate data 
+     *     without the zlib header and checksum.
+     * 
+     * @return A deflater. 
+     */
+    static Deflater obtain(int level, int strategy, boolean nowrap) {
+        Deflater deflater = null;
+        synchronized (POOLS) {
+            ArrayDeque<Deflater> pool = POOLS.get(key(level, strategy, 
+                    nowrap));
+            if (pool != null) {
+                deflater = pool.pollFirst();
+            }
+        }
+        if (deflater == null) {
+            deflater = new Deflater(level, nowrap);
+            deflater.setStrategy(strategy);
+        }
+        return deflater;
+    }
+    
+    /**
+     * Resets a deflater and returns it to the pool (or releases its native
+     * resources if the pool is full).
+     * 
+     * @param deflater  the deflater ({@code null} not permitted).
+     * @param level  the level used to obtain the deflater.
+     * @param strategy  the strategy used to obtain the deflater.
+     * @param nowrap  the flag used to obtain the deflater.
+     */
+    static void release(Deflater deflater, int level, int strategy, 
+            boolean nowrap) {
+        deflater.reset();
+        synchronized (POOLS) {
+            Integer key = key(level, strategy, nowrap);
+            ArrayDeque<Deflater> pool = POOLS.get(key);
+            if (pool == null) {
+                pool = new ArrayDeque<Deflater>();
+                POOLS.put(key, pool);
+            }
+            if (pool.size() < MAX_SIZE) {
+                pool.addFirst(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+}
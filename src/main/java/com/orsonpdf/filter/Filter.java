@@ -31,8 +31,22 @@
 
 package com.orsonpdf.filter;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
 /**
- * A filter that can be used to encode stream data in PDF output.
+ * A filter that can be used to encode stream data in PDF output.  Filters 
+ * work by wrapping an output stream (see {@link #wrap(OutputStream)}), so 
+ * that data can be encoded as it is written and several filters can be 
+ * chained together without creating intermediate copies of the data.
+ * <p>
+ * Each of {@link #wrap(OutputStream)} and {@link #encode(byte[])} has a 
+ * default implementation that calls the other one, so an implementation 
+ * must override at least one of them.  Overriding {@code wrap()} is 
+ * preferred, the default implementation collects all the data in memory 
+ * and encodes it when the stream is closed (as filters written before 
+ * version 2.0, which only implement {@code encode()}, require).
  */
 public interface Filter {
 
@@ -43,13 +57,56 @@ public interface Filter {
      */
     FilterType getFilterType();
     
+    /**
+     * Returns an output stream that encodes the data written to it and 
+     * passes the encoded data to {@code out}.  Closing the returned stream
+     * writes any remaining encoded data and then closes {@code out}.
+     * <p>
+     * The default implementation collects the data in memory and, when the
+     * stream is closed, writes the result of {@link #encode(byte[])} to 
+     * {@code out}.
+     * 
+     * @param out  the output stream for the encoded data ({@code null} not 
+     *     permitted).
+     * 
+     * @return An output stream that applies the encoding.
+     * 
+     * @since 2.0
+     */
+    default OutputStream wrap(OutputStream out) {
+        return new ByteArrayOutputStream() {
+            
+            private boolean closed;
+            
+            @Override
+            public void close() throws IOException {
+                if (this.closed) {
+                    return;
+                }
+                this.closed = true;
+                out.write(encode(toByteArray()));
+                out.close();
+            }
+        };
+    }
+    
     /**
      * Apply the encoding to the bytes in {@code source} and return the
-     * encoded data in a new array.
+     * encoded data in a new array.  The default implementation passes the 
+     * data through the stream returned by {@link #wrap(OutputStream)}.
      * 
      * @param source  the source ({@code null} not permitted).
      * 
      * @return The encoded bytes.
      */
-    byte[] encode(byte[] source);
+    default byte[] encode(byte[] source) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (OutputStream out = wrap(baos)) {
+            out.write(source);
+        } catch (IOException e) {
+            // didn't expect this...
+            throw new RuntimeException(e);
+        }
+        return baos.toByteArray();
+    }
 }
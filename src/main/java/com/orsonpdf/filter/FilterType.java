@@ -42,7 +42,14 @@ public enum FilterType {
     ASCII85("/ASCII85Decode"),
     
     /** Flate encoding. */
-    FLATE("/FlateDecode");
+    FLATE("/FlateDecode"),
+    
+    /** 
+     * DCT (JPEG) encoding.
+     * 
+     * @since 2.0
+     */
+    DCT("/DCTDecode");
     
     private final String decode;
     
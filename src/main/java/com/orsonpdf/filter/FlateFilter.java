@@ -31,20 +31,97 @@
 
 package com.orsonpdf.filter;
 
-import java.io.ByteArrayOutputStream;
+import com.orsonpdf.util.Args;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
 /**
- * Encodes data using Flate.
+ * Encodes data using Flate.  The compression level and strategy can be 
+ * specified in the constructor, for example {@code Deflater.BEST_SPEED} for
+ * page content that needs to be generated quickly, 
+ * {@code Deflater.FILTERED} for image data, or 
+ * {@code Deflater.NO_COMPRESSION} for data that is already compressed.  The
+ * (native) {@code Deflater} instances used for encoding are pooled and 
+ * reused, so filters can be created freely and shared between streams.
  */
 public class FlateFilter implements Filter {
 
+    /** The compression level. */
+    private final int level;
+    
+    /** The compression strategy. */
+    private final int strategy;
+    
     /**
-     * Default constructor.
+     * Default constructor (uses the default compression level and 
+     * strategy).
      */
     public FlateFilter() {
-        
+        this(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY);
+    }
+    
+    /**
+     * Creates a new filter with the specified compression level and the 
+     * default strategy.
+     * 
+     * @param level  the compression level (0-9, or 
+     *     {@code Deflater.DEFAULT_COMPRESSION}).
+     * 
+     * @since 2.0
+     */
+    public FlateFilter(int level) {
+        this(level, Deflater.DEFAULT_STRATEGY);
+    }
+    
+    /**
+     * Creates a new filter with the specified compression level and 
+     * strategy.
+     * 
+     * @param level  the compression level (0-9, or 
+     *     {@code Deflater.DEFAULT_COMPRESSION}).
+     * @param strategy  the compression strategy 
+     *     ({@code Deflater.DEFAULT_STRATEGY}, {@code Deflater.FILTERED} or 
+     *     {@code Deflater.HUFFMAN_ONLY}).
+     * 
+     * @since 2.0
+     */
+    public FlateFilter(int level, int strategy) {
+        if ((level < 0 || level > 9) 
+                && level != Deflater.DEFAULT_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid level: " + level);
+        }
+        if (strategy != Deflater.DEFAULT_STRATEGY 
+                && strategy != Deflater.FILTERED 
+                && strategy != Deflater.HUFFMAN_ONLY) {
+            throw new IllegalArgumentException("Invalid strategy: " 
+                    + strategy);
+        }
+        this.level = level;
+        this.strategy = strategy;
+    }
+    
+    /**
+     * Returns the compression level.
+     * 
+     * @return The compression level.
+     * 
+     * @since 2.0
+     */
+    public int getLevel() {
+        return this.level;
+    }
+    
+    /**
+     * Returns the compression strategy.
+     * 
+     * @return The compression strategy.
+     * 
+     * @since 2.0
+     */
+    public int getStrategy() {
+        return this.strategy;
     }
     
     /**
@@ -57,19 +134,59 @@ public class FlateFilter implements Filter {
         return FilterType.FLATE;
     }
 
+    /**
+     * Returns an output stream that compresses the data written to it and
+     * passes the compressed data to {@code out}.  The deflater is taken from
+     * a shared pool and returned to it when the stream is closed.
+     * 
+     * @param out  the output stream for the encoded data ({@code null} not 
+     *     permitted).
+     * 
+     * @return A deflater output stream.
+     */
     @Override
-    public byte[] encode(byte[] source) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DeflaterOutputStream out = new DeflaterOutputStream(baos);
-        try {
-            out.write(source);
-            out.flush();
-            out.close();
-        } catch (IOException e) {
-            // didn't expect this...
-            throw new RuntimeException(e);
-        }
-        return baos.toByteArray();
+    public OutputStream wrap(OutputStream out) {
+        Args.nullNotPermitted(out, "out");
+        return new PooledDeflaterOutputStream(out, this.level, 
+                this.strategy);
     }
     
+    /**
+     * A deflater output stream that returns its deflater to the pool when
+     * it is closed.
+     */
+    private static final class PooledDeflaterOutputStream 
+            extends DeflaterOutputStream {
+        
+        /** The compression level. */
+        private final int level;
+        
+        /** The compression strategy. */
+        private final int strategy;
+        
+        /** A flag to ensure the deflater is only returned to the pool once. */
+        private boolean released;
+        
+        PooledDeflaterOutputStream(OutputStream out, int level, 
+                int strategy) {
+            super(out, DeflaterPool.obtain(level, strategy, false), 8192);
+            this.level = level;
+            this.strategy = strategy;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.released) {
+                return;
+            }
+            this.released = true;
+            try {
+                super.close();
+            } finally {
+                DeflaterPool.release(this.def, this.level, this.strategy, 
+                        false);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,443 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+
+package com.orsonpdf.filter;
+
+import com.orsonpdf.util.Args;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Adler32;
+import java.util.zip.Deflater;
+
+/**
+ * A Flate filter that compresses large streams using several threads, in 
+ * the manner of {@code pigz}.  The data is split into blocks that are 
+ * compressed concurrently, each using the last 32K of the previous block as
+ * a preset dictionary, and the blocks are joined (with sync flushes) into a
+ * single zlib stream with a combined Adler-32 checksum.  The result is 
+ * decoded by any {@code FlateDecode} reader.
+ * <p>
+ * Streams smaller than the threshold specified in the constructor are 
+ * compressed in the same way as for {@link FlateFilter}, since for small 
+ * streams there is nothing to be gained from parallel compression.
+ * 
+ * @since 2.0
+ */
+public class ParallelFlateFilter extends FlateFilter {
+
+    /** The default block size (128K). */
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+    
+    /** The default threshold for parallel compression (1MB). */
+    public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+    
+    /** The size of the deflate window (and the preset dictionary). */
+    private static final int WINDOW_SIZE = 32 * 1024;
+    
+    /** The executor used to compress blocks. */
+    private final Executor executor;
+    
+    /** The block size. */
+    private final int blockSize;
+    
+    /** The stream size above which compression is done in parallel. */
+    private final int threshold;
+    
+    /**
+     * Creates a new filter that uses the common fork-join pool, the default 
+     * compression level, block size and threshold.
+     */
+    public ParallelFlateFilter() {
+        this(ForkJoinPool.commonPool(), Deflater.DEFAULT_COMPRESSION, 
+                DEFAULT_BLOCK_SIZE, DEFAULT_THRESHOLD);
+    }
+    
+    /**
+     * Creates a new filter.
+     * 
+     * @param executor  the executor used to compress blocks ({@code null} 
+     *     not permitted).
+     * @param level  the compression level (0-9, or 
+     *     {@code Deflater.DEFAULT_COMPRESSION}).
+     * @param blockSize  the block size (at least 32K).
+     * @param threshold  the stream size (in bytes) above which the data is
+     *     compressed in parallel.
+     */
+    public ParallelFlateFilter(Executor executor, int level, int blockSize, 
+            int threshold) {
+        super(level);
+        Args.nullNotPermitted(executor, "executor");
+        if (blockSize < WINDOW_SIZE) {
+            throw new IllegalArgumentException(
+                    "Requires 'blockSize' >= 32768.");
+        }
+        this.executor = executor;
+        this.blockSize = blockSize;
+        this.threshold = threshold;
+    }
+    
+    /**
+     * Returns the block size.
+     * 
+     * @return The block size. 
+     */
+    public int getBlockSize() {
+        return this.blockSize;
+    }
+    
+    /**
+     * Returns the stream size above which the data is compressed in 
+     * parallel.
+     * 
+     * @return The threshold (in bytes).
+     */
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+    /**
+     * Returns an output stream that compresses the data written to it and
+     * passes the compressed data to {@code out}.
+     * 
+     * @param out  the output stream for the encoded data ({@code null} not 
+     *     permitted).
+     * 
+     * @return An output stream.
+     */
+    @Override
+    public OutputStream wrap(OutputStream out) {
+        Args.nullNotPermitted(out, "out");
+        return new ParallelDeflaterOutputStream(out);
+    }
+    
+    /**
+     * Combines two Adler-32 checksums, as for the zlib function 
+     * {@code adler32_combine()}.
+     * 
+     * @param adler1  the checksum for the first sequence of bytes.
+     * @param adler2  the checksum for the second sequence of bytes.
+     * @param length2  the length of the second sequence of bytes.
+     * 
+     * @return The checksum for the combined sequence of bytes. 
+     */
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        final long base = 65521L;
+        long rem = length2 % base;
+        long sum1 = adler1 & 0xFFFFL;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xFFFFL) + base - 1;
+        sum2 += ((adler1 >> 16) & 0xFFFFL) + ((adler2 >> 16) & 0xFFFFL) 
+                + base - rem;
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum1 >= base) {
+            sum1 -= base;
+        }
+        if (sum2 >= (base << 1)) {
+            sum2 -= (base << 1);
+        }
+        if (sum2 >= base) {
+            sum2 -= base;
+        }
+        return sum1 | (sum2 << 16);
+    }
+    
+    /**
+     * The result of compressing one block.
+     */
+    private static final class Block {
+        
+        /** The compressed data. */
+        final byte[] data;
+        
+        /** The Adler-32 checksum of the uncompressed data. */
+        final long adler;
+        
+        /** The length of the uncompressed data. */
+        final int length;
+        
+        Block(byte[] data, long adler, int length) {
+            this.data = data;
+            this.adler = adler;
+            this.length = length;
+        }
+    }
+    
+    /**
+     * An output stream that collects the data into blocks and compresses 
+     * them in parallel once the threshold has been reached.
+     */
+    private final class ParallelDeflaterOutputStream extends OutputStream {
+        
+        /** The output stream for the compressed data. */
+        private final OutputStream out;
+        
+        /** The blocks held back until the threshold is reached. */
+        private final List<byte[]> held;
+        
+        /** The blocks being compressed, in order. */
+        private final ArrayDeque<CompletableFuture<Block>> pending;
+        
+        /** The maximum number of blocks being compressed at one time. */
+        private final int maxPending;
+        
+        /** The current block. */
+        private byte[] block;
+        
+        /** The number of bytes in the current block. */
+        private int count;
+        
+        /** The previous block (the source of the preset dictionary). */
+        private byte[] previous;
+        
+        /** The total number of bytes held back. */
+        private long heldCount;
+        
+        /** Has parallel compression started? */
+        private boolean started;
+        
+        /** The checksum for the data written so far. */
+        private long adler;
+        
+        /** Is the stream closed? */
+        private boolean closed;
+        
+        ParallelDeflaterOutputStream(OutputStream out) {
+            this.out = out;
+            this.held = new ArrayList<byte[]>();
+            this.pending = new ArrayDeque<CompletableFuture<Block>>();
+            this.maxPending = Math.max(2, 
+                    2 * Runtime.getRuntime().availableProcessors());
+            this.block = new byte[blockSize];
+            this.adler = 1L;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (this.closed) {
+                throw new IOException("Stream closed.");
+            }
+            while (len > 0) {
+                int n = Math.min(len, this.block.length - this.count);
+                System.arraycopy(b, off, this.block, this.count, n);
+                this.count += n;
+                off += n;
+                len -= n;
+                if (this.count == this.block.length) {
+                    blockFull();
+                }
+            }
+        }
+        
+        /**
+         * Holds the current block back (if the threshold has not been 
+         * reached yet) or submits it for compression.
+         * 
+         * @throws IOException if there is an I/O problem.
+         */
+        private void blockFull() throws IOException {
+            byte[] full = this.block;
+            this.block = new byte[blockSize];
+            this.count = 0;
+            if (!this.started) {
+                this.held.add(full);
+                this.heldCount += full.length;
+                if (this.heldCount < threshold) {
+                    return;
+                }
+                start();
+                return;
+            }
+            submit(full, full.length, false);
+        }
+        
+        /**
+         * Writes the zlib header and submits the blocks held so far.
+         * 
+         * @throws IOException if there is an I/O problem.
+         */
+        private void start() throws IOException {
+            this.started = true;
+            this.out.write(zlibHeader());
+            for (byte[] b : this.held) {
+                submit(b, b.length, false);
+            }
+            this.held.clear();
+        }
+        
+        /**
+         * Submits a block for compression, first writing the oldest 
+         * completed blocks if too many are pending.
+         * 
+         * @param data  the data.
+         * @param length  the length of the data.
+         * @param last  is this the last block?
+         * 
+         * @throws IOException if there is an I/O problem.
+         */
+        private void submit(final byte[] data, final int length, 
+                final boolean last) throws IOException {
+            while (this.pending.size() >= this.maxPending) {
+                writeBlock(this.pending.removeFirst());
+            }
+            final byte[] dictionary = this.previous;
+            this.pending.addLast(CompletableFuture.supplyAsync(
+                    () -> compress(data, length, dictionary, last), executor));
+            this.previous = data;
+        }
+        
+        private void writeBlock(CompletableFuture<Block> future) 
+                throws IOException {
+            Block result;
+            try {
+                result = future.join();
+            } catch (CompletionException e) {
+                throw new IOException(e.getCause());
+            }
+            this.out.write(result.data);
+            this.adler = combineAdler32(this.adler, result.adler, 
+                    result.length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            if (!this.started) {
+                // below the threshold, compress on this thread
+                OutputStream serial = ParallelFlateFilter.super.wrap(this.out);
+                for (byte[] b : this.held) {
+                    serial.write(b);
+                }
+                serial.write(this.block, 0, this.count);
+                serial.close();
+                return;
+            }
+            submit(this.block, this.count, true);
+            while (!this.pending.isEmpty()) {
+                writeBlock(this.pending.removeFirst());
+            }
+            this.out.write(new byte[] {(byte) (this.adler >>> 24), 
+                    (byte) (this.adler >>> 16), (byte) (this.adler >>> 8),
+                    (byte) this.adler});
+            this.out.close();
+        }
+    }
+
+    /**
+     * Returns the two byte zlib header (deflate with a 32K window, no 
+     * preset dictionary, and the level indicator matching the compression 
+     * level).
+     * 
+     * @return The header.
+     */
+    private byte[] zlibHeader() {
+        int level = getLevel();
+        int flevel;
+        if (level == Deflater.DEFAULT_COMPRESSION || level == 6) {
+            flevel = 2;
+        } else if (level < 2) {
+            flevel = 0;
+        } else if (level < 6) {
+            flevel = 1;
+        } else {
+            flevel = 3;
+        }
+        int header = (0x78 << 8) | (flevel << 6);
+        header += 31 - (header % 31);
+        return new byte[] {(byte) (header >> 8), (byte) header};
+    }
+    
+    /**
+     * Compresses one block to raw deflate data, ending with a sync flush
+     * (or the final block marker for the last block).
+     * 
+     * @param data  the data.
+     * @param length  the length of the data.
+     * @param dictionary  the previous block ({@code null} for the first 
+     *     block).
+     * @param last  is this the last block?
+     * 
+     * @return The compressed block.
+     */
+    private Block compress(byte[] data, int length, byte[] dictionary, 
+            boolean last) {
+        Deflater deflater = DeflaterPool.obtain(getLevel(), getStrategy(), 
+                true);
+        byte[] buffer = new byte[16 * 1024];
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary, 
+                        dictionary.length - WINDOW_SIZE, WINDOW_SIZE);
+            }
+            deflater.setInput(data, 0, length);
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(
+                    length / 2 + 64);
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(buffer);
+                    baos.write(buffer, 0, n);
+                }
+            } else {
+                int n;
+                do {
+                    n = deflater.deflate(buffer, 0, buffer.length, 
+                            Deflater.SYNC_FLUSH);
+                    baos.write(buffer, 0, n);
+                } while (n == buffer.length);
+            }
+            Adler32 adler32 = new Adler32();
+            adler32.update(data, 0, length);
+            return new Block(baos.toByteArray(), adler32.getValue(), length);
+        } finally {
+            DeflaterPool.release(deflater, getLevel(), getStrategy(), true);
+        }
+    }
+
+}
@@ -33,17 +33,21 @@ package com.orsonpdf.util;
 
 import java.awt.Polygon;
 import java.awt.Shape;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Arc2D;
+import java.awt.geom.Area;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.GeneralPath;
 import java.awt.geom.Line2D;
 import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
 import java.awt.geom.Rectangle2D;
 import java.awt.geom.RoundRectangle2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.RenderedImage;
 import java.awt.image.WritableRaster;
+import java.util.Arrays;
 import java.util.Hashtable;
 
 /**
@@ -121,6 +125,260 @@ public class GraphicsUtils {
         return p;
     }
 
+    /**
+     * Returns the rectangle that results from applying the transform to the
+     * specified rectangle, or {@code null} if the transform includes a 
+     * rotation or shear (in which case the result is not a rectangle with
+     * edges parallel to the axes).  An empty rectangle gives an empty
+     * result.
+     * 
+     * @param rect  the rectangle ({@code null} not permitted).
+     * @param t  the transform ({@code null} not permitted).
+     * 
+     * @return A new rectangle (possibly {@code null}).
+     * 
+     * @since 2.0
+     */
+    public static Rectangle2D transformRectangle(Rectangle2D rect, 
+            AffineTransform t) {
+        if (t.getShearX() != 0.0 || t.getShearY() != 0.0) {
+            return null;
+        }
+        double sx = t.getScaleX();
+        double sy = t.getScaleY();
+        double tx = t.getTranslateX();
+        double ty = t.getTranslateY();
+        Rectangle2D result = new Rectangle2D.Double();
+        if (rect.isEmpty()) {
+            // a rectangle with a negative width or height stays empty
+            result.setRect(rect.getX() * sx + tx, rect.getY() * sy + ty, 
+                    0.0, 0.0);
+            return result;
+        }
+        result.setFrameFromDiagonal(rect.getMinX() * sx + tx, 
+                rect.getMinY() * sy + ty, rect.getMaxX() * sx + tx, 
+                rect.getMaxY() * sy + ty);
+        return result;
+    }
+
+    /**
+     * Returns the intersection of two shapes.  There are fast (and exact)
+     * paths for two rectangles (giving a rectangle) and for two convex 
+     * polygons (giving a convex polygon), other shapes are intersected
+     * using {@link Area}.
+     * 
+     * @param s1  the first shape ({@code null} not permitted).
+     * @param s2  the second shape ({@code null} not permitted).
+     * 
+     * @return The intersection (never {@code null}, an empty rectangle if 
+     *     the shapes do not intersect).
+     * 
+     * @since 2.0
+     */
+    public static Shape intersect(Shape s1, Shape s2) {
+        Args.nullNotPermitted(s1, "s1");
+        Args.nullNotPermitted(s2, "s2");
+        if (s1 instanceof Rectangle2D && s2 instanceof Rectangle2D) {
+            Rectangle2D r1 = (Rectangle2D) s1;
+            Rectangle2D r2 = (Rectangle2D) s2;
+            double x0 = Math.max(r1.getMinX(), r2.getMinX());
+            double y0 = Math.max(r1.getMinY(), r2.getMinY());
+            double x1 = Math.min(r1.getMaxX(), r2.getMaxX());
+            double y1 = Math.min(r1.getMaxY(), r2.getMaxY());
+            if (x1 < x0 || y1 < y0) {
+                return new Rectangle2D.Double();
+            }
+            return new Rectangle2D.Double(x0, y0, x1 - x0, y1 - y0);
+        }
+        if (!s1.getBounds2D().intersects(s2.getBounds2D())) {
+            return new Rectangle2D.Double();
+        }
+        double[] p1 = convexPolygon(s1);
+        double[] p2 = p1 != null ? convexPolygon(s2) : null;
+        if (p2 != null) {
+            double[] p = clipConvexPolygon(p1, p2);
+            if (p.length < 6) {
+                return new Rectangle2D.Double();
+            }
+            Path2D result = new Path2D.Double(Path2D.WIND_NON_ZERO, 
+                    p.length / 2);
+            result.moveTo(p[0], p[1]);
+            for (int i = 2; i < p.length; i += 2) {
+                result.lineTo(p[i], p[i + 1]);
+            }
+            result.closePath();
+            return result;
+        }
+        Area a1 = new Area(s1);
+        a1.intersect(new Area(s2));
+        return new Path2D.Double(a1);
+    }
+    
+    /**
+     * Returns the vertices {@code (x0, y0, x1, y1, ...)} of the shape if it
+     * is a single closed convex polygon (with at least three vertices), and
+     * {@code null} otherwise.
+     * 
+     * @param shape  the shape ({@code null} not permitted).
+     * 
+     * @return The vertices (possibly {@code null}). 
+     */
+    private static double[] convexPolygon(Shape shape) {
+        double[] coords = new double[6];
+        double[] result = new double[16];
+        int n = 0;
+        boolean closed = false;
+        PathIterator iterator = shape.getPathIterator(null);
+        while (!iterator.isDone()) {
+            int type = iterator.currentSegment(coords);
+            if (closed) {
+                // only a trailing move is permitted after the close
+                if (type != PathIterator.SEG_MOVETO) {
+                    return null;
+                }
+            } else if (type == PathIterator.SEG_MOVETO) {
+                if (n > 0) {
+                    return null;
+                }
+                result[n++] = coords[0];
+                result[n++] = coords[1];
+            } else if (type == PathIterator.SEG_LINETO) {
+                if (n == 0) {
+                    return null;
+                }
+                if (n + 2 > result.length) {
+                    result = Arrays.copyOf(result, result.length * 2);
+                }
+                result[n++] = coords[0];
+                result[n++] = coords[1];
+            } else if (type == PathIterator.SEG_CLOSE) {
+                closed = true;
+            } else {
+                return null;
+            }
+            iterator.next();
+        }
+        // an explicit segment back to the start point is not a vertex
+        if (n >= 4 && result[n - 2] == result[0] 
+                && result[n - 1] == result[1]) {
+            n -= 2;
+        }
+        if (n < 6) {
+            return null;
+        }
+        result = Arrays.copyOf(result, n);
+        return isConvex(result) ? result : null;
+    }
+    
+    /**
+     * Returns {@code true} if the polygon is convex: every turn is in the 
+     * same direction and the x-direction of the edges changes no more than
+     * twice (which excludes self-intersecting shapes such as a pentagram).
+     * 
+     * @param p  the vertices.
+     * 
+     * @return A boolean. 
+     */
+    private static boolean isConvex(double[] p) {
+        int n = p.length / 2;
+        int turn = 0;
+        int xChanges = 0;
+        int lastXSign = 0;
+        int firstXSign = 0;
+        for (int i = 0; i < n; i++) {
+            int j = (i + 1) % n;
+            int k = (i + 2) % n;
+            double dx1 = p[2 * j] - p[2 * i];
+            double dy1 = p[2 * j + 1] - p[2 * i + 1];
+            double dx2 = p[2 * k] - p[2 * j];
+            double dy2 = p[2 * k + 1] - p[2 * j + 1];
+            double cross = dx1 * dy2 - dy1 * dx2;
+            int sign = cross > 0.0 ? 1 : (cross < 0.0 ? -1 : 0);
+            if (sign != 0) {
+                if (turn == 0) {
+                    turn = sign;
+                } else if (turn != sign) {
+                    return false;
+                }
+            }
+            int xSign = dx1 > 0.0 ? 1 : (dx1 < 0.0 ? -1 : 0);
+            if (xSign != 0) {
+                if (firstXSign == 0) {
+                    firstXSign = xSign;
+                } else if (xSign != lastXSign) {
+                    xChanges++;
+                }
+                lastXSign = xSign;
+            }
+        }
+        if (lastXSign != firstXSign) {
+            xChanges++;
+        }
+        return turn != 0 && xChanges <= 2;
+    }
+    
+    /**
+     * Clips a convex polygon against another convex polygon (the 
+     * Sutherland-Hodgman algorithm).
+     * 
+     * @param subject  the vertices of the polygon to clip.
+     * @param clip  the vertices of the clipping polygon.
+     * 
+     * @return The vertices of the intersection (fewer than three vertices if
+     *     the polygons do not intersect).
+     */
+    private static double[] clipConvexPolygon(double[] subject, 
+            double[] clip) {
+        // the orientation of the clip polygon decides which side is inside
+        double area = 0.0;
+        int m = clip.length / 2;
+        for (int i = 0; i < m; i++) {
+            int j = (i + 1) % m;
+            area += clip[2 * i] * clip[2 * j + 1] 
+                    - clip[2 * j] * clip[2 * i + 1];
+        }
+        double orientation = area < 0.0 ? -1.0 : 1.0;
+        double[] input = subject;
+        int count = subject.length;
+        for (int e = 0; e < m && count >= 6; e++) {
+            double ax = clip[2 * e];
+            double ay = clip[2 * e + 1];
+            double bx = clip[2 * ((e + 1) % m)];
+            double by = clip[2 * ((e + 1) % m) + 1];
+            double[] output = new double[count + 2];
+            int size = 0;
+            double px = input[count - 2];
+            double py = input[count - 1];
+            double pSide = orientation * ((bx - ax) * (py - ay) 
+                    - (by - ay) * (px - ax));
+            for (int i = 0; i < count; i += 2) {
+                double cx = input[i];
+                double cy = input[i + 1];
+                double cSide = orientation * ((bx - ax) * (cy - ay) 
+                        - (by - ay) * (cx - ax));
+                if (cSide >= 0.0) {
+                    if (pSide < 0.0) {
+                        double f = pSide / (pSide - cSide);
+                        output[size++] = px + f * (cx - px);
+                        output[size++] = py + f * (cy - py);
+                    }
+                    output[size++] = cx;
+                    output[size++] = cy;
+                } else if (pSide >= 0.0) {
+                    double f = pSide / (pSide - cSide);
+                    output[size++] = px + f * (cx - px);
+                    output[size++] = py + f * (cy - py);
+                }
+                px = cx;
+                py = cy;
+                pSide = cSide;
+            }
+            input = output;
+            count = size;
+        }
+        return Arrays.copyOf(input, count);
+    }
+
     /**
      * Converts a rendered image to a {@code BufferedImage}.  This utility
      * method has come from a forum post by Jim Moore at:
@@ -0,0 +1,223 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+
+package com.orsonpdf.util;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fast formatting of numbers for PDF output.  Values are rounded to a fixed
+ * maximum number of decimal places, trailing zeros are dropped and 
+ * scientific notation is never used (the PDF format does not support it).
+ * The methods are thread-safe, and values of any reasonable magnitude are 
+ * written directly to the target without allocating (much faster than 
+ * {@code java.text.DecimalFormat}, which also needs a separate instance 
+ * per thread).
+ * 
+ * @since 2.0
+ */
+public final class NumberFormatter {
+
+    /** The maximum number of decimal places supported. */
+    public static final int MAX_DECIMALS = 10;
+    
+    /** 
+     * The number of decimal places used where the output is not 
+     * configurable (for example, in dictionaries).
+     */
+    public static final int DEFAULT_DECIMALS = 6;
+    
+    /** 
+     * The space required in a byte array to guarantee that 
+     * {@link #format(double, int, byte[], int)} can write a value.
+     */
+    public static final int MAX_LENGTH = 21;
+    
+    /** Powers of ten, up to {@code MAX_DECIMALS}. */
+    private static final long[] POWERS = new long[MAX_DECIMALS + 1];
+    
+    static {
+        POWERS[0] = 1L;
+        for (int i = 1; i < POWERS.length; i++) {
+            POWERS[i] = POWERS[i - 1] * 10L;
+        }
+    }
+
+    /** 
+     * The limit for scaled values handled by the fast path (beyond this the
+     * scaled value does not fit in {@code MAX_LENGTH} bytes).
+     */
+    private static final double LIMIT = 1e18;
+    
+    /** 
+     * A scratch buffer for {@link #format(double, int, StringBuilder)} for 
+     * each thread, so that the method does not allocate. 
+     */
+    private static final ThreadLocal<byte[]> SCRATCH 
+            = ThreadLocal.withInitial(() -> new byte[MAX_LENGTH]);
+    
+    private NumberFormatter() {
+        // no need to instantiate
+    }
+    
+    /**
+     * Checks the number of decimal places.
+     * 
+     * @param decimals  the number of decimal places.
+     */
+    public static void checkDecimals(int decimals) {
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException(
+                    "Requires 'decimals' in the range 0 to " + MAX_DECIMALS);
+        }
+    }
+    
+    /**
+     * Writes {@code value}, rounded to {@code decimals} decimal places, as 
+     * ASCII bytes to {@code dest} starting at {@code offset}.  There must be
+     * at least {@link #MAX_LENGTH} bytes available.  If the value is too 
+     * large for this method, nothing is written and the method returns 
+     * {@code -1} (use {@link #format(double, int, StringBuilder)} instead).
+     * NaN and infinite values (which cannot be represented in PDF) are 
+     * written as {@code 0}.
+     * 
+     * @param value  the value.
+     * @param decimals  the maximum number of decimal places (0 to 
+     *     {@link #MAX_DECIMALS}).
+     * @param dest  the destination array ({@code null} not permitted).
+     * @param offset  the offset into the destination array.
+     * 
+     * @return The offset following the last byte written, or {@code -1}.
+     */
+    public static int format(double value, int decimals, byte[] dest, 
+            int offset) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            dest[offset] = '0';
+            return offset + 1;
+        }
+        long power = POWERS[decimals];
+        double scaledAbs = Math.abs(value) * power;
+        if (scaledAbs >= LIMIT) {
+            return -1;
+        }
+        long scaled = Math.round(scaledAbs);
+        if (scaled == 0L) {
+            dest[offset] = '0';
+            return offset + 1;
+        }
+        int pos = offset;
+        if (value < 0.0) {
+            dest[pos++] = '-';
+        }
+        long intPart = scaled / power;
+        long fraction = scaled % power;
+        int digits = decimals;
+        while (digits > 0 && fraction % 10L == 0L) {
+            fraction /= 10L;
+            digits--;
+        }
+        pos = writeDigits(intPart, 1, dest, pos);
+        if (digits > 0) {
+            dest[pos++] = '.';
+            pos = writeDigits(fraction, digits, dest, pos);
+        }
+        return pos;
+    }
+    
+    /**
+     * Writes the decimal digits for a non-negative value, padded with 
+     * leading zeros to the specified minimum width.
+     * 
+     * @param value  the value (non-negative).
+     * @param width  the minimum number of digits.
+     * @param dest  the destination.
+     * @param offset  the offset.
+     * 
+     * @return The offset following the last digit written.
+     */
+    private static int writeDigits(long value, int width, byte[] dest, 
+            int offset) {
+        int digits = 1;
+        for (long v = value / 10L; v > 0L; v /= 10L) {
+            digits++;
+        }
+        digits = Math.max(digits, width);
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            dest[i] = (byte) ('0' + (int) (value % 10L));
+            value /= 10L;
+        }
+        return offset + digits;
+    }
+
+    /**
+     * Appends {@code value}, rounded to {@code decimals} decimal places, to
+     * a string builder.  NaN and infinite values (which cannot be 
+     * represented in PDF) are written as {@code 0}.
+     * 
+     * @param value  the value.
+     * @param decimals  the maximum number of decimal places (0 to 
+     *     {@link #MAX_DECIMALS}).
+     * @param b  the string builder ({@code null} not permitted).
+     * 
+     * @return The string builder.
+     */
+    public static StringBuilder format(double value, int decimals, 
+            StringBuilder b) {
+        byte[] bytes = SCRATCH.get();
+        int end = format(value, decimals, bytes, 0);
+        if (end < 0) {
+            return b.append(new BigDecimal(value).setScale(decimals, 
+                    RoundingMode.HALF_UP).stripTrailingZeros()
+                    .toPlainString());
+        }
+        for (int i = 0; i < end; i++) {
+            b.append((char) bytes[i]);
+        }
+        return b;
+    }
+    
+    /**
+     * Returns {@code value}, rounded to {@code decimals} decimal places, as
+     * a string.
+     * 
+     * @param value  the value.
+     * @param decimals  the maximum number of decimal places (0 to 
+     *     {@link #MAX_DECIMALS}).
+     * 
+     * @return The string.
+     */
+    public static String toString(double value, int decimals) {
+        return format(value, decimals, new StringBuilder()).toString();
+    }
+
+}
@@ -80,14 +80,17 @@ public class RadialGradientPaintKey {
         if (obj == this) {
             return true;
         }
-        if (! (obj instanceof RadialGradientPaint)) {
+        if (! (obj instanceof RadialGradientPaintKey)) {
             return false;
         }
-        RadialGradientPaint that = (RadialGradientPaint) obj;
+        RadialGradientPaint that = ((RadialGradientPaintKey) obj).paint;
         if (!this.paint.getCenterPoint().equals(that.getCenterPoint())) {
             return false;
         }
-        if (!this.paint.getFocusPoint().equals(that.getCenterPoint())) {
+        if (!this.paint.getFocusPoint().equals(that.getFocusPoint())) {
+            return false;
+        }
+        if (this.paint.getRadius() != that.getRadius()) {
             return false;
         }
         if (!Arrays.equals(this.paint.getColors(), that.getColors())) {
@@ -0,0 +1,1180 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+package com.orsonpdf;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.Polygon;
+import java.awt.RadialGradientPaint;
+import java.awt.Rectangle;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.imageio.ImageIO;
+import com.orsonpdf.filter.ASCII85Filter;
+import com.orsonpdf.filter.Filter;
+import com.orsonpdf.filter.FilterType;
+import com.orsonpdf.filter.FlateFilter;
+import com.orsonpdf.filter.ParallelFlateFilter;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Some tests for the {@link PDFDocument} class.
+ */
+public class TestPDFDocument {
+
+    private static String toString(byte[] bytes) {
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * In streaming mode each page is written when the next page is created,
+     * and the structure is written when the document is closed.
+     */
+    @Test
+    public void checkStreamingMode() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PDFDocument doc = new PDFDocument(out);
+        assertTrue(doc.isStreamingMode());
+        Page page1 = doc.createPage(new Rectangle(0, 0, 300, 200));
+        page1.getGraphics2D().setColor(Color.RED);
+        page1.getGraphics2D().fillRect(10, 10, 50, 50);
+        assertEquals(0, out.size());
+        Page page2 = doc.createPage(new Rectangle(0, 0, 300, 200));
+        assertTrue(page1.isFinished());
+        assertFalse(page2.isFinished());
+        assertTrue(out.size() > 0);
+        assertThrows(IllegalStateException.class, 
+                () -> page1.getGraphics2D());
+        page2.getGraphics2D().drawLine(0, 0, 10, 10);
+        doc.close();
+        assertTrue(page2.isFinished());
+        String pdf = toString(out.toByteArray());
+        assertTrue(pdf.startsWith("%PDF-1.4"));
+        assertTrue(pdf.contains("/Kids [5 0 R 7 0 R]"));
+        assertTrue(pdf.endsWith("%%EOF"));
+        assertThrows(IllegalStateException.class, 
+                () -> doc.createPage(new Rectangle(0, 0, 300, 200)));
+    }
+
+    /**
+     * The cross-reference offsets written in streaming mode should point at
+     * the corresponding objects.
+     */
+    @Test
+    public void checkStreamingModeXref() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PDFDocument doc = new PDFDocument(out);
+        for (int i = 0; i < 3; i++) {
+            Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+            page.getGraphics2D().drawString("Page " + i, 10, 20);
+        }
+        doc.close();
+        String pdf = toString(out.toByteArray());
+        int xref = pdf.lastIndexOf("xref\n0 ");
+        String[] lines = pdf.substring(xref).split("\n");
+        int count = Integer.parseInt(lines[1].split(" ")[1]);
+        for (int i = 1; i < count; i++) {
+            int offset = Integer.parseInt(lines[2 + i].substring(0, 10));
+            assertTrue(pdf.startsWith(i + " 0 obj\n", offset));
+        }
+    }
+
+    /**
+     * With indirect stream lengths, each stream refers to a length object 
+     * that is allocated once and reused when the document is written again.
+     */
+    @Test
+    public void checkIndirectStreamLength() {
+        PDFDocument doc = new PDFDocument();
+        doc.setIndirectStreamLength(true);
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        page.getGraphics2D().fillRect(10, 10, 50, 50);
+        String pdf1 = toString(doc.getPDFBytes());
+        assertTrue(pdf1.contains("/Length 7 0 R"));
+        int start = pdf1.indexOf("stream\n") + 7;
+        int end = pdf1.indexOf("endstream\n");
+        assertTrue(pdf1.contains("7 0 obj\n" + (end - start) + "\nendobj\n"));
+        String pdf2 = toString(doc.getPDFBytes());
+        assertEquals(pdf1, pdf2);
+    }
+
+    /**
+     * Encoding the streams on an executor must not change the output.
+     */
+    @Test
+    public void checkCompressionExecutor() {
+        PDFDocument doc = new PDFDocument();
+        for (int i = 0; i < 5; i++) {
+            Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+            page.getGraphics2D().drawString("Page " + i, 10, 20);
+            page.getGraphics2D().fillOval(50, 50, 100, 80);
+        }
+        byte[] serial = doc.getPDFBytes();
+        doc.setCompressionExecutor(ForkJoinPool.commonPool());
+        assertArrayEquals(serial, doc.getPDFBytes());
+        // with a parallelism of 1, at most 2 streams are encoded ahead
+        ForkJoinPool pool = new ForkJoinPool(1);
+        doc.setCompressionExecutor(pool);
+        assertArrayEquals(serial, doc.getPDFBytes());
+        pool.shutdown();
+    }
+
+    /**
+     * With a compressed structure the non-stream objects go into object 
+     * streams and the cross-reference table is a stream.  Writing the 
+     * document again gives the same result.
+     */
+    @Test
+    public void checkCompressedStructure() {
+        PDFDocument doc = new PDFDocument();
+        doc.setCompressedStructure(true);
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        page.getGraphics2D().drawString("Hello", 10, 20);
+        String pdf = toString(doc.getPDFBytes());
+        assertTrue(pdf.startsWith("%PDF-1.5"));
+        assertTrue(pdf.contains("/Type /ObjStm"));
+        assertFalse(pdf.contains("/Type /Catalog"));
+        assertFalse(pdf.contains("\ntrailer\n"));
+        int startxref = pdf.lastIndexOf("startxref\n") + 10;
+        int xref = Integer.parseInt(pdf.substring(startxref, 
+                pdf.indexOf('\n', startxref)));
+        String xrefObject = pdf.substring(xref, pdf.indexOf("stream\n", xref));
+        assertTrue(xrefObject.matches("(?s)\\d+ 0 obj\n.*/Type /XRef.*"));
+        assertEquals(pdf, toString(doc.getPDFBytes()));
+    }
+
+    /**
+     * Each entry in the cross-reference stream (decoded with the field 
+     * widths in /W) points to the right object: in-use entries give the
+     * offset of the object in the file, and compressed entries give an 
+     * object stream and an index whose header lists the same object number.
+     */
+    @Test
+    public void checkCrossReferenceStreamEntries() throws DataFormatException {
+        PDFDocument doc = new PDFDocument();
+        doc.setCompressedStructure(true);
+        for (int i = 0; i < 3; i++) {
+            Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+            page.getGraphics2D().drawString("Page " + i, 10, 20);
+            page.getGraphics2D().setPaint(new GradientPaint(0, 0, Color.RED,
+                    100, 0, Color.BLUE));
+            page.getGraphics2D().fillRect(10, 30, 100, 50);
+        }
+        String pdf = toString(doc.getPDFBytes());
+        int startxref = pdf.lastIndexOf("startxref\n") + 10;
+        int xref = Integer.parseInt(pdf.substring(startxref, 
+                pdf.indexOf('\n', startxref)));
+        String dict = pdf.substring(xref, pdf.indexOf("stream\n", xref));
+        Matcher m = Pattern.compile("/W \\[(\\d+) (\\d+) (\\d+)\\]")
+                .matcher(dict);
+        assertTrue(m.find());
+        int[] w = { Integer.parseInt(m.group(1)), 
+                Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)) };
+        int size = intValue(dict, "/Size");
+        assertTrue(dict.contains("/Predictor 12"));
+        int columns = w[0] + w[1] + w[2];
+        byte[] rows = decodeStream(pdf, xref);
+        assertEquals(size * (columns + 1), rows.length);
+        
+        // undo the 'Up' predictor and read the fields
+        long[][] entries = new long[size][3];
+        byte[] row = new byte[columns];
+        for (int i = 0; i < size; i++) {
+            int p = i * (columns + 1);
+            assertEquals(2, rows[p]);
+            for (int j = 0; j < columns; j++) {
+                row[j] += rows[p + 1 + j];
+            }
+            for (int f = 0, j = 0; f < 3; f++) {
+                for (int k = 0; k < w[f]; k++) {
+                    entries[i][f] = entries[i][f] << 8 | (row[j++] & 0xFF);
+                }
+            }
+        }
+        assertEquals(0, entries[0][0]);
+        assertEquals(65535, entries[0][2]);
+        
+        Map<Long, String[]> objectStreams = new HashMap<Long, String[]>();
+        int compressed = 0;
+        for (int i = 1; i < size; i++) {
+            if (entries[i][0] == 1) {
+                assertTrue(pdf.startsWith(i + " 0 obj\n", 
+                        (int) entries[i][1]), "object " + i);
+                assertEquals(0, entries[i][2]);
+            } else {
+                assertEquals(2, entries[i][0]);
+                compressed++;
+                long n = entries[i][1];
+                assertEquals(1, entries[(int) n][0]);
+                String[] objects = objectStreams.get(n);
+                if (objects == null) {
+                    objects = readObjectStream(pdf, (int) entries[(int) n][1]);
+                    objectStreams.put(n, objects);
+                }
+                int index = (int) entries[i][2];
+                assertEquals(String.valueOf(i), objects[index * 2]);
+                assertTrue(objects[index * 2 + 1].startsWith("<<"));
+            }
+        }
+        assertTrue(compressed > 3);
+        assertFalse(objectStreams.isEmpty());
+        assertEquals(xref, entries[size - 1][1]);
+        
+        // the trailer references resolve to the catalog and info objects
+        int root = Integer.parseInt(dict.replaceAll("(?s).*/Root (\\d+) 0 R.*", 
+                "$1"));
+        String[] objects = objectStreams.get(entries[root][1]);
+        assertTrue(objects[(int) entries[root][2] * 2 + 1].startsWith(
+                "<< /Type /Catalog"));
+        int info = Integer.parseInt(dict.replaceAll("(?s).*/Info (\\d+) 0 R.*", 
+                "$1"));
+        objects = objectStreams.get(entries[info][1]);
+        assertTrue(objects[(int) entries[info][2] * 2 + 1].startsWith(
+                "<< /Type /Info"));
+    }
+
+    /**
+     * The content filter can be configured per document, and pooled 
+     * deflaters give the same result each time they are reused.
+     */
+    @Test
+    public void checkContentFlateFilter() throws DataFormatException {
+        PDFDocument doc = new PDFDocument();
+        doc.setContentFlateFilter(new FlateFilter(Deflater.NO_COMPRESSION));
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        page.getGraphics2D().fillRect(10, 10, 50, 50);
+        byte[] raw = ((Stream) page.getContents()).getRawStreamData();
+        assertTrue(toString(doc.getPDFBytes()).contains(toString(raw)));
+        
+        FlateFilter filter = new FlateFilter(Deflater.BEST_SPEED, 
+                Deflater.FILTERED);
+        byte[] encoded = filter.encode(raw);
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(encoded, filter.encode(raw));
+        }
+        Inflater inflater = new Inflater();
+        inflater.setInput(encoded);
+        byte[] decoded = new byte[raw.length];
+        assertEquals(raw.length, inflater.inflate(decoded));
+        assertArrayEquals(raw, decoded);
+    }
+
+    /**
+     * A chain of filters applied to a stream gives the same bytes as 
+     * encoding the data with each filter in turn, and a filter that only 
+     * implements {@code encode()} can be used in the chain.
+     */
+    @Test
+    public void checkFilterChain() throws IOException {
+        PDFDocument doc = new PDFDocument();
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        for (int i = 0; i < 500; i++) {
+            page.getGraphics2D().drawLine(i % 300, i % 200, i % 7, i % 13);
+        }
+        Stream stream = (Stream) page.getContents();
+        byte[] raw = stream.getRawStreamData();
+        Filter flate = new FlateFilter();
+        Filter ascii85 = new ASCII85Filter();
+        Filter encodeOnly = new Filter() {
+            @Override
+            public FilterType getFilterType() {
+                return FilterType.ASCII85;
+            }
+            @Override
+            public byte[] encode(byte[] source) {
+                return ascii85.encode(source);
+            }
+        };
+        for (Filter f : new Filter[] { flate, ascii85, encodeOnly }) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (OutputStream out = f.wrap(baos)) {
+                out.write(raw, 0, 100);
+                out.write(raw, 100, raw.length - 100);
+            }
+            assertArrayEquals(f.encode(raw), baos.toByteArray());
+        }
+        
+        byte[] expected = ascii85.encode(flate.encode(raw));
+        stream.removeFilters();
+        stream.addFilter(flate);
+        stream.addFilter(ascii85);
+        assertArrayEquals(expected, stream.getEncodedStreamData());
+        stream.removeFilters();
+        stream.addFilter(flate);
+        stream.addFilter(encodeOnly);
+        assertArrayEquals(expected, stream.getEncodedStreamData());
+        
+        expected = flate.encode(ascii85.encode(flate.encode(raw)));
+        stream.removeFilters();
+        stream.addFilter(flate);
+        stream.addFilter(encodeOnly);
+        stream.addFilter(flate);
+        assertArrayEquals(expected, stream.getEncodedStreamData());
+        assertTrue(toString(stream.getObjectBytes()).startsWith(
+                "<< /Filter [/FlateDecode /ASCII85Decode /FlateDecode]"));
+    }
+
+    /**
+     * A content stream compressed in parallel blocks decodes to the 
+     * original content.
+     */
+    @Test
+    public void checkParallelFlateFilter() throws DataFormatException {
+        PDFDocument doc = new PDFDocument();
+        doc.setContentFlateFilter(new ParallelFlateFilter(
+                ForkJoinPool.commonPool(), Deflater.DEFAULT_COMPRESSION, 
+                32 * 1024, 0));
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        for (int i = 0; i < 10000; i++) {
+            page.getGraphics2D().drawLine(i % 300, i % 200, i % 7, i % 13);
+        }
+        byte[] raw = ((Stream) page.getContents()).getRawStreamData();
+        assertTrue(raw.length > 4 * 32 * 1024);
+        byte[] encoded = doc.getContentFlateFilter().encode(raw);
+        Inflater inflater = new Inflater();
+        inflater.setInput(encoded);
+        byte[] decoded = new byte[raw.length];
+        assertEquals(raw.length, inflater.inflate(decoded));
+        assertTrue(inflater.finished());
+        assertArrayEquals(raw, decoded);
+        assertTrue(toString(doc.getPDFBytes()).endsWith("%%EOF"));
+    }
+
+    /**
+     * Graphics state changes are only written when a drawing operation
+     * needs them, and redundant changes are not written at all.
+     */
+    @Test
+    public void checkLazyGraphicsState() {
+        PDFDocument doc = new PDFDocument();
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        Graphics2D g2 = page.getGraphics2D();
+        for (int i = 0; i < 10; i++) {
+            g2.setColor(Color.RED);
+            g2.setColor(Color.BLUE);
+            g2.setStroke(new BasicStroke(i));
+            g2.setStroke(new BasicStroke(2f));
+            g2.drawLine(i, 0, i, 100);
+        }
+        g2.fillRect(10, 10, 50, 50);
+        g2.setColor(Color.BLUE);
+        g2.fillRect(20, 20, 50, 50);
+        String content = toString(
+                ((Stream) page.getContents()).getRawStreamData());
+        assertEquals(1, count(content, " RG\n"));
+        assertEquals(1, count(content, " rg\n"));
+        assertEquals(1, count(content, " w\n"));
+        assertFalse(content.contains("1 0 0 RG"));
+        assertEquals(10, count(content, "S\n"));
+    }
+
+    /**
+     * Transform changes are written as a single 'cm' operator relative to
+     * the base state when the next drawing operation needs them, and the
+     * 'q' and 'Q' operators in the content stream are balanced.
+     */
+    @Test
+    public void checkLazyTransform() {
+        PDFDocument doc = new PDFDocument();
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        Graphics2D g2 = page.getGraphics2D();
+        g2.rotate(Math.PI / 6, 100, 100);
+        g2.translate(10, 20);
+        g2.scale(2.0, 2.0);
+        g2.drawString("A", 10, 10);
+        g2.drawString("B", 10, 30);
+        g2.setTransform(null);
+        g2.fillRect(10, 10, 50, 50);
+        String content = toString(
+                ((Stream) page.getContents()).getRawStreamData());
+        // two for the initial y-flip, one for the rotated text
+        assertEquals(3, count(content, " cm\n"));
+        assertEquals(1, count(content, "q\n"));
+        assertEquals(1, count(content, "Q\n"));
+        assertTrue(content.indexOf("Q\n") < content.lastIndexOf("f\n"));
+    }
+
+    /**
+     * A child graphics saves the state with 'q' and restores it with 'Q'
+     * when disposed, writes nothing at all if it draws nothing, and the
+     * parent keeps its own attributes when drawing while the child is open.
+     */
+    @Test
+    public void checkCreateAndDispose() {
+        PDFDocument doc = new PDFDocument();
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        Graphics2D g2 = page.getGraphics2D();
+        g2.setColor(Color.RED);
+        g2.fillRect(0, 0, 10, 10);
+        Stream contents = (Stream) page.getContents();
+        int size = contents.getRawStreamData().length;
+        for (int i = 0; i < 100; i++) {
+            Graphics2D child = (Graphics2D) g2.create();
+            child.translate(10, 10);
+            child.setColor(Color.BLUE);
+            child.dispose();
+        }
+        assertEquals(size, contents.getRawStreamData().length);
+
+        Graphics2D child = (Graphics2D) g2.create();
+        child.setColor(Color.BLUE);
+        child.translate(10, 10);
+        child.fillRect(0, 0, 10, 10);
+        g2.fillRect(20, 20, 10, 10);
+        Graphics2D grandchild = (Graphics2D) child.create();
+        grandchild.fillRect(0, 0, 10, 10);
+        child.dispose();
+        grandchild.dispose();
+        g2.fillRect(40, 40, 10, 10);
+        String content = toString(contents.getRawStreamData());
+        assertEquals(count(content, "q\n"), count(content, "Q\n"));
+        assertEquals(1, count(content, "1 0 0 rg\n"));
+        assertEquals(2, count(content, "0 0 1 rg\n"));
+        assertTrue(content.endsWith("Q\n40 40 10 10 re\nf\n"));
+    }
+
+    /**
+     * Finalizing a child graphics that was never disposed writes nothing 
+     * (the finalizer runs on another thread at an unpredictable time), and
+     * the level it left open is closed when the content is written.
+     */
+    @Test
+    public void checkFinalizeDoesNotDispose() {
+        PDFDocument doc = new PDFDocument();
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        Graphics2D g2 = page.getGraphics2D();
+        PDFGraphics2D child = (PDFGraphics2D) g2.create();
+        child.setColor(Color.BLUE);
+        child.fillRect(0, 0, 10, 10);
+        Stream contents = (Stream) page.getContents();
+        String before = toString(contents.getRawStreamData());
+        child.finalize();
+        assertEquals(before, toString(contents.getRawStreamData()));
+        assertEquals(count(before, "q\n"), count(before, "Q\n"));
+        g2.fillRect(20, 20, 10, 10);
+        String after = toString(contents.getRawStreamData());
+        assertTrue(after.endsWith("20 20 10 10 re\nf\nQ\n"));
+        assertEquals(count(after, "q\n"), count(after, "Q\n"));
+    }
+
+    /**
+     * The clip is written once and stays in effect for consecutive drawing
+     * operations, and is removed (not intersected) when it changes.
+     */
+    @Test
+    public void checkClipKeptOpen() {
+        PDFDocument doc = new PDFDocument();
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        Graphics2D g2 = page.getGraphics2D();
+        g2.setClip(new Rectangle(10, 10, 100, 100));
+        for (int i = 0; i < 100; i++) {
+            g2.fillRect(i, i, 5, 5);
+            g2.drawString("A", i, i);
+        }
+        g2.setClip(new Rectangle(50, 50, 100, 100));
+        g2.fillRect(60, 60, 5, 5);
+        g2.setClip(null);
+        g2.fillRect(0, 0, 5, 5);
+        String content = toString(
+                ((Stream) page.getContents()).getRawStreamData());
+        assertEquals(2, count(content, "W n\n"));
+        assertEquals(2, count(content, "q\n"));
+        assertEquals(2, count(content, "Q\n"));
+        assertTrue(content.endsWith("Q\n1 1 1 rg\n0 0 5 5 re\nf\n"));
+    }
+
+    /**
+     * Rectangles are written with the 're' operator, polygons directly from
+     * the point arrays, and the winding rule decides the fill operator.
+     */
+    @Test
+    public void checkShapeOperators() {
+        PDFDocument doc = new PDFDocument();
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        Graphics2D g2 = page.getGraphics2D();
+        g2.fillRect(10, 20, 30, 40);
+        g2.drawRect(1, 2, 3, 4);
+        g2.fillRect(10, 20, -30, 40);
+        g2.fillPolygon(new int[] {1, 2, 3}, new int[] {4, 5, 6}, 3);
+        g2.drawPolyline(new int[] {1, 2, 3}, new int[] {4, 5, 6}, 3);
+        Path2D path = new Path2D.Double(Path2D.WIND_EVEN_ODD);
+        path.moveTo(0, 0);
+        path.lineTo(10, 0);
+        path.lineTo(5, 5);
+        path.closePath();
+        g2.fill(path);
+        String content = toString(
+                ((Stream) page.getContents()).getRawStreamData());
+        assertTrue(content.contains("10 20 30 40 re\nf\n"));
+        assertTrue(content.contains("1 2 3 4 re\nS\n"));
+        assertEquals(2, count(content, " re\n"));
+        assertTrue(content.contains("1 4 m\n2 5 l\n3 6 l\nh\nf*\n"));
+        assertTrue(content.contains("1 4 m\n2 5 l\n3 6 l\nS\n"));
+        assertTrue(content.endsWith("0 0 m\n10 0 l\n5 5 l\nh\nf*\n"));
+    }
+
+    /**
+     * With the path simplification hint, a dense path is written with fewer
+     * line segments (keeping the end points) and the page statistics report
+     * the segments dropped.
+     */
+    @Test
+    public void checkPathSimplification() {
+        PDFDocument doc = new PDFDocument();
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        Graphics2D g2 = page.getGraphics2D();
+        Path2D path = new Path2D.Double();
+        path.moveTo(0, 100);
+        for (int i = 1; i <= 1000; i++) {
+            path.lineTo(i * 0.1, 100 + (i % 2) * 0.01);
+        }
+        g2.draw(path);
+        assertEquals(0, page.getStatistics().getDroppedSegmentCount());
+        String content = toString(
+                ((Stream) page.getContents()).getRawStreamData());
+        assertEquals(1000, count(content, " l\n"));
+
+        page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        g2 = page.getGraphics2D();
+        g2.setRenderingHint(PDFHints.KEY_PATH_SIMPLIFICATION, 0.5);
+        g2.draw(path);
+        g2.drawLine(0, 0, 10, 10);
+        PageStatistics stats = page.getStatistics();
+        assertEquals(1000, stats.getSimplifiedSegmentCount());
+        assertEquals(999, stats.getDroppedSegmentCount());
+        content = toString(((Stream) page.getContents()).getRawStreamData());
+        assertTrue(content.contains("0 100 m\n100 100 l\nS\n"));
+    }
+
+    /**
+     * Shapes, strings and images that are completely outside the page or the
+     * clip are skipped (and counted), allowing for the stroke width.
+     */
+    @Test
+    public void checkCulling() {
+        PDFDocument doc = new PDFDocument();
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        Graphics2D g2 = page.getGraphics2D();
+        g2.fillRect(400, 20, 30, 40);
+        g2.drawLine(10, -50, 20, -40);
+        g2.drawPolyline(new int[] {-30, -20}, new int[] {5, 6}, 2);
+        g2.drawString("Hidden", 1000f, 50f);
+        g2.drawImage(new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB), 
+                10, 500, null);
+        g2.setStroke(new BasicStroke(20f));
+        g2.drawLine(-5, 10, -5, 20);
+        g2.setClip(0, 0, 50, 50);
+        g2.fillRect(60, 10, 5, 5);
+        g2.translate(100, 0);
+        g2.fillRect(-90, 10, 5, 5);
+        PageStatistics stats = page.getStatistics();
+        assertEquals(4, stats.getCulledShapeCount());
+        assertEquals(1, stats.getCulledStringCount());
+        assertEquals(1, stats.getCulledImageCount());
+        String content = toString(
+                ((Stream) page.getContents()).getRawStreamData());
+        assertFalse(content.contains("Hidden"));
+        assertFalse(content.contains("Do\n"));
+        assertTrue(content.contains("-5 10 m\n-5 20 l\nS\n"));
+        assertTrue(content.contains("-90 10 5 5 re\nf\n"));
+    }
+
+    /**
+     * With the shape reuse hint, a shape drawn repeatedly at different 
+     * locations is written once as a form XObject and then drawn by 
+     * reference.
+     */
+    @Test
+    public void checkShapeReuse() {
+        PDFDocument doc = new PDFDocument();
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        Graphics2D g2 = page.getGraphics2D();
+        g2.setRenderingHint(PDFHints.KEY_SHAPE_REUSE, 2);
+        for (int i = 0; i < 10; i++) {
+            g2.fill(new Ellipse2D.Double(i * 10.5, 20, 6, 6));
+        }
+        g2.draw(new Ellipse2D.Double(100, 100, 6, 6));
+        g2.fill(new Rectangle2D.Double(100, 100, 6, 6));
+        assertEquals(9, page.getStatistics().getReusedShapeCount());
+        String content = toString(
+                ((Stream) page.getContents()).getRawStreamData());
+        // the first filled ellipse and the outline are written in full
+        assertEquals(8, count(content, " c\n"));
+        assertEquals(9, count(content, " cm /Fm1 Do Q\n"));
+        assertTrue(content.contains("q 1 0 0 1 100.5 23 cm /Fm1 Do Q\n"));
+        assertFalse(content.contains("/Fm2"));
+        String pdf = new String(doc.getPDFBytes(), StandardCharsets.US_ASCII);
+        assertTrue(pdf.contains("/Subtype /Form"));
+    }
+
+    /**
+     * In debug mode the form XObjects, like the page content, are not 
+     * compressed.
+     */
+    @Test
+    public void checkShapeReuseDebugMode() {
+        PDFDocument doc = new PDFDocument();
+        doc.setDebugMode(true);
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        Graphics2D g2 = page.getGraphics2D();
+        g2.setRenderingHint(PDFHints.KEY_SHAPE_REUSE, 2);
+        for (int i = 0; i < 3; i++) {
+            g2.fill(new Ellipse2D.Double(i * 10.5, 20, 6, 6));
+        }
+        String pdf = new String(doc.getPDFBytes(), StandardCharsets.US_ASCII);
+        assertTrue(pdf.contains("/Subtype /Form"));
+        assertFalse(pdf.contains("/FlateDecode"));
+    }
+
+    /**
+     * The bulk methods write each batch as a single path (or as references
+     * to a single form XObject for markers), skipping items outside the 
+     * page.
+     */
+    @Test
+    public void checkBulkPrimitives() {
+        PDFDocument doc = new PDFDocument();
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        PDFGraphics2D g2 = page.getGraphics2D();
+        g2.fillRects(new double[] {1, 2, 3, 4, 5, 6, -7, 8, 500, 0, 1, 1, 
+                10, 20, 30.5, 40});
+        g2.drawLines(new double[] {0, 0, 10, 10, -50, -50, -40, -40});
+        PolylineBuilder polyline = new PolylineBuilder(2);
+        polyline.add(1, 1).add(2, 3).add(4, 5.25);
+        g2.drawPolyline(polyline);
+        g2.fillMarkers(new Ellipse2D.Double(-2, -2, 4, 4), 
+                new double[] {50, 60, 1000}, new double[] {50, 60, 50}, 3);
+        assertEquals(3, page.getStatistics().getCulledShapeCount());
+        assertEquals(2, page.getStatistics().getReusedShapeCount());
+        String content = toString(
+                ((Stream) page.getContents()).getRawStreamData());
+        assertTrue(content.contains("1 2 3 4 re\n10 20 30.5 40 re\nf\n"));
+        assertTrue(content.contains("0 0 m\n10 10 l\nS\n"));
+        assertTrue(content.contains("1 1 m\n2 3 l\n4 5.25 l\nS\n"));
+        assertTrue(content.contains("q 1 0 0 1 52 50 cm /Fm1 Do Q\n"
+                + "q 1 0 0 1 62 60 cm /Fm1 Do Q\n"));
+    }
+
+    /**
+     * With a translucent paint the bulk primitives paint each item 
+     * separately (so that overlaps are composited as with separate calls), 
+     * as do markers with the even-odd winding rule that are not drawn by
+     * reference to a form XObject.
+     */
+    @Test
+    public void checkBulkPrimitivesPaintSeparately() {
+        PDFDocument doc = new PDFDocument();
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        PDFGraphics2D g2 = page.getGraphics2D();
+        g2.setColor(new Color(255, 0, 0, 128));
+        g2.fillRects(new double[] {0, 0, 10, 10, 5, 5, 10, 10});
+        g2.drawLines(new double[] {0, 0, 10, 10, 0, 10, 10, 0});
+        g2.setPaint(new GradientPaint(0f, 0f, Color.RED, 100f, 0f, 
+                Color.BLUE));
+        Polygon triangle = new Polygon(new int[] {0, 4, -4}, 
+                new int[] {-4, 4, 4}, 3);
+        g2.fillMarkers(triangle, new double[] {50, 52}, 
+                new double[] {50, 51}, 2);
+        String content = toString(
+                ((Stream) page.getContents()).getRawStreamData());
+        assertTrue(content.contains("0 0 10 10 re\nf\n5 5 10 10 re\nf\n"));
+        assertTrue(content.contains(
+                "0 0 m\n10 10 l\nS\n0 10 m\n10 0 l\nS\n"));
+        assertEquals(2, count(content, "f*\n"));
+    }
+
+    /**
+     * Pages using the same gradients and alpha share the same function, 
+     * shading, pattern and graphics state dictionary objects.
+     */
+    @Test
+    public void checkSharedResources() {
+        PDFDocument doc = new PDFDocument();
+        for (int i = 0; i < 3; i++) {
+            Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+            Graphics2D g2 = page.getGraphics2D();
+            g2.setPaint(new GradientPaint(0f, 0f, Color.RED, 100f, 0f, 
+                    Color.BLUE));
+            g2.fillRect(0, 0, 100, 100);
+            g2.setPaint(new RadialGradientPaint(50f, 50f, 50f, 
+                    new float[] {0f, 0.5f, 1f}, 
+                    new Color[] {Color.RED, Color.WHITE, Color.BLUE}));
+            g2.fillRect(0, 0, 100, 100);
+            g2.setComposite(AlphaComposite.getInstance(
+                    AlphaComposite.SRC_OVER, 0.5f));
+            g2.fillRect(0, 0, 100, 100);
+        }
+        String pdf = new String(doc.getPDFBytes(), StandardCharsets.US_ASCII);
+        assertEquals(3, count(pdf, "/P1 "));
+        assertEquals(2, count(pdf, "/PatternType"));
+        assertEquals(2, count(pdf, "/ShadingType"));
+        // red-blue, red-white, white-blue and the stitching function
+        assertEquals(4, count(pdf, "/FunctionType"));
+        assertEquals(1, count(pdf, "/Type /ExtGState"));
+    }
+
+    /**
+     * An image drawn on several pages (or a copy with the same pixels) is 
+     * written to the document once.
+     */
+    @Test
+    public void checkImageDeduplication() {
+        BufferedImage img = new BufferedImage(4, 3, 
+                BufferedImage.TYPE_INT_ARGB);
+        img.setRGB(1, 1, 0x80FF0000);
+        BufferedImage copy = new BufferedImage(4, 3, 
+                BufferedImage.TYPE_INT_ARGB);
+        copy.setRGB(1, 1, 0x80FF0000);
+        BufferedImage other = new BufferedImage(4, 3, 
+                BufferedImage.TYPE_INT_ARGB);
+        PDFDocument doc = new PDFDocument();
+        for (int i = 0; i < 3; i++) {
+            Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+            Graphics2D g2 = page.getGraphics2D();
+            g2.drawImage(img, 10, 10, null);
+            g2.drawImage(img, 20, 10, null);
+            g2.drawImage(copy, 30, 10, null);
+        }
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        page.getGraphics2D().drawImage(other, 10, 10, null);
+        String pdf = new String(doc.getPDFBytes(), StandardCharsets.US_ASCII);
+        // one image and its soft mask, plus the other image and its mask
+        assertEquals(4, count(pdf, "/Subtype /Image"));
+        assertEquals(4, count(pdf, "/XObject << /Image0 "));
+    }
+
+    /**
+     * An image that is modified after it is drawn (and drawn again) is 
+     * written with the pixels it had each time it was drawn.
+     */
+    @Test
+    public void checkModifiedImage() {
+        BufferedImage img = new BufferedImage(4, 3, 
+                BufferedImage.TYPE_INT_RGB);
+        Graphics2D ig2 = img.createGraphics();
+        PDFDocument doc = new PDFDocument();
+        doc.setImageFlateFilter(new FlateFilter(Deflater.NO_COMPRESSION));
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        Graphics2D g2 = page.getGraphics2D();
+        ig2.setColor(Color.RED);
+        ig2.fillRect(0, 0, 4, 3);
+        g2.drawImage(img, 10, 10, null);
+        ig2.setColor(Color.BLUE);
+        ig2.fillRect(0, 0, 4, 3);
+        g2.drawImage(img, 20, 10, null);
+        ig2.setColor(Color.RED);
+        ig2.fillRect(0, 0, 4, 3);
+        g2.drawImage(img, 30, 10, null);
+        ig2.setColor(Color.GREEN);
+        ig2.fillRect(0, 0, 4, 3);
+        ig2.dispose();
+        String pdf = toString(doc.getPDFBytes());
+        assertEquals(2, count(pdf, "/Subtype /Image"));
+        StringBuilder red = new StringBuilder();
+        StringBuilder blue = new StringBuilder();
+        StringBuilder green = new StringBuilder();
+        for (int i = 0; i < 12; i++) {
+            red.append("\u00ff\u0000\u0000");
+            blue.append("\u0000\u0000\u00ff");
+            green.append("\u0000\u00ff\u0000");
+        }
+        assertTrue(pdf.contains(red));
+        assertTrue(pdf.contains(blue));
+        assertFalse(pdf.contains(green));
+    }
+
+    /**
+     * The image data read directly from the data buffer for the common 
+     * image types (including a sub-image) should match the data read via 
+     * {@code getRGB()}, and an image and its soft mask that share a raster
+     * should get the same data as when they are read separately.
+     */
+    @Test
+    public void checkImageRasterFastPaths() {
+        int[] types = { BufferedImage.TYPE_INT_RGB, 
+                BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_3BYTE_BGR, 
+                BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_BYTE_GRAY, 
+                BufferedImage.TYPE_INT_ARGB_PRE, 
+                BufferedImage.TYPE_USHORT_565_RGB };
+        for (int type : types) {
+            BufferedImage img = new BufferedImage(7, 5, type);
+            for (int y = 0; y < 5; y++) {
+                for (int x = 0; x < 7; x++) {
+                    img.setRGB(x, y, (x * 40) << 24 | (y * 50) << 16 
+                            | (x * 30) << 8 | (x + y) * 20);
+                }
+            }
+            for (BufferedImage bi : new BufferedImage[] { img, 
+                    img.getSubimage(2, 1, 4, 3) }) {
+                int w = bi.getWidth();
+                int h = bi.getHeight();
+                byte[] rgb = new byte[w * h * 3];
+                byte[] alpha = new byte[w * h];
+                int i = 0;
+                for (int y = h - 1; y >= 0; y--) {
+                    for (int x = 0; x < w; x++) {
+                        int argb = bi.getRGB(x, y);
+                        rgb[i * 3] = (byte) (argb >> 16);
+                        rgb[i * 3 + 1] = (byte) (argb >> 8);
+                        rgb[i * 3 + 2] = (byte) argb;
+                        alpha[i++] = (byte) (argb >> 24);
+                    }
+                }
+                assertArrayEquals(rgb, 
+                        new PDFImage(1, bi, null).getRawStreamData());
+                assertArrayEquals(alpha, 
+                        new PDFSoftMaskImage(2, bi).getRawStreamData());
+                
+                ImageRaster raster = new ImageRaster(bi);
+                PDFSoftMaskImage mask = new PDFSoftMaskImage(3, raster);
+                PDFImage image = new PDFImage(4, raster, "3 0 R");
+                assertArrayEquals(rgb, image.getRawStreamData());
+                assertArrayEquals(alpha, mask.getRawStreamData());
+                // a second read does not rely on the kept plane
+                assertArrayEquals(alpha, mask.getRawStreamData());
+            }
+        }
+    }
+    
+    /**
+     * An opaque image is written without a mask, an image with only fully
+     * transparent and fully opaque pixels gets a 1-bit stencil mask, and 
+     * only an image with translucent pixels gets a soft mask.
+     */
+    @Test
+    public void checkImageMasks() {
+        BufferedImage rgb = new BufferedImage(4, 3, 
+                BufferedImage.TYPE_INT_RGB);
+        BufferedImage opaque = new BufferedImage(4, 3, 
+                BufferedImage.TYPE_INT_ARGB);
+        opaque.getGraphics().fillRect(0, 0, 4, 3);
+        opaque.setRGB(1, 1, 0xFFFF0000);
+        BufferedImage binary = new BufferedImage(10, 3, 
+                BufferedImage.TYPE_4BYTE_ABGR);
+        binary.getGraphics().fillRect(0, 0, 10, 3);
+        binary.setRGB(0, 0, 0x00FF0000);
+        binary.setRGB(9, 2, 0x00000000);
+        BufferedImage translucent = new BufferedImage(4, 3, 
+                BufferedImage.TYPE_INT_ARGB);
+        translucent.setRGB(1, 1, 0x80FF0000);
+        
+        PDFDocument doc = new PDFDocument();
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        Graphics2D g2 = page.getGraphics2D();
+        g2.drawImage(rgb, 10, 10, null);
+        g2.drawImage(opaque, 20, 10, null);
+        g2.drawImage(binary, 30, 10, null);
+        g2.drawImage(translucent, 50, 10, null);
+        String pdf = new String(doc.getPDFBytes(), StandardCharsets.US_ASCII);
+        assertEquals(6, count(pdf, "/Subtype /Image"));
+        assertEquals(1, count(pdf, "/ImageMask true"));
+        assertEquals(1, count(pdf, "/Mask "));
+        assertEquals(1, count(pdf, "/SMask "));
+        
+        // rows are written bottom row first, a set bit masks out a pixel
+        ImageRaster raster = new ImageRaster(binary);
+        PDFImage image = new PDFImage(2, raster, null, "1 0 R");
+        PDFStencilMaskImage mask = new PDFStencilMaskImage(1, raster);
+        image.getRawStreamData();
+        assertArrayEquals(new byte[] { 0x00, 0x40, 0x00, 0x00, 
+                (byte) 0x80, 0x00 }, mask.getRawStreamData());
+    }
+    
+    /**
+     * Images can be JPEG encoded, either always or when they look 
+     * photographic, and the mask for a transparent image stays losslessly
+     * encoded.
+     */
+    @Test
+    public void checkImageEncoding() throws IOException {
+        BufferedImage photo = new BufferedImage(128, 96, 
+                BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(1L);
+        for (int y = 0; y < 96; y++) {
+            for (int x = 0; x < 128; x++) {
+                photo.setRGB(x, y, (x * 2) << 16 | (y * 2) << 8 
+                        | random.nextInt(64));
+            }
+        }
+        BufferedImage icon = new BufferedImage(128, 96, 
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D ig2 = icon.createGraphics();
+        ig2.setColor(Color.RED);
+        ig2.fillOval(10, 10, 80, 60);
+        ig2.dispose();
+        
+        PDFDocument doc = new PDFDocument();
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        Graphics2D g2 = page.getGraphics2D();
+        g2.setRenderingHint(PDFHints.KEY_IMAGE_ENCODING, 
+                PDFHints.VALUE_IMAGE_ENCODING_AUTO);
+        g2.drawImage(photo, 0, 0, null);
+        g2.drawImage(icon, 0, 100, null);
+        String pdf = new String(doc.getPDFBytes(), 
+                StandardCharsets.ISO_8859_1);
+        assertEquals(1, count(pdf, "/DCTDecode"));
+        int start = pdf.indexOf("stream\n", pdf.indexOf("/DCTDecode")) + 7;
+        byte[] jpeg = pdf.substring(start, pdf.indexOf("endstream", start))
+                .getBytes(StandardCharsets.ISO_8859_1);
+        BufferedImage decoded = ImageIO.read(
+                new ByteArrayInputStream(jpeg));
+        assertEquals(128, decoded.getWidth());
+        assertEquals(96, decoded.getHeight());
+        
+        // a forced JPEG encoding applies to any image, but not to its mask
+        doc = new PDFDocument();
+        page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        g2 = page.getGraphics2D();
+        g2.setRenderingHint(PDFHints.KEY_IMAGE_ENCODING, 
+                PDFHints.VALUE_IMAGE_ENCODING_DCT);
+        g2.setRenderingHint(PDFHints.KEY_IMAGE_QUALITY, 0.5f);
+        g2.drawImage(icon, 0, 100, null);
+        pdf = new String(doc.getPDFBytes(), StandardCharsets.ISO_8859_1);
+        assertEquals(1, count(pdf, "/DCTDecode"));
+        assertEquals(1, count(pdf, "/ImageMask true"));
+        assertEquals(2, count(pdf, "/FlateDecode"));
+    }
+    
+    /**
+     * JPEG data and the compressed data from a PNG image are copied to the
+     * document without decoding them, and a PNG image with an alpha channel
+     * is decoded and drawn as a regular image.
+     */
+    @Test
+    public void checkEncodedImages() throws IOException, DataFormatException {
+        BufferedImage img = new BufferedImage(40, 30, 
+                BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 30; y++) {
+            for (int x = 0; x < 40; x++) {
+                img.setRGB(x, y, (x * 6) << 16 | (y * 8) << 8);
+            }
+        }
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        ImageIO.write(img, "jpeg", jpeg);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", png);
+        BufferedImage argb = new BufferedImage(40, 30, 
+                BufferedImage.TYPE_INT_ARGB);
+        argb.setRGB(1, 1, 0x80FF0000);
+        ByteArrayOutputStream argbPNG = new ByteArrayOutputStream();
+        ImageIO.write(argb, "png", argbPNG);
+        
+        EncodedImage jpegImage = EncodedImage.of(jpeg.toByteArray());
+        ByteBuffer buffer = ByteBuffer.allocateDirect(png.size());
+        buffer.put(png.toByteArray()).flip();
+        EncodedImage pngImage = EncodedImage.of(buffer);
+        EncodedImage argbImage = EncodedImage.of(argbPNG.toByteArray());
+        assertTrue(jpegImage.isPassThrough());
+        assertTrue(pngImage.isPassThrough());
+        assertFalse(argbImage.isPassThrough());
+        assertEquals(40, pngImage.getWidth());
+        assertEquals(30, pngImage.getHeight());
+        
+        PDFDocument doc = new PDFDocument();
+        Page page = null;
+        for (int i = 0; i < 2; i++) {
+            page = doc.createPage(new Rectangle(0, 0, 300, 200));
+            PDFGraphics2D g2 = page.getGraphics2D();
+            g2.drawImage(jpegImage, 10, 10);
+            g2.drawImage(pngImage, 60, 10, 80, 60);
+            g2.drawImage(argbImage, 150, 10);
+        }
+        // the encoded images are drawn with the rows top to bottom
+        String content = toString(
+                ((Stream) page.getContents()).getRawStreamData());
+        assertTrue(content.contains("40 0 0 -30 10 40 cm"));
+        assertTrue(content.contains("80 0 0 -60 60 70 cm"));
+        assertTrue(content.contains("40 0 0 30 150 10 cm"));
+        String pdf = toString(doc.getPDFBytes());
+        assertEquals(4, count(pdf, "/Subtype /Image"));
+        assertEquals(1, count(pdf, "/SMask "));
+        
+        // the JPEG data is copied as-is
+        String jpegData = toString(jpeg.toByteArray());
+        int start = pdf.indexOf("/Filter /DCTDecode");
+        assertTrue(start > 0);
+        assertTrue(pdf.indexOf("stream\n" + jpegData + "endstream", start) 
+                > 0);
+        
+        // the PNG data is decoded with the PNG predictors
+        start = pdf.indexOf("/Predictor 15");
+        assertTrue(start > 0);
+        start = pdf.indexOf("stream\n", start) + 7;
+        byte[] data = pdf.substring(start, pdf.indexOf("endstream", start))
+                .getBytes(StandardCharsets.ISO_8859_1);
+        Inflater inflater = new Inflater();
+        inflater.setInput(data);
+        byte[] decoded = new byte[30 * (1 + 40 * 3) + 1];
+        assertEquals(30 * (1 + 40 * 3), inflater.inflate(decoded));
+        assertTrue(inflater.finished());
+    }
+    
+    /**
+     * A PNG image with 16-bit samples is decoded (the samples cannot be 
+     * written as-is in a PDF 1.4 document).
+     */
+    @Test
+    public void checkEncodedImage16Bit() throws IOException {
+        BufferedImage img = new BufferedImage(20, 10, 
+                BufferedImage.TYPE_USHORT_GRAY);
+        img.setRGB(1, 1, 0xFF808080);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(img, "png", png);
+        EncodedImage image = EncodedImage.of(png.toByteArray());
+        assertEquals(16, image.getBitsPerComponent());
+        assertFalse(image.isPassThrough());
+        PDFDocument doc = new PDFDocument();
+        Page page = doc.createPage(new Rectangle(0, 0, 300, 200));
+        page.getGraphics2D().drawImage(image, 10, 10);
+        String pdf = toString(doc.getPDFBytes());
+        assertTrue(pdf.startsWith("%PDF-1.4"));
+        assertEquals(1, count(pdf, "/Subtype /Image"));
+        assertFalse(pdf.contains("/BitsPerComponent 16"));
+    }
+
+    /**
+     * A PNG chunk with a length that runs past the end of the data (even 
+     * where the end offset overflows an int) is rejected.
+     */
+    @Test
+    public void checkEncodedImageInvalidChunkLength() {
+        ByteBuffer png = ByteBuffer.allocate(40);
+        png.put(new byte[] { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, 
+                '\n' });
+        png.putInt(Integer.MAX_VALUE - 4).putInt(0x49484452);
+        assertThrows(IllegalArgumentException.class, 
+                () -> EncodedImage.of(png.array()));
+        png.putInt(8, 100);
+        assertThrows(IllegalArgumentException.class, 
+                () -> EncodedImage.of(png.array()));
+        png.putInt(8, 4);
+        assertThrows(IllegalArgumentException.class, 
+                () -> EncodedImage.of(png.array()));
+    }
+
+    /**
+     * Returns the integer value for a key in a dictionary.
+     */
+    private static int intValue(String dict, String key) {
+        Matcher m = Pattern.compile(Pattern.quote(key) + " (\\d+)")
+                .matcher(dict);
+        assertTrue(m.find(), key);
+        return Integer.parseInt(m.group(1));
+    }
+    
+    /**
+     * Returns the decoded data for the flate encoded stream object at the 
+     * specified offset (with a direct /Length).
+     */
+    private static byte[] decodeStream(String pdf, int offset) 
+            throws DataFormatException {
+        int start = pdf.indexOf("stream\n", offset) + 7;
+        int length = intValue(pdf.substring(offset, start), "/Length");
+        Inflater inflater = new Inflater();
+        inflater.setInput(pdf.substring(start, start + length).getBytes(
+                StandardCharsets.ISO_8859_1));
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        while (!inflater.finished()) {
+            int n = inflater.inflate(buffer);
+            assertFalse(n == 0 && inflater.needsInput());
+            baos.write(buffer, 0, n);
+        }
+        return baos.toByteArray();
+    }
+    
+    /**
+     * Reads the object stream at the specified offset, returning the 
+     * object number and the content for each object (checking that the 
+     * offsets in the header are in order).
+     */
+    private static String[] readObjectStream(String pdf, int offset) 
+            throws DataFormatException {
+        String dict = pdf.substring(offset, pdf.indexOf("stream\n", offset));
+        assertTrue(dict.contains("/Type /ObjStm"));
+        int n = intValue(dict, "/N");
+        int first = intValue(dict, "/First");
+        String data = toString(decodeStream(pdf, offset));
+        String[] header = data.substring(0, first).trim().split("\\s+");
+        assertEquals(n * 2, header.length);
+        String[] result = new String[n * 2];
+        for (int i = 0; i < n; i++) {
+            int start = first + Integer.parseInt(header[i * 2 + 1]);
+            int end = i + 1 < n 
+                    ? first + Integer.parseInt(header[i * 2 + 3]) 
+                    : data.length();
+            assertTrue(start < end);
+            result[i * 2] = header[i * 2];
+            result[i * 2 + 1] = data.substring(start, end);
+        }
+        return result;
+    }
+    
+    private static int count(String s, String sub) {
+        int result = 0;
+        int i = s.indexOf(sub);
+        while (i >= 0) {
+            result++;
+            i = s.indexOf(sub, i + sub.length());
+        }
+        return result;
+    }
+
+    @Test
+    public void checkGetPDFBytesNotAvailableInStreamingMode() {
+        PDFDocument doc = new PDFDocument(new ByteArrayOutputStream());
+        assertThrows(IllegalStateException.class, () -> doc.getPDFBytes());
+    }
+
+}
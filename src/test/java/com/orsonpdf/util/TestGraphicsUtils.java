@@ -0,0 +1,150 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+
+package com.orsonpdf.util;
+
+import java.awt.Polygon;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Area;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.FlatteningPathIterator;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Some tests for the {@link GraphicsUtils} class.
+ */
+public class TestGraphicsUtils {
+
+    private static final double EPSILON = 1e-9;
+
+    private static void assertSameRegion(Shape expected, Shape actual) {
+        Rectangle2D b1 = expected.getBounds2D();
+        Rectangle2D b2 = actual.getBounds2D();
+        assertEquals(b1.getMinX(), b2.getMinX(), EPSILON);
+        assertEquals(b1.getMinY(), b2.getMinY(), EPSILON);
+        assertEquals(b1.getMaxX(), b2.getMaxX(), EPSILON);
+        assertEquals(b1.getMaxY(), b2.getMaxY(), EPSILON);
+        assertEquals(area(expected), area(actual), 1e-6);
+    }
+
+    /**
+     * Returns the area enclosed by a shape (after flattening its curves).
+     */
+    private static double area(Shape s) {
+        double result = 0.0;
+        double[] coords = new double[6];
+        double x0 = 0.0, y0 = 0.0, px = 0.0, py = 0.0;
+        PathIterator it = new FlatteningPathIterator(s.getPathIterator(null), 
+                1e-4);
+        while (!it.isDone()) {
+            int type = it.currentSegment(coords);
+            if (type == PathIterator.SEG_MOVETO) {
+                x0 = px = coords[0];
+                y0 = py = coords[1];
+            } else if (type == PathIterator.SEG_LINETO) {
+                result += px * coords[1] - coords[0] * py;
+                px = coords[0];
+                py = coords[1];
+            } else if (type == PathIterator.SEG_CLOSE) {
+                result += px * y0 - x0 * py;
+                px = x0;
+                py = y0;
+            }
+            it.next();
+        }
+        return Math.abs(result / 2.0);
+    }
+
+    private static Shape areaIntersect(Shape s1, Shape s2) {
+        Area a = new Area(s1);
+        a.intersect(new Area(s2));
+        return a;
+    }
+
+    @Test
+    public void checkIntersectRectangles() {
+        Shape s = GraphicsUtils.intersect(new Rectangle2D.Double(0, 0, 5, 5),
+                new Rectangle2D.Double(2, 1, 4, 2));
+        assertEquals(new Rectangle2D.Double(2, 1, 3, 2), s);
+        s = GraphicsUtils.intersect(new Rectangle2D.Double(0, 0, 5, 5),
+                new Rectangle2D.Double(6, 1, 4, 2));
+        assertTrue(s.getBounds2D().isEmpty());
+    }
+
+    @Test
+    public void checkIntersectConvexPolygons() {
+        Shape r = new Rectangle2D.Double(0, 0, 10, 10);
+        Shape rotated = AffineTransform.getRotateInstance(Math.PI / 5, 5, 5)
+                .createTransformedShape(new Rectangle2D.Double(2, 2, 8, 8));
+        Shape triangle = new Polygon(new int[] {-5, 15, 5}, 
+                new int[] {-5, -5, 12}, 3);
+        assertSameRegion(areaIntersect(r, rotated), 
+                GraphicsUtils.intersect(r, rotated));
+        assertSameRegion(areaIntersect(rotated, triangle), 
+                GraphicsUtils.intersect(rotated, triangle));
+        assertSameRegion(areaIntersect(triangle, r), 
+                GraphicsUtils.intersect(triangle, r));
+    }
+
+    @Test
+    public void checkIntersectOtherShapes() {
+        // a pentagram is not convex, and nor is an ellipse a polygon
+        Polygon star = new Polygon();
+        for (int i = 0; i < 5; i++) {
+            double angle = Math.PI / 2 + i * 4 * Math.PI / 5;
+            star.addPoint((int) (50 + 40 * Math.cos(angle)), 
+                    (int) (50 + 40 * Math.sin(angle)));
+        }
+        Shape r = new Rectangle2D.Double(20, 20, 60, 60);
+        assertSameRegion(areaIntersect(star, r), 
+                GraphicsUtils.intersect(star, r));
+        Shape e = new Ellipse2D.Double(0, 0, 50, 50);
+        assertSameRegion(areaIntersect(e, r), GraphicsUtils.intersect(e, r));
+    }
+
+    @Test
+    public void checkTransformRectangle() {
+        Rectangle2D r = new Rectangle2D.Double(1, 2, 3, 4);
+        AffineTransform t = AffineTransform.getTranslateInstance(10, 20);
+        t.scale(2, -1);
+        assertEquals(new Rectangle2D.Double(12, 14, 6, 4), 
+                GraphicsUtils.transformRectangle(r, t));
+        assertNull(GraphicsUtils.transformRectangle(r, 
+                AffineTransform.getRotateInstance(0.1)));
+    }
+
+}
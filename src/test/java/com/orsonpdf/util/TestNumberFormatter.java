@@ -0,0 +1,76 @@
+/* =====================================================================
+ * OrsonPDF : a fast, light-weight PDF library for the Java(tm) platform
+ * =====================================================================
+ *
+ * (C)opyright 2013-2022, by David Gilbert.  All rights reserved.
+ *
+ * Project Info:  https://github.com/jfree/orsonpdf
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ * [Oracle and Java are registered trademarks of Oracle and/or its affiliates.
+ * Other names may be trademarks of their respective owners.]
+ *
+ * If you do not wish to be bound by the terms of the GPL, an alternative
+ * runtime license is available to JFree sponsors:
+ *
+ * https://github.com/sponsors/jfree
+ *
+ */
+
+
+package com.orsonpdf.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Some tests for the {@link NumberFormatter} class.
+ */
+public class TestNumberFormatter {
+
+    @Test
+    public void checkFormat() {
+        assertEquals("0", NumberFormatter.toString(0.0, 2));
+        assertEquals("0", NumberFormatter.toString(-0.0, 2));
+        assertEquals("0", NumberFormatter.toString(-0.001, 2));
+        assertEquals("1", NumberFormatter.toString(1.0, 2));
+        assertEquals("-1.5", NumberFormatter.toString(-1.5, 2));
+        assertEquals("0.502", NumberFormatter.toString(128 / 255f, 3));
+        assertEquals("0.05", NumberFormatter.toString(0.05, 6));
+        assertEquals("0.000001", NumberFormatter.toString(1e-6, 6));
+        assertEquals("0", NumberFormatter.toString(1e-7, 6));
+        assertEquals("123457", NumberFormatter.toString(123456.7, 0));
+        assertEquals("100000000000000000000", 
+                NumberFormatter.toString(1e20, 2));
+        assertEquals("0", NumberFormatter.toString(Double.NaN, 2));
+        StringBuilder b = new StringBuilder();
+        NumberFormatter.format(-123.456, 3, b).append(' ');
+        NumberFormatter.format(7.5, 3, b);
+        assertEquals("-123.456 7.5", b.toString());
+    }
+    
+    @Test
+    public void checkFormatToBytes() {
+        byte[] bytes = new byte[NumberFormatter.MAX_LENGTH + 1];
+        bytes[0] = 'x';
+        int end = NumberFormatter.format(-12.345, 2, bytes, 1);
+        assertEquals("x-12.35", new String(bytes, 0, end));
+        assertEquals(-1, NumberFormatter.format(1e20, 2, bytes, 0));
+        end = NumberFormatter.format(-99999999.9999999999, 10, bytes, 0);
+        assertTrue(end <= NumberFormatter.MAX_LENGTH);
+    }
+
+}